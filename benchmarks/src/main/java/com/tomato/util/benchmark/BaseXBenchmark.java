@@ -0,0 +1,73 @@
+package com.tomato.util.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomato.util.Base58;
+
+/**
+ * Base58 encode and decode time by input size, from a UUID to a 64 KB payload. Run it against the previous release to
+ * see the speedup; the conversion is still quadratic, so the time grows fourfold per size step of 2.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BaseXBenchmark {
+
+    @Param({"16", "64", "256", "1024", "4096", "16384", "65536"})
+    public int size;
+
+    private byte[] bytes;
+
+    private String encoded;
+
+    private byte[] decoded;
+
+    private StringBuilder sb;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        encoded = Base58.encode(bytes);
+        decoded = new byte[encoded.length()];
+        sb = new StringBuilder(encoded.length());
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base58.encode(bytes);
+    }
+
+    @Benchmark
+    public StringBuilder encodeAppendable() throws Exception {
+        sb.setLength(0);
+        Base58.encode(bytes, 0, bytes.length, sb);
+        return sb;
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base58.decode(encoded);
+    }
+
+    @Benchmark
+    public int decodeTo() {
+        return Base58.decode(encoded, 0, encoded.length(), decoded);
+    }
+}
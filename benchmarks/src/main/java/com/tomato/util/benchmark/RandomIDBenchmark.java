@@ -0,0 +1,87 @@
+package com.tomato.util.benchmark;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomato.util.IDRandom;
+import com.tomato.util.IDUtil;
+
+/**
+ * Random ID throughput of IDUtil by random source, on one thread and on all threads, against UUID.randomUUID() which
+ * shares one SecureRandom between all threads. Run with -t 64 to reproduce a server with 64 request threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RandomIDBenchmark {
+
+    @Param({"SECURE", "FAST"})
+    public IDRandom.Mode mode;
+
+    IDRandom random;
+
+    @Setup
+    public void setup() {
+        random = IDRandom.getInstance(mode);
+    }
+
+    @Benchmark
+    public String randomUUID() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String randomUUIDAllThreads() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String getID() {
+        return IDUtil.getID(random, true);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String getIDAllThreads() {
+        return IDUtil.getID(random, true);
+    }
+
+    @Benchmark
+    public String getFormatedUUID() {
+        return IDUtil.getFormatedUUID(random);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String getFormatedUUIDAllThreads() {
+        return IDUtil.getFormatedUUID(random);
+    }
+
+    @Benchmark
+    public String getBase58ID() {
+        return IDUtil.getBase58ID(random, true);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String getBase58IDAllThreads() {
+        return IDUtil.getBase58ID(random, true);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j.benchmark;
+
+import java.security.InvalidKeyException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomato.util.fpe4j.A10Parameters;
+import com.tomato.util.fpe4j.A2Parameters;
+import com.tomato.util.fpe4j.FFX;
+
+/**
+ * FFX throughput with the A2 (radix 2) and A10 (radix 10) parameter sets, by input length and tweak length, with one
+ * FFX instance per thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FFXBenchmark {
+
+    @Param({"A2", "A10"})
+    public String parameters;
+
+    @Param({"8", "16", "32"})
+    public int length;
+
+    @Param({"0", "8", "16"})
+    public int tweakLength;
+
+    private FFX ffx;
+
+    private SecretKey K;
+
+    private byte[] T;
+
+    private int[][] X;
+
+    private int i;
+
+    @Setup
+    public void setup() {
+        FFX.FFXParameters params = parameters.equals("A2") ? new A2Parameters() : new A10Parameters();
+        ffx = new FFX(params);
+        K = Inputs.key();
+        T = Inputs.tweak(tweakLength);
+        X = Inputs.numerals(params.getRadix(), length);
+    }
+
+    @Benchmark
+    public int[] encrypt() throws InvalidKeyException {
+        return ffx.encrypt(K, T, X[i++ & Inputs.COUNT - 1]);
+    }
+
+    @Benchmark
+    public int[] decrypt() throws InvalidKeyException {
+        return ffx.decrypt(K, T, X[i++ & Inputs.COUNT - 1]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] encryptAllThreads() throws InvalidKeyException {
+        return ffx.encrypt(K, T, X[i++ & Inputs.COUNT - 1]);
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j.benchmark;
+
+import java.security.InvalidKeyException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomato.util.fpe4j.FpeEngine;
+
+/**
+ * FF1 throughput through one FpeEngine shared by all threads, as a tokenization service would use it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FpeEngineBenchmark {
+
+    /**
+     * The engine and inputs, shared by all threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Engine {
+
+        @Param({"10", "36"})
+        public int radix;
+
+        @Param({"16"})
+        public int length;
+
+        FpeEngine engine;
+
+        SecretKey K;
+
+        byte[] T;
+
+        int[][] X;
+
+        @Setup
+        public void setup() {
+            engine = new FpeEngine(FpeEngine.Method.FF1, radix, length, length, 16);
+            K = Inputs.key();
+            T = Inputs.tweak(8);
+            X = Inputs.numerals(radix, length);
+        }
+    }
+
+    /**
+     * The position of each thread in the inputs.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int i;
+    }
+
+    @Benchmark
+    public int[] encrypt(Engine e, Cursor c) throws InvalidKeyException {
+        return e.engine.encrypt(e.K, e.T, e.X[c.i++ & Inputs.COUNT - 1]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] encryptAllThreads(Engine e, Cursor c) throws InvalidKeyException {
+        return e.engine.encrypt(e.K, e.T, e.X[c.i++ & Inputs.COUNT - 1]);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j.benchmark;
+
+import java.security.InvalidKeyException;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomato.util.fpe4j.ifx.IFX;
+
+/**
+ * IFX throughput over a vector of equal radices, by radix, vector length and tweak length, with one IFX instance per
+ * thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IFXBenchmark {
+
+    @Param({"2", "10", "36", "62"})
+    public int radix;
+
+    @Param({"8", "16", "32", "64"})
+    public int length;
+
+    @Param({"0", "8", "16"})
+    public int tweakLength;
+
+    private IFX ifx;
+
+    private SecretKey K;
+
+    private byte[] T;
+
+    private int[][] X;
+
+    private int i;
+
+    @Setup
+    public void setup() {
+        ifx = new IFX(Inputs.radices(radix, length));
+        K = Inputs.key();
+        T = Inputs.tweak(tweakLength);
+        X = Inputs.numerals(radix, length);
+    }
+
+    @Benchmark
+    public int[] encrypt() throws InvalidKeyException {
+        return ifx.encrypt(K, T, X[i++ & Inputs.COUNT - 1]);
+    }
+
+    @Benchmark
+    public int[] decrypt() throws InvalidKeyException {
+        return ifx.decrypt(K, T, X[i++ & Inputs.COUNT - 1]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] encryptAllThreads() throws InvalidKeyException {
+        return ifx.encrypt(K, T, X[i++ & Inputs.COUNT - 1]);
+    }
+}
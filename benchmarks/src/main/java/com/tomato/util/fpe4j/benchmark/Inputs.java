@@ -0,0 +1,87 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j.benchmark;
+
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Deterministic keys, tweaks and plaintexts shared by the benchmarks.
+ */
+final class Inputs {
+
+    /**
+     * The number of distinct plaintexts each benchmark cycles through, so that results cannot be constant-folded.
+     */
+    static final int COUNT = 1024;
+
+    /**
+     * The AES key of the NIST SP 800-38G FF1 samples.
+     */
+    static SecretKey key() {
+        byte[] K = {(byte)0x2B, (byte)0x7E, (byte)0x15, (byte)0x16, (byte)0x28, (byte)0xAE, (byte)0xD2, (byte)0xA6,
+            (byte)0xAB, (byte)0xF7, (byte)0x15, (byte)0x88, (byte)0x09, (byte)0xCF, (byte)0x4F, (byte)0x3C};
+        return new SecretKeySpec(K, "AES");
+    }
+
+    /**
+     * A tweak of t random bytes.
+     */
+    static byte[] tweak(int t) {
+        byte[] T = new byte[t];
+        new Random(t).nextBytes(T);
+        return T;
+    }
+
+    /**
+     * COUNT random numeral strings of length n, where the numeral at index i is in [0..W[i]-1].
+     */
+    static int[][] numerals(int[] W) {
+        Random random = new Random(W.length);
+        int[][] X = new int[COUNT][W.length];
+        for (int[] x : X) {
+            for (int i = 0; i < x.length; i++) {
+                x[i] = random.nextInt(W[i]);
+            }
+        }
+        return X;
+    }
+
+    /**
+     * COUNT random numeral strings of length n in the given radix.
+     */
+    static int[][] numerals(int radix, int n) {
+        return numerals(radices(radix, n));
+    }
+
+    /**
+     * A vector of n copies of radix.
+     */
+    static int[] radices(int radix, int n) {
+        int[] W = new int[n];
+        for (int i = 0; i < n; i++) {
+            W[i] = radix;
+        }
+        return W;
+    }
+
+    /**
+     * Non-instantiable class.
+     */
+    private Inputs() {
+    }
+}
@@ -1,5 +1,6 @@
 package com.tomato.util;
 
+import java.io.IOException;
 import java.math.BigInteger;
 
 public final class Base36 {
@@ -16,6 +17,82 @@ public final class Base36 {
         return base36.encode(input);
     }
 
+    /**
+     * Encodes the bytes input[off..off+len-1] in baseX. No checksum is appended.
+     *
+     * @param input
+     * @param off
+     * @param len
+     *
+     * @return
+     */
+    public static String encode(byte[] input, int off, int len) {
+        return base36.encode(input, off, len);
+    }
+
+    /**
+     * Encodes the bytes input[off..off+len-1] in baseX to dst[dstOff..]. No checksum is appended.
+     *
+     * @param input
+     * @param off
+     * @param len
+     * @param dst
+     * @param dstOff
+     *
+     * @return the number of characters written
+     */
+    public static int encode(byte[] input, int off, int len, char[] dst, int dstOff) {
+        return base36.encode(input, off, len, dst, dstOff);
+    }
+
+    /**
+     * Encodes the bytes input[off..off+len-1] in baseX and appends them to out. No checksum is appended.
+     *
+     * @param input
+     * @param off
+     * @param len
+     * @param out
+     *
+     * @return the number of characters appended
+     *
+     * @throws IOException
+     */
+    public static int encode(byte[] input, int off, int len, Appendable out) throws IOException {
+        return base36.encode(input, off, len, out);
+    }
+
+    /**
+     * @param len
+     *
+     * @return an upper bound of the number of characters of the encoding of len bytes
+     */
+    public static int getMaxEncodedLength(int len) {
+        return base36.getMaxEncodedLength(len);
+    }
+
+    /**
+     * Encodes the unsigned 128-bit number hi:lo in exactly width digits, padded on the left with the zero digit, so
+     * that strings of the same width sort like the numbers.
+     *
+     * @param hi
+     * @param lo
+     * @param width
+     *
+     * @return
+     */
+    public static String encode(long hi, long lo, int width) {
+        return base36.encode(hi, lo, width);
+    }
+
+    /**
+     * @param bytes
+     *
+     * @return the number of digits of the largest unsigned number of the given size
+     */
+    public static int getWidth(int bytes) {
+        return base36.getWidth(bytes);
+    }
+
     /**
      * @param input
      *
@@ -25,6 +102,21 @@ public final class Base36 {
         return base36.decode(input);
     }
 
+    /**
+     * Decodes the characters input[off..off+len-1] to the start of dst.
+     *
+     * @param input
+     * @param off
+     * @param len
+     * @param dst
+     *         room for len bytes is always enough
+     *
+     * @return the number of bytes written
+     */
+    public static int decode(CharSequence input, int off, int len, byte[] dst) {
+        return base36.decode(input, off, len, dst);
+    }
+
     /**
      * @param input
      *
@@ -16,7 +16,9 @@
 
 package com.tomato.util;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
@@ -33,6 +35,15 @@ public final class BaseX {
     private final int base;
     private final char[] alphabet;
     private final int[] indexes;
+    // the largest power of the base below 2^31, and its number of digits: a remainder shifted left by 32 bits still
+    // fits in a long
+    private final long chunkPower;
+    private final int chunkDigits;
+    // the number of digits of a 16-byte number, and rounded up to whole chunks
+    private final int width16;
+    private final int chunkedWidth16;
+    // log(256) / log(base), the most digits a byte can take
+    private final double digitsPerByte;
 
     /**
      * @param alphabet
@@ -47,6 +58,17 @@ public final class BaseX {
         for (int i = 0; i < this.alphabet.length; i++) {
             indexes[this.alphabet[i]] = i;
         }
+        long power = base;
+        int digits = 1;
+        while (power * base <= Integer.MAX_VALUE) {
+            power *= base;
+            ++digits;
+        }
+        this.chunkPower = power;
+        this.chunkDigits = digits;
+        this.width16 = getWidth(16);
+        this.chunkedWidth16 = (width16 + digits - 1) / digits * digits;
+        this.digitsPerByte = Math.log(256) / Math.log(base);
     }
 
     /**
@@ -59,40 +81,128 @@ public final class BaseX {
     public String encode(byte[] input) {
         if (null == input) {
             return null;
-        } else if (input.length == 0) {
-            return "";
         }
+        return encode(input, 0, input.length);
+    }
 
-        input = copyOfRange(input, 0, input.length);
-        // Count leading zeroes.
-        int zeroCount = 0;
-        while (zeroCount < input.length && input[zeroCount] == 0) {
-            ++zeroCount;
-        }
-        // The actual encoding.
-        byte[] temp = new byte[input.length * 2];
-        int j = temp.length;
+    /**
+     * Encodes the bytes input[off..off+len-1] in baseX. No checksum is appended.
+     *
+     * @param input
+     * @param off
+     * @param len
+     *
+     * @return
+     */
+    public String encode(byte[] input, int off, int len) {
+        checkRange(input.length, off, len);
+        char[] output = new char[getMaxEncodedLength(len)];
+        int start = encodeTo(input, off, len, output);
+        return new String(output, start, output.length - start);
+    }
 
-        int startAt = zeroCount;
-        while (startAt < input.length) {
-            byte mod = divModX(input, startAt);
-            if (input[startAt] == 0) {
-                ++startAt;
-            }
-            temp[--j] = (byte) alphabet[mod];
+    /**
+     * Encodes the bytes input[off..off+len-1] in baseX to dst[dstOff..]. No checksum is appended.
+     *
+     * @param input
+     * @param off
+     * @param len
+     * @param dst
+     *         room for {@link #getMaxEncodedLength(int)} characters is always enough
+     * @param dstOff
+     *
+     * @return the number of characters written
+     */
+    public int encode(byte[] input, int off, int len, char[] dst, int dstOff) {
+        checkRange(input.length, off, len);
+        char[] output = new char[getMaxEncodedLength(len)];
+        int start = encodeTo(input, off, len, output);
+        int count = output.length - start;
+        checkRange(dst.length, dstOff, count);
+        System.arraycopy(output, start, dst, dstOff, count);
+        return count;
+    }
+
+    /**
+     * Encodes the bytes input[off..off+len-1] in baseX and appends them to out. No checksum is appended.
+     *
+     * @param input
+     * @param off
+     * @param len
+     * @param out
+     *
+     * @return the number of characters appended
+     *
+     * @throws IOException
+     *         if out throws it
+     */
+    public int encode(byte[] input, int off, int len, Appendable out) throws IOException {
+        checkRange(input.length, off, len);
+        char[] output = new char[getMaxEncodedLength(len)];
+        int start = encodeTo(input, off, len, output);
+        int count = output.length - start;
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(output, start, count);
+        } else {
+            out.append(CharBuffer.wrap(output, start, count));
         }
+        return count;
+    }
 
-        // Strip extra '1' if there are some after decoding.
-        while (j < temp.length && temp[j] == alphabet[0]) {
-            ++j;
+    /**
+     * @param len
+     *         the number of bytes
+     *
+     * @return an upper bound of the number of characters of the encoding of len bytes
+     */
+    public int getMaxEncodedLength(int len) {
+        // the first chunk of digits may start with zero digits
+        return (int) Math.ceil(len * digitsPerByte) + chunkDigits + 1;
+    }
+
+    /**
+     * Encodes the unsigned 128-bit number hi:lo in exactly width digits, padded on the left with the zero digit.
+     * Strings of the same width sort like the numbers when the alphabet is in ascending order, as Base36 and Base58
+     * are.
+     *
+     * @param hi
+     *         the most significant 64 bits
+     * @param lo
+     *         the least significant 64 bits
+     * @param width
+     *         the number of digits, see {@link #getWidth(int)}
+     *
+     * @return
+     */
+    public String encode(long hi, long lo, int width) {
+        if (width < 0) {
+            throw new IllegalArgumentException("Illegal width " + width);
         }
-        // Add as many leading '1' as there were leading zeros.
-        while (--zeroCount >= 0) {
-            temp[--j] = (byte) alphabet[0];
+        char[] output = new char[Math.max(width, chunkedWidth16)];
+        int end = output.length;
+        int start = skipZeros(output, toDigits(hi, lo, output, end), end);
+        if (end - start > width) {
+            throw new IllegalArgumentException("Number does not fit in " + width + " digits");
         }
+        Arrays.fill(output, end - width, start, alphabet[0]);
+        return new String(output, end - width, width);
+    }
 
-        byte[] output = copyOfRange(temp, j, temp.length);
-        return new String(output, CHARSET_DEFAULT);
+    /**
+     * @param bytes
+     *         the size of the numbers in bytes
+     *
+     * @return the number of digits of the largest unsigned number of the given size
+     */
+    public int getWidth(int bytes) {
+        BigInteger max = BigInteger.ONE.shiftLeft(bytes * 8);
+        BigInteger power = BigInteger.ONE;
+        int width = 0;
+        while (power.compareTo(max) < 0) {
+            power = power.multiply(BigInteger.valueOf(base));
+            ++width;
+        }
+        return width;
     }
 
     /**
@@ -106,46 +216,62 @@ public final class BaseX {
         } else if (input.length() == 0) {
             return new byte[0];
         }
-
-        byte[] inputX = new byte[input.length()];
-        // Transform the String to a baseX byte sequence
-        for (int i = 0; i < input.length(); ++i) {
-            char c = input.charAt(i);
-
-            int digitX = -1;
-            if (c >= 0 && c < 128) {
-                digitX = indexes[c];
-            }
-            if (digitX < 0) {
-                throw new IllegalArgumentException("Illegal character " + c + " at " + i);
-            }
-
-            inputX[i] = (byte) digitX;
+        byte[] output = decode16(input);
+        if (null != output) {
+            return output;
         }
+        output = new byte[input.length()];
+        int count = decode(input, 0, input.length(), output);
+        return count == output.length ? output : copyOfRange(output, 0, count);
+    }
+
+    /**
+     * Decodes the characters input[off..off+len-1] to the start of dst.
+     *
+     * @param input
+     * @param off
+     * @param len
+     * @param dst
+     *         room for len bytes is always enough
+     *
+     * @return the number of bytes written
+     */
+    public int decode(CharSequence input, int off, int len, byte[] dst) {
+        checkRange(input.length(), off, len);
         // Count leading zeroes
         int zeroCount = 0;
-        while (zeroCount < inputX.length && inputX[zeroCount] == 0) {
+        while (zeroCount < len && input.charAt(off + zeroCount) == alphabet[0]) {
             ++zeroCount;
         }
-        // The encoding
-        byte[] temp = new byte[input.length()];
-        int j = temp.length;
-
-        int startAt = zeroCount;
-        while (startAt < inputX.length) {
-            byte mod = divMod256(inputX, startAt);
-            if (inputX[startAt] == 0) {
-                ++startAt;
+        // the number as 32-bit limbs, least significant first; a digit has at most 8 bits
+        int[] limbs = new int[(len - zeroCount) / 4 + 1];
+        int used = 0;
+        for (int i = off + zeroCount; i < off + len; ) {
+            // number -> number * X^n + the next n digits
+            int chunk = 0;
+            long power = 1;
+            for (int n = Math.min(chunkDigits, off + len - i); n > 0; --n, ++i) {
+                chunk = chunk * base + digit(input.charAt(i), i);
+                power *= base;
+            }
+            long carry = chunk;
+            for (int k = 0; k < used; ++k) {
+                long current = (limbs[k] & 0xFFFFFFFFL) * power + carry;
+                limbs[k] = (int) current;
+                carry = current >>> 32;
+            }
+            if (carry != 0) {
+                limbs[used++] = (int) carry;
             }
-
-            temp[--j] = mod;
         }
-        // Do no add extra leading zeroes, move j to first non null byte.
-        while (j < temp.length && temp[j] == 0) {
-            ++j;
+        int size = used * 4 - (used > 0 ? Integer.numberOfLeadingZeros(limbs[used - 1]) / 8 : 0);
+        int count = zeroCount + size;
+        checkRange(dst.length, 0, count);
+        Arrays.fill(dst, 0, zeroCount, (byte) 0);
+        for (int k = 0; k < size; ++k) {
+            dst[count - 1 - k] = (byte) (limbs[k >> 2] >>> ((k & 3) << 3));
         }
-
-        return copyOfRange(temp, j - zeroCount, temp.length);
+        return count;
     }
 
     /**
@@ -182,47 +308,231 @@ public final class BaseX {
     }
 
     /**
-     * number -> number / X, returns number % X
+     * Writes the encoding of input[off..off+len-1] to the end of output. Up to 16 bytes, such as longs and UUIDs, are
+     * divided as one 128-bit number, longer inputs as an array of 32-bit limbs; either way a whole chunk of digits is
+     * produced per division.
      *
-     * @param number
-     * @param startAt
+     * @param input
+     * @param off
+     * @param len
+     * @param output
+     *         of {@link #getMaxEncodedLength(int)} characters
      *
-     * @return
+     * @return the index of the first character
      */
-    private byte divModX(byte[] number, int startAt) {
-        int remainder = 0;
-        for (int i = startAt; i < number.length; i++) {
-            int digit256 = number[i] & 0xFF;
-            int temp = remainder * 256 + digit256;
-
-            number[i] = (byte) (temp / base);
+    private int encodeTo(byte[] input, int off, int len, char[] output) {
+        // Count leading zeroes.
+        int zeroCount = 0;
+        while (zeroCount < len && input[off + zeroCount] == 0) {
+            ++zeroCount;
+        }
+        int end = output.length;
+        int start;
+        if (len <= 16) {
+            long hi = 0;
+            long lo = 0;
+            for (int i = off; i < off + len; ++i) {
+                hi = hi << 8 | lo >>> 56;
+                lo = lo << 8 | (input[i] & 0xFF);
+            }
+            start = toDigits(hi, lo, output, end);
+        } else {
+            start = toDigits(toLimbs(input, off + zeroCount, len - zeroCount), output, end);
+        }
+        // Strip extra '1' if there are some after decoding.
+        start = skipZeros(output, start, end);
+        // Add as many leading '1' as there were leading zeros.
+        start -= zeroCount;
+        Arrays.fill(output, start, start + zeroCount, alphabet[0]);
+        return start;
+    }
 
-            remainder = temp % base;
+    /**
+     * @param input
+     * @param off
+     * @param len
+     *
+     * @return input[off..off+len-1] as 32-bit limbs, most significant first
+     */
+    private static int[] toLimbs(byte[] input, int off, int len) {
+        int[] limbs = new int[(len + 3) / 4];
+        // the first limb takes the bytes that are left over
+        int j = 4 - (limbs.length * 4 - len);
+        int k = 0;
+        for (int i = off; i < off + len; ++i) {
+            limbs[k] = limbs[k] << 8 | (input[i] & 0xFF);
+            if (--j == 0) {
+                ++k;
+                j = 4;
+            }
         }
+        return limbs;
+    }
 
-        return (byte) remainder;
+    /**
+     * Writes the digits of the number in limbs to output[..end-1], a chunk at a time, so the first chunk may start with
+     * zero digits. The limbs are divided in place and left zero.
+     *
+     * @param limbs
+     *         32-bit limbs, most significant first
+     * @param output
+     * @param end
+     *
+     * @return the index of the first digit written
+     */
+    private int toDigits(int[] limbs, char[] output, int end) {
+        int first = 0;
+        while (first < limbs.length && limbs[first] == 0) {
+            ++first;
+        }
+        int i = end;
+        while (first < limbs.length) {
+            // number -> number / X^n, the remainder gives n digits
+            long r = 0;
+            for (int k = first; k < limbs.length; ++k) {
+                long current = r << 32 | (limbs[k] & 0xFFFFFFFFL);
+                long quotient = current / chunkPower;
+                limbs[k] = (int) quotient;
+                r = current - quotient * chunkPower;
+            }
+            int chunk = (int) r;
+            for (int j = 0; j < chunkDigits; ++j) {
+                output[--i] = alphabet[chunk % base];
+                chunk /= base;
+            }
+            if (limbs[first] == 0) {
+                ++first;
+            }
+        }
+        return i;
     }
 
     /**
-     * number -> number / 256, returns number % 256
+     * Writes the digits of the unsigned 128-bit number hi:lo to output[..end-1], a chunk at a time, so the first
+     * chunk may start with zero digits.
      *
-     * @param numberX
-     * @param startAt
+     * @param hi
+     * @param lo
+     * @param output
+     * @param end
      *
-     * @return
+     * @return the index of the first digit written
      */
-    private byte divMod256(byte[] numberX, int startAt) {
-        int remainder = 0;
-        for (int i = startAt; i < numberX.length; i++) {
-            int digitX = numberX[i] & 0xFF;
-            int temp = remainder * base + digitX;
+    private int toDigits(long hi, long lo, char[] output, int end) {
+        // the number as four 32-bit limbs, most significant first
+        long l0 = hi >>> 32;
+        long l1 = hi & 0xFFFFFFFFL;
+        long l2 = lo >>> 32;
+        long l3 = lo & 0xFFFFFFFFL;
+        int i = end;
+        while ((l0 | l1 | l2 | l3) != 0) {
+            long r = l0 % chunkPower;
+            l0 /= chunkPower;
+            r = r << 32 | l1;
+            l1 = r / chunkPower;
+            r = (r - l1 * chunkPower) << 32 | l2;
+            l2 = r / chunkPower;
+            r = (r - l2 * chunkPower) << 32 | l3;
+            l3 = r / chunkPower;
+            int chunk = (int) (r - l3 * chunkPower);
+            for (int j = 0; j < chunkDigits; ++j) {
+                output[--i] = alphabet[chunk % base];
+                chunk /= base;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @param output
+     * @param start
+     * @param end
+     *
+     * @return the index of the first digit in output[start..end-1] that is not zero, or end
+     */
+    private int skipZeros(char[] output, int start, int end) {
+        while (start < end && output[start] == alphabet[0]) {
+            ++start;
+        }
+        return start;
+    }
 
-            numberX[i] = (byte) (temp / 256);
+    /**
+     * Decodes input as one 128-bit number when it fits, with the same output as the long division.
+     *
+     * @param input
+     *
+     * @return null if the number does not fit in 16 bytes
+     */
+    private byte[] decode16(String input) {
+        int length = input.length();
+        // Count leading zeroes
+        int zeroCount = 0;
+        while (zeroCount < length && input.charAt(zeroCount) == alphabet[0]) {
+            ++zeroCount;
+        }
+        if (length - zeroCount > width16) {
+            return null;
+        }
+        long l0 = 0;
+        long l1 = 0;
+        long l2 = 0;
+        long l3 = 0;
+        for (int i = zeroCount; i < length; ) {
+            // number -> number * X^n + the next n digits
+            int chunk = 0;
+            long power = 1;
+            for (int n = Math.min(chunkDigits, length - i); n > 0; --n, ++i) {
+                chunk = chunk * base + digit(input.charAt(i), i);
+                power *= base;
+            }
+            l3 = l3 * power + chunk;
+            l2 = l2 * power + (l3 >>> 32);
+            l1 = l1 * power + (l2 >>> 32);
+            l0 = l0 * power + (l1 >>> 32);
+            if ((l0 >>> 32) != 0) {
+                return null;
+            }
+            l3 &= 0xFFFFFFFFL;
+            l2 &= 0xFFFFFFFFL;
+            l1 &= 0xFFFFFFFFL;
+        }
+        long hi = l0 << 32 | l1;
+        long lo = l2 << 32 | l3;
+        int size = 16 - (hi != 0 ? Long.numberOfLeadingZeros(hi) : 64 + Long.numberOfLeadingZeros(lo)) / 8;
+        byte[] output = new byte[zeroCount + size];
+        for (int i = output.length - 1; i >= zeroCount; --i) {
+            output[i] = (byte) lo;
+            lo = lo >>> 8 | hi << 56;
+            hi >>>= 8;
+        }
+        return output;
+    }
 
-            remainder = temp % 256;
+    /**
+     * @param c
+     * @param i
+     *         the index of c, for the message
+     *
+     * @return the value of the digit c
+     */
+    private int digit(char c, int i) {
+        int digitX = c < 128 ? indexes[c] : -1;
+        if (digitX < 0) {
+            throw new IllegalArgumentException("Illegal character " + c + " at " + i);
         }
+        return digitX;
+    }
 
-        return (byte) remainder;
+    /**
+     * @param length
+     * @param off
+     * @param len
+     */
+    private static void checkRange(int length, int off, int len) {
+        if (off < 0 || len < 0 || length - len < off) {
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", length: " + length);
+        }
     }
 
     /**
@@ -0,0 +1,235 @@
+package com.tomato.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地分配连续的数字 ID (hi/lo)，不依赖中心序列服务。
+ * <li/>每次从文件租用 blockSize 个 ID，先把上限 (high-water mark) 写入内存映射文件，再分配块内的 ID，块内只有一次原子自增
+ * <li/>进程崩溃后从文件中的上限继续，不会重复分配；{@link SyncPolicy#FORCE} 时每次租用都 fsync，断电也不会重复分配
+ * <li/>文件在打开期间加排它锁，同一文件只能有一个分配器
+ * <li/>关闭时把上限写回为下一个未分配的 ID，未用完的 ID 留给下次使用
+ * <p/>
+ * 文件格式：8 字节 MAGIC，两个槽位 {上限, 上限 ^ MAGIC}，交替写入，打开时取有效槽位中较大的上限，写到一半的槽位会被忽略。
+ */
+public final class BlockIDAllocator implements Closeable {
+    private static final long MAGIC = 0x544F4D41544F4944L;
+    private static final int SLOT_OFFSET = 8;
+    private static final int SLOT_SIZE = 16;
+    private static final int FILE_SIZE = SLOT_OFFSET + 2 * SLOT_SIZE;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final int blockSize;
+    private final SyncPolicy syncPolicy;
+    private final AtomicLong next;
+    // 已写入文件的上限，只在 synchronized 中写
+    private volatile long limit;
+    private volatile boolean closed;
+    private int slot;
+
+    /**
+     * @param file
+     *         不存在时创建，从 1 开始分配
+     * @param blockSize
+     *         每次租用的 ID 个数
+     * @param syncPolicy
+     *
+     * @throws IOException
+     */
+    public BlockIDAllocator(Path file, int blockSize, SyncPolicy syncPolicy) throws IOException {
+        this(file, blockSize, syncPolicy, 1L);
+    }
+
+    /**
+     * @param file
+     *         不存在时创建
+     * @param blockSize
+     *         每次租用的 ID 个数
+     * @param syncPolicy
+     * @param initialValue
+     *         文件不存在时分配的第一个 ID
+     *
+     * @throws IOException
+     *         文件已被其他分配器使用，或文件已损坏
+     */
+    public BlockIDAllocator(Path file, int blockSize, SyncPolicy syncPolicy, long initialValue) throws IOException {
+        super();
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize: " + blockSize);
+        }
+        if (null == syncPolicy) {
+            throw new NullPointerException("syncPolicy");
+        }
+        if (initialValue < 0) {
+            throw new IllegalArgumentException("initialValue: " + initialValue);
+        }
+        this.blockSize = blockSize;
+        this.syncPolicy = syncPolicy;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            this.lock = channel.tryLock();
+            if (null == lock) {
+                throw new IOException("File is locked by another allocator: " + file);
+            }
+            boolean created = channel.size() == 0;
+            if (!created && channel.size() < FILE_SIZE) {
+                throw new IOException("File is corrupted: " + file);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            if (created) {
+                writeSlot(0, initialValue);
+                writeSlot(1, initialValue);
+                buffer.putLong(0, MAGIC);
+                buffer.force();
+            } else if (buffer.getLong(0) != MAGIC) {
+                throw new IOException("File is corrupted: " + file);
+            }
+            long value0 = readSlot(0);
+            long value1 = readSlot(1);
+            if (value0 < 0 && value1 < 0) {
+                throw new IOException("File is corrupted: " + file);
+            }
+            // 下次写入较旧的槽位
+            this.slot = value0 < value1 ? 0 : 1;
+            this.limit = Math.max(value0, value1);
+            this.next = new AtomicLong(limit);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 下一个 ID，只在租用新块时访问文件
+     *
+     * @throws IllegalStateException
+     *         已关闭
+     * @throws UncheckedIOException
+     *         租用新块时写文件失败
+     */
+    public long nextId() {
+        long id = next.getAndIncrement();
+        if (closed) {
+            throw new IllegalStateException("Allocator is closed");
+        }
+        if (id >= limit) {
+            lease(id);
+        }
+        return id;
+    }
+
+    /**
+     * 租用新块，直到 id 在上限之内
+     *
+     * @param id
+     */
+    private synchronized void lease(long id) {
+        while (id >= limit) {
+            if (closed) {
+                throw new IllegalStateException("Allocator is closed");
+            }
+            long value = limit + blockSize;
+            try {
+                writeSlot(slot, value);
+                if (SyncPolicy.FORCE == syncPolicy) {
+                    buffer.force();
+                }
+            } catch (RuntimeException e) {
+                throw new UncheckedIOException(new IOException("Can not lease a new block", e));
+            }
+            slot ^= 1;
+            limit = value;
+        }
+    }
+
+    /**
+     * 把上限写回为下一个未分配的 ID 并释放文件
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // 先设置 closed，之后自增得到的 ID 都不会返回，next 覆盖所有已返回的 ID
+            long value = Math.min(next.get(), limit);
+            writeSlot(slot, value);
+            writeSlot(slot ^ 1, value);
+            buffer.force();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return 已写入文件的上限，小于它的 ID 都可能已分配
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return
+     */
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    /**
+     * @param slot
+     *
+     * @return 槽位中的上限，无效时返回 -1
+     */
+    private long readSlot(int slot) {
+        int offset = SLOT_OFFSET + slot * SLOT_SIZE;
+        long value = buffer.getLong(offset);
+        if (value < 0 || buffer.getLong(offset + 8) != (value ^ MAGIC)) {
+            return -1L;
+        }
+        return value;
+    }
+
+    /**
+     * @param slot
+     * @param value
+     */
+    private void writeSlot(int slot, long value) {
+        int offset = SLOT_OFFSET + slot * SLOT_SIZE;
+        buffer.putLong(offset, value);
+        buffer.putLong(offset + 8, value ^ MAGIC);
+    }
+
+    /**
+     * 租用新块时是否 fsync
+     */
+    public enum SyncPolicy {
+        /**
+         * 每次租用都 fsync，断电也不会重复分配
+         */
+        FORCE,
+        /**
+         * 只写入内存映射，由操作系统写回磁盘，进程崩溃不会重复分配，断电可能重复分配
+         */
+        NONE
+    }
+
+}
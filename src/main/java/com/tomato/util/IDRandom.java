@@ -0,0 +1,302 @@
+package com.tomato.util;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 生成随机 ID 的随机数源，每个线程使用自己的状态，线程之间没有竞争。
+ * <li/>{@link Mode#SECURE} 每个线程一个 AES-CTR 密钥流，密钥和计数器取自共享的 {@code SecureRandom}；与 SP 800-90A CTR_DRBG 一样，
+ * 每生成一块 {@link #POOL_SIZE} 字节后立即用随后的密钥流更新密钥和计数器 (Update)，块中已输出的字节随即清除，取得线程的状态也不能推算出之前生成的字节
+ * <li/>{@link Mode#FAST} 每个线程一个 {@code SplittableRandom}，种子取自共享的 {@code SecureRandom}，结果可预测，不能用于令牌等安全场合
+ * <li/>两种模式每生成 {@link #RESEED_INTERVAL} 字节后都重新从 {@code SecureRandom} 取种子，只有取种子时才会访问共享的 {@code SecureRandom}
+ */
+public final class IDRandom {
+    /**
+     * 每个线程生成多少字节后重新取种子
+     */
+    public static final int RESEED_INTERVAL = 1 << 20;
+    /**
+     * 加密强度，适用于所有场合，默认
+     */
+    public static final IDRandom SECURE = new IDRandom(Mode.SECURE);
+    /**
+     * 速度优先，只适用于请求号、跟踪号等不需要保密的 ID
+     */
+    public static final IDRandom FAST = new IDRandom(Mode.FAST);
+    private static final String ALGORITHM_AES = "AES";
+    private static final String TRANSFORMATION_AES_CTR = "AES/CTR/NoPadding";
+    private static final int KEY_SIZE = 16;
+    private static final int SEED_SIZE = KEY_SIZE * 2;
+    private static final int POOL_SIZE = 1024;
+    private static final SecureRandom SEED_SOURCE = new SecureRandom();
+    private final Mode mode;
+    // Store local thread information
+    private final ThreadLocal<Generator> generatorHolder = new ThreadLocal<Generator>() {
+
+        /* (non-Javadoc)
+         * @see java.lang.ThreadLocal#initialValue()
+         */
+        @Override
+        protected Generator initialValue() {
+            return Mode.SECURE == mode ? new CipherGenerator() : new SplittableGenerator();
+        }
+
+    };
+
+    /**
+     * @param mode
+     */
+    private IDRandom(Mode mode) {
+        super();
+        this.mode = mode;
+    }
+
+    /**
+     * @param mode
+     *
+     * @return 永远不会返回null
+     */
+    public static IDRandom getInstance(Mode mode) {
+        if (null == mode) {
+            throw new NullPointerException("mode");
+        }
+        return Mode.SECURE == mode ? SECURE : FAST;
+    }
+
+    /**
+     * @return
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 填充 bytes[off..off+len-1]
+     *
+     * @param bytes
+     * @param off
+     * @param len
+     */
+    public void nextBytes(byte[] bytes, int off, int len) {
+        if (off < 0 || len < 0 || bytes.length - len < off) {
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", length: " + bytes.length);
+        }
+        generatorHolder.get().nextBytes(bytes, off, len);
+    }
+
+    /**
+     * @param bytes
+     */
+    public void nextBytes(byte[] bytes) {
+        nextBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return
+     */
+    public long nextLong() {
+        return generatorHolder.get().nextLong();
+    }
+
+    /**
+     * 随机数源的强度
+     */
+    public enum Mode {
+        SECURE, FAST
+    }
+
+    /**
+     * 线程私有的生成器
+     */
+    private static abstract class Generator {
+        private int remaining;
+
+        /**
+         * 重新取种子
+         */
+        protected abstract void reseed();
+
+        /**
+         * @param bytes
+         * @param off
+         * @param len
+         */
+        protected abstract void generate(byte[] bytes, int off, int len);
+
+        /**
+         * @return
+         */
+        protected abstract long generateLong();
+
+        /**
+         * @param len
+         */
+        private void consume(int len) {
+            remaining -= len;
+            if (remaining < 0) {
+                reseed();
+                remaining = RESEED_INTERVAL - len;
+            }
+        }
+
+        /**
+         * @param bytes
+         * @param off
+         * @param len
+         */
+        final void nextBytes(byte[] bytes, int off, int len) {
+            consume(len);
+            generate(bytes, off, len);
+        }
+
+        /**
+         * @return
+         */
+        final long nextLong() {
+            consume(8);
+            return generateLong();
+        }
+    }
+
+    /**
+     * AES-CTR 密钥流，每次生成 {@link #POOL_SIZE} 字节，以及下一块的密钥和计数器
+     */
+    private static final class CipherGenerator extends Generator {
+        private final byte[] zeros = new byte[POOL_SIZE + SEED_SIZE];
+        private final byte[] pool = new byte[POOL_SIZE + SEED_SIZE];
+        private final Cipher cipher;
+        private int position = POOL_SIZE;
+
+        CipherGenerator() {
+            try {
+                cipher = Cipher.getInstance(TRANSFORMATION_AES_CTR);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.tomato.util.IDRandom.Generator#reseed()
+         */
+        @Override
+        protected void reseed() {
+            byte[] seed = new byte[SEED_SIZE];
+            SEED_SOURCE.nextBytes(seed);
+            init(seed, 0);
+            Arrays.fill(seed, (byte) 0);
+            // 丢弃旧密钥生成的字节
+            Arrays.fill(pool, (byte) 0);
+            position = POOL_SIZE;
+        }
+
+        /* (non-Javadoc)
+         * @see com.tomato.util.IDRandom.Generator#generate(byte[], int, int)
+         */
+        @Override
+        protected void generate(byte[] bytes, int off, int len) {
+            while (len > 0) {
+                if (position == POOL_SIZE) {
+                    fill();
+                }
+                int n = Math.min(len, POOL_SIZE - position);
+                System.arraycopy(pool, position, bytes, off, n);
+                // 清除已输出的字节
+                Arrays.fill(pool, position, position + n, (byte) 0);
+                position += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.tomato.util.IDRandom.Generator#generateLong()
+         */
+        @Override
+        protected long generateLong() {
+            if (position > POOL_SIZE - 8) {
+                fill();
+            }
+            long v = 0;
+            for (int i = 0; i < 8; ++i) {
+                v = (v << 8) | (pool[position] & 0xff);
+                // 清除已输出的字节
+                pool[position++] = 0;
+            }
+            return v;
+        }
+
+        /**
+         * 生成一块，并用块后的 {@link #SEED_SIZE} 字节更新密钥和计数器 (Update)，生成这一块的密钥随即丢弃
+         */
+        private void fill() {
+            try {
+                cipher.update(zeros, 0, POOL_SIZE + SEED_SIZE, pool, 0);
+            } catch (ShortBufferException e) {
+                throw new RuntimeException(e);
+            }
+            init(pool, POOL_SIZE);
+            Arrays.fill(pool, POOL_SIZE, POOL_SIZE + SEED_SIZE, (byte) 0);
+            position = 0;
+        }
+
+        /**
+         * @param seed
+         * @param off
+         *         seed[off..off+15] 为密钥，seed[off+16..off+31] 为计数器
+         */
+        private void init(byte[] seed, int off) {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(seed, off, KEY_SIZE, ALGORITHM_AES),
+                        new IvParameterSpec(seed, off + KEY_SIZE, KEY_SIZE));
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * SplittableRandom
+     */
+    private static final class SplittableGenerator extends Generator {
+        private SplittableRandom random;
+
+        /* (non-Javadoc)
+         * @see com.tomato.util.IDRandom.Generator#reseed()
+         */
+        @Override
+        protected void reseed() {
+            random = new SplittableRandom(SEED_SOURCE.nextLong());
+        }
+
+        /* (non-Javadoc)
+         * @see com.tomato.util.IDRandom.Generator#generate(byte[], int, int)
+         */
+        @Override
+        protected void generate(byte[] bytes, int off, int len) {
+            int end = off + len;
+            while (off < end) {
+                long v = random.nextLong();
+                for (int i = Math.min(8, end - off); i > 0; --i) {
+                    bytes[off++] = (byte) v;
+                    v >>>= 8;
+                }
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.tomato.util.IDRandom.Generator#generateLong()
+         */
+        @Override
+        protected long generateLong() {
+            return random.nextLong();
+        }
+    }
+
+}
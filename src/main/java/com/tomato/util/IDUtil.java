@@ -1,7 +1,8 @@
 package com.tomato.util;
 
 import java.nio.charset.Charset;
-import java.util.UUID;
+import java.security.DigestException;
+import java.security.MessageDigest;
 
 public final class IDUtil {
     /**
@@ -11,6 +12,22 @@ public final class IDUtil {
     public static final Charset CHARSET_DEFAULT = Charset.forName("UTF-8");
     public static final String ID_PREFIX = "id";
     private static final char SALT_NEW_LINE = '\n';
+    private static final int SALT_BUFFER_SIZE = 256;
+    private static final int UUID_SIZE = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // Store local thread information
+    private static final ThreadLocal<byte[]> bufferHolder = new ThreadLocal<byte[]>() {
+
+        /* (non-Javadoc)
+         * @see java.lang.ThreadLocal#initialValue()
+         */
+        @Override
+        protected byte[] initialValue() {
+            return new byte[SALT_BUFFER_SIZE];
+        }
+
+    };
+    private static final SortableID sortableID = new SortableID();
 
     // Prevent instantiation
     private IDUtil() {
@@ -29,7 +46,17 @@ public final class IDUtil {
      * @return
      */
     public static String getFormatedUUID() {
-        return UUID.randomUUID().toString();
+        return getFormatedUUID(IDRandom.SECURE);
+    }
+
+    /**
+     * @param random
+     *         随机数源，不带参数的方法使用 {@link IDRandom#SECURE}
+     *
+     * @return
+     */
+    public static String getFormatedUUID(IDRandom random) {
+        return toFormatedString(randomUUID(random));
     }
 
     /**
@@ -38,7 +65,7 @@ public final class IDUtil {
      * @return
      */
     public static String getFormatedUUID(byte[] key) {
-        return UUID.nameUUIDFromBytes(key).toString();
+        return toFormatedString(nameUUID(key));
     }
 
     /**
@@ -47,14 +74,24 @@ public final class IDUtil {
      * @return
      */
     public static String getFormatedUUID(Object... keys) {
-        return UUID.nameUUIDFromBytes(getBytes(keys)).toString();
+        return toFormatedString(nameUUID(keys));
     }
 
     /**
      * @return
      */
     public static String getUUID() {
-        return toString(UUID.randomUUID());
+        return getUUID(IDRandom.SECURE);
+    }
+
+    /**
+     * @param random
+     *         随机数源，不带参数的方法使用 {@link IDRandom#SECURE}
+     *
+     * @return
+     */
+    public static String getUUID(IDRandom random) {
+        return toBase16String(randomUUID(random), false);
     }
 
     /**
@@ -63,7 +100,7 @@ public final class IDUtil {
      * @return
      */
     public static String getUUID(byte[] key) {
-        return toString(UUID.nameUUIDFromBytes(key));
+        return toBase16String(nameUUID(key), false);
     }
 
     /**
@@ -72,7 +109,7 @@ public final class IDUtil {
      * @return
      */
     public static String getUUID(Object... keys) {
-        return toString(UUID.nameUUIDFromBytes(getBytes(keys)));
+        return toBase16String(nameUUID(keys), false);
     }
 
     /**
@@ -89,7 +126,18 @@ public final class IDUtil {
      * @return
      */
     public static String getID(boolean prefixId) {
-        return toBase16String(UUID.randomUUID(), prefixId);
+        return getID(IDRandom.SECURE, prefixId);
+    }
+
+    /**
+     * @param random
+     *         随机数源，不带该参数的方法使用 {@link IDRandom#SECURE}
+     * @param prefixId
+     *
+     * @return
+     */
+    public static String getID(IDRandom random, boolean prefixId) {
+        return toBase16String(randomUUID(random), prefixId);
     }
 
     /**
@@ -106,7 +154,7 @@ public final class IDUtil {
      * @return
      */
     public static String getID(boolean prefixId, byte[] key) {
-        return toBase16String(UUID.nameUUIDFromBytes(key), prefixId);
+        return toBase16String(nameUUID(key), prefixId);
     }
 
     /**
@@ -125,7 +173,7 @@ public final class IDUtil {
      * @return
      */
     public static String getID(boolean prefixId, Object... keys) {
-        return toBase16String(UUID.nameUUIDFromBytes(getBytes(keys)), prefixId);
+        return toBase16String(nameUUID(keys), prefixId);
     }
 
     /**
@@ -143,7 +191,18 @@ public final class IDUtil {
      * @return
      */
     public static String getBase36ID(boolean prefixId) {
-        return toBase36String(UUID.randomUUID(), prefixId);
+        return getBase36ID(IDRandom.SECURE, prefixId);
+    }
+
+    /**
+     * @param random
+     *         随机数源，不带该参数的方法使用 {@link IDRandom#SECURE}
+     * @param prefixId
+     *
+     * @return
+     */
+    public static String getBase36ID(IDRandom random, boolean prefixId) {
+        return toBase36String(randomUUID(random), UUID_SIZE, prefixId);
     }
 
     /**
@@ -174,7 +233,7 @@ public final class IDUtil {
      * @return
      */
     public static String getBase36ID(boolean prefixId, byte[] key) {
-        return toBase36String(UUID.nameUUIDFromBytes(key), prefixId);
+        return toBase36String(nameUUID(key), UUID_SIZE, prefixId);
     }
 
     /**
@@ -193,7 +252,7 @@ public final class IDUtil {
      * @return
      */
     public static String getBase36ID(boolean prefixId, Object... keys) {
-        return toBase36String(UUID.nameUUIDFromBytes(getBytes(keys)), prefixId);
+        return toBase36String(nameUUID(keys), UUID_SIZE, prefixId);
     }
 
     /**
@@ -221,7 +280,18 @@ public final class IDUtil {
      * @return
      */
     public static String getBase58ID(boolean prefixId) {
-        return toBase58String(UUID.randomUUID(), prefixId);
+        return getBase58ID(IDRandom.SECURE, prefixId);
+    }
+
+    /**
+     * @param random
+     *         随机数源，不带该参数的方法使用 {@link IDRandom#SECURE}
+     * @param prefixId
+     *
+     * @return
+     */
+    public static String getBase58ID(IDRandom random, boolean prefixId) {
+        return toBase58String(randomUUID(random), UUID_SIZE, prefixId);
     }
 
     /**
@@ -253,7 +323,7 @@ public final class IDUtil {
      * @return
      */
     public static String getBase58ID(boolean prefixId, byte[] key) {
-        return toBase58String(UUID.nameUUIDFromBytes(key), prefixId);
+        return toBase58String(nameUUID(key), UUID_SIZE, prefixId);
     }
 
     /**
@@ -272,7 +342,7 @@ public final class IDUtil {
      * @return
      */
     public static String getBase58ID(boolean prefixId, Object... keys) {
-        return toBase58String(UUID.nameUUIDFromBytes(getBytes(keys)), prefixId);
+        return toBase58String(nameUUID(keys), UUID_SIZE, prefixId);
     }
 
     /**
@@ -285,6 +355,39 @@ public final class IDUtil {
 
     }
 
+    /**
+     * 按时间递增的第7版 UUID，字典序与时间顺序一致，适合作为数据库索引的主键
+     *
+     * @return
+     */
+    public static String getSortableUUID() {
+        return sortableID.nextString();
+    }
+
+    /**
+     * 按时间递增的定长 Base36 ID，字典序与时间顺序一致
+     *
+     * @param prefixId
+     *
+     * @return
+     */
+    public static String getSortableBase36ID(boolean prefixId) {
+        String baseId = sortableID.nextBase36();
+        return prefixId ? ID_PREFIX + baseId : baseId;
+    }
+
+    /**
+     * 按时间递增的定长 Base58 ID，字典序与时间顺序一致
+     *
+     * @param prefixId
+     *
+     * @return
+     */
+    public static String getSortableBase58ID(boolean prefixId) {
+        String baseId = sortableID.nextBase58();
+        return prefixId ? ID_PREFIX + baseId : baseId;
+    }
+
     /**
      * @param keys
      *
@@ -319,31 +422,246 @@ public final class IDUtil {
     }
 
     /**
-     * @param uuid
+     * 与 UUID.randomUUID() 相同格式的第4版 UUID，但不共享 SecureRandom，也不生成 UUID 对象
      *
-     * @return
+     * @param random
+     *
+     * @return 当前线程的缓冲区，前16字节为 UUID，只在下次调用前有效
      */
-    private static String toString(UUID uuid) {
-        StringBuilder sb = new StringBuilder(32);
-        sb.append(NumberUtil.toHexString(uuid.getMostSignificantBits(), 16));
-        sb.append(NumberUtil.toHexString(uuid.getLeastSignificantBits(), 16));
-        return sb.toString();
+    private static byte[] randomUUID(IDRandom random) {
+        if (null == random) {
+            throw new NullPointerException("random");
+        }
+        byte[] buf = bufferHolder.get();
+        random.nextBytes(buf, 0, UUID_SIZE);
+        buf[6] &= 0x0f; /* clear version        */
+        buf[6] |= 0x40; /* set to version 4     */
+        buf[8] &= 0x3f; /* clear variant        */
+        buf[8] |= 0x80; /* set to IETF variant  */
+        return buf;
+    }
+
+    /**
+     * 与 UUID.nameUUIDFromBytes(key) 相同的 MD5 名字 UUID，使用当前线程的 MD5Util 实例
+     *
+     * @param key
+     *
+     * @return 当前线程的缓冲区，前16字节为 UUID，只在下次调用前有效
+     */
+    private static byte[] nameUUID(byte[] key) {
+        MessageDigest md5 = MD5Util.getInstance();
+        md5.reset();
+        md5.update(key);
+        return digest(md5, bufferHolder.get());
+    }
+
+    /**
+     * 与 UUID.nameUUIDFromBytes(getBytes(keys)) 逐字节相同，但各个 key 直接按 UTF-8 编码写入 MD5，不生成中间的 salts 字符串和字节数组
+     *
+     * @param keys
+     *
+     * @return 当前线程的缓冲区，前16字节为 UUID，只在下次调用前有效
+     */
+    private static byte[] nameUUID(Object... keys) {
+        // key 的 toString() 可能重入 IDUtil，必须在使用当前线程的 MD5 和缓冲区之前转为字符串
+        keys = toSalts(keys);
+        MessageDigest md5 = MD5Util.getInstance();
+        md5.reset();
+        byte[] buf = bufferHolder.get();
+        if (null != keys) {
+            // 必须与 getSalts 保持一致
+            int n = 0;
+            boolean firstLineSkiped = false;
+            for (Object salt : keys) {
+                if (n > buf.length - 1) {
+                    md5.update(buf, 0, n);
+                    n = 0;
+                }
+                if (firstLineSkiped) {
+                    buf[n++] = SALT_NEW_LINE;
+                } else {
+                    firstLineSkiped = true;
+                }
+                if (null == salt) {
+                    continue;
+                } else if (isInteger(salt)) {
+                    // NumberUtil.toString 对整数即 toString()
+                    n = update(md5, buf, n, ((Number) salt).longValue());
+                } else {
+                    n = update(md5, buf, n, (String) salt);
+                }
+            }
+            md5.update(buf, 0, n);
+        }
+        return digest(md5, buf);
+    }
+
+    /**
+     * @param keys
+     *
+     * @return 除 null、String 和整数外的 key 都转为 StringUtil.valueOf 的字符串，需要转换时返回新数组，不修改 keys
+     */
+    private static Object[] toSalts(Object[] keys) {
+        Object[] salts = keys;
+        if (null != keys) {
+            for (int i = 0; i < keys.length; ++i) {
+                Object salt = keys[i];
+                if (null != salt && !(salt instanceof String) && !isInteger(salt)) {
+                    if (salts == keys) {
+                        salts = keys.clone();
+                    }
+                    // StringBuilder.append(null) 为 "null"
+                    salts[i] = String.valueOf(StringUtil.valueOf(salt));
+                }
+            }
+        }
+        return salts;
+    }
+
+    /**
+     * @param salt
+     *
+     * @return 是否为 Long、Integer、Short 或 Byte
+     */
+    private static boolean isInteger(Object salt) {
+        return salt instanceof Long || salt instanceof Integer || salt instanceof Short || salt instanceof Byte;
+    }
+
+    /**
+     * 按 String.getBytes(UTF-8) 的规则编码，不成对的代理字符编码为 '?'
+     *
+     * @param md5
+     * @param buf
+     * @param n
+     *         buf 中待写入 MD5 的字节数
+     * @param s
+     *
+     * @return buf 中待写入 MD5 的字节数
+     */
+    private static int update(MessageDigest md5, byte[] buf, int n, String s) {
+        int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            if (n > buf.length - 4) {
+                md5.update(buf, 0, n);
+                n = 0;
+            }
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[n++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[n++] = (byte) (0xc0 | (c >> 6));
+                buf[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (!Character.isSurrogate(c)) {
+                buf[n++] = (byte) (0xe0 | (c >> 12));
+                buf[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[n++] = (byte) (0xf0 | (cp >> 18));
+                buf[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buf[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buf[n++] = (byte) (0x80 | (cp & 0x3f));
+            } else {
+                buf[n++] = '?';
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 与 Long.toString(v) 相同的十进制数字
+     *
+     * @param md5
+     * @param buf
+     * @param n
+     *         buf 中待写入 MD5 的字节数
+     * @param v
+     *
+     * @return buf 中待写入 MD5 的字节数
+     */
+    private static int update(MessageDigest md5, byte[] buf, int n, long v) {
+        if (n > buf.length - 20) {
+            md5.update(buf, 0, n);
+            n = 0;
+        }
+        if (v < 0) {
+            buf[n++] = '-';
+        }
+        int start = n;
+        do {
+            // v % 10 在 [-9, 0] 之间时取反, Long.MIN_VALUE 也不会溢出
+            buf[n++] = (byte) ('0' + Math.abs(v % 10));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = n - 1; i < j; ++i, --j) {
+            byte b = buf[i];
+            buf[i] = buf[j];
+            buf[j] = b;
+        }
+        return n;
+    }
+
+    /**
+     * 结束 MD5 并按 UUID.nameUUIDFromBytes 设置版本和变体
+     *
+     * @param md5
+     * @param buf
+     *
+     * @return buf，前16字节为 UUID
+     */
+    private static byte[] digest(MessageDigest md5, byte[] buf) {
+        try {
+            md5.digest(buf, 0, UUID_SIZE);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
+        buf[6] &= 0x0f; /* clear version        */
+        buf[6] |= 0x30; /* set to version 3     */
+        buf[8] &= 0x3f; /* clear variant        */
+        buf[8] |= 0x80; /* set to IETF variant  */
+        return buf;
     }
 
     /**
      * @param uuid
+     *         前16字节为 UUID
      * @param prefixId
      *
      * @return
      */
-    private static String toBase16String(UUID uuid, boolean prefixId) {
-        StringBuilder sb = new StringBuilder(34);
+    private static String toBase16String(byte[] uuid, boolean prefixId) {
+        int n = 0;
+        char[] chars = new char[prefixId ? 34 : 32];
         if (prefixId) {
-            sb.append(ID_PREFIX);
+            chars[n++] = ID_PREFIX.charAt(0);
+            chars[n++] = ID_PREFIX.charAt(1);
         }
-        sb.append(NumberUtil.toHexString(uuid.getMostSignificantBits(), 16));
-        sb.append(NumberUtil.toHexString(uuid.getLeastSignificantBits(), 16));
-        return sb.toString();
+        for (int i = 0; i < UUID_SIZE; ++i) {
+            chars[n++] = HEX_DIGITS[(uuid[i] >> 4) & 0xf];
+            chars[n++] = HEX_DIGITS[uuid[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 与 UUID.toString() 相同的格式
+     *
+     * @param uuid
+     *         前16字节为 UUID
+     *
+     * @return
+     */
+    private static String toFormatedString(byte[] uuid) {
+        int n = 0;
+        char[] chars = new char[36];
+        for (int i = 0; i < UUID_SIZE; ++i) {
+            if (i == 4 || i == 6 || i == 8 || i == 10) {
+                chars[n++] = '-';
+            }
+            chars[n++] = HEX_DIGITS[(uuid[i] >> 4) & 0xf];
+            chars[n++] = HEX_DIGITS[uuid[i] & 0xf];
+        }
+        return new String(chars);
     }
 
     /**
@@ -365,24 +683,30 @@ public final class IDUtil {
 
     /**
      * @param bytes
+     * @param len
+     *         只编码前 len 个字节
+     * @param prefixId
      *
      * @return
      */
-    public static String toBase36String(byte[] bytes) {
-        return toBase36String(bytes, false);
+    private static String toBase36String(byte[] bytes, int len, boolean prefixId) {
+        String baseId = Base36.encode(bytes, 0, len);
+        if (prefixId) {
+            StringBuilder sb = new StringBuilder(28);
+            sb.append(ID_PREFIX);
+            sb.append(baseId);
+            baseId = sb.toString();
+        }
+        return baseId;
     }
 
     /**
-     * @param uuid
-     * @param prefixId
+     * @param bytes
      *
      * @return
      */
-    private static String toBase36String(UUID uuid, boolean prefixId) {
-        byte[] significant = new byte[16];
-        NumberUtil.toBytes(uuid.getMostSignificantBits(), significant, 0);
-        NumberUtil.toBytes(uuid.getLeastSignificantBits(), significant, 8);
-        return toBase36String(significant, prefixId);
+    public static String toBase36String(byte[] bytes) {
+        return toBase36String(bytes, false);
     }
 
     /**
@@ -404,24 +728,30 @@ public final class IDUtil {
 
     /**
      * @param bytes
+     * @param len
+     *         只编码前 len 个字节
+     * @param prefixId
      *
      * @return
      */
-    public static String toBase58String(byte[] bytes) {
-        return toBase58String(bytes, false);
+    private static String toBase58String(byte[] bytes, int len, boolean prefixId) {
+        String baseId = Base58.encode(bytes, 0, len);
+        if (prefixId) {
+            StringBuilder sb = new StringBuilder(24);
+            sb.append(ID_PREFIX);
+            sb.append(baseId);
+            baseId = sb.toString();
+        }
+        return baseId;
     }
 
     /**
-     * @param uuid
-     * @param prefixId
+     * @param bytes
      *
      * @return
      */
-    private static String toBase58String(UUID uuid, boolean prefixId) {
-        byte[] significant = new byte[16];
-        NumberUtil.toBytes(uuid.getMostSignificantBits(), significant, 0);
-        NumberUtil.toBytes(uuid.getLeastSignificantBits(), significant, 8);
-        return toBase58String(significant, prefixId);
+    public static String toBase58String(byte[] bytes) {
+        return toBase58String(bytes, false);
     }
 
 }
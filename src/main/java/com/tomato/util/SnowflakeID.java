@@ -0,0 +1,168 @@
+package com.tomato.util;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按时间递增的 64 位 ID (Snowflake)，无锁，同一实例生成的 ID 严格递增。
+ * <li/>41 位毫秒时间戳 (相对 epoch) | 10 位机器号 | 12 位序号
+ * <li/>同一毫秒内序号用完时，等待时钟进入下一毫秒，每毫秒最多生成 4096 个 ID
+ * <li/>时钟回拨不超过 maxBackwardMillis 毫秒时，在最后的毫秒内继续递增序号，超过则抛出 IllegalStateException；
+ * 回拨期间序号用完时，每次挂起 1 毫秒，直到时钟追上，不占用 CPU
+ * <li/>{@link #nextBase36()}、{@link #nextBase58()} 为定长字符串，字典序与时间顺序一致
+ */
+public final class SnowflakeID {
+    /**
+     * 默认 epoch: 2017-01-01 00:00:00 UTC
+     */
+    public static final long DEFAULT_EPOCH = 1483228800000L;
+    /**
+     * 默认允许的时钟回拨毫秒数
+     */
+    public static final long DEFAULT_MAX_BACKWARD_MILLIS = 5000L;
+    public static final int WORKER_ID_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = WORKER_ID_BITS + SEQUENCE_BITS;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    // 时钟回拨期间序号用完时，每次挂起的纳秒数
+    private static final long PARK_NANOS = 1000000L;
+    private static final long MAX_TIMESTAMP = (1L << (63 - TIMESTAMP_SHIFT)) - 1;
+    private static final int BASE36_WIDTH = Base36.getWidth(8);
+    private static final int BASE58_WIDTH = Base58.getWidth(8);
+    private final int workerId;
+    private final long epoch;
+    private final long maxBackwardMillis;
+    private final Clock clock;
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * @param workerId
+     *         [0, {@link #MAX_WORKER_ID}]
+     */
+    public SnowflakeID(int workerId) {
+        this(workerId, DEFAULT_EPOCH, DEFAULT_MAX_BACKWARD_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param workerId
+     *         [0, {@link #MAX_WORKER_ID}]
+     * @param epoch
+     *         时间戳的起点，毫秒
+     * @param maxBackwardMillis
+     *         允许的时钟回拨毫秒数
+     * @param clock
+     */
+    public SnowflakeID(int workerId, long epoch, long maxBackwardMillis, Clock clock) {
+        super();
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId: " + workerId);
+        }
+        if (epoch < 0) {
+            throw new IllegalArgumentException("epoch: " + epoch);
+        }
+        if (maxBackwardMillis < 0) {
+            throw new IllegalArgumentException("maxBackwardMillis: " + maxBackwardMillis);
+        }
+        if (null == clock) {
+            throw new NullPointerException("clock");
+        }
+        this.workerId = workerId;
+        this.epoch = epoch;
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return 比此实例之前返回的所有 ID 都大的正数
+     *
+     * @throws IllegalStateException
+     *         时钟回拨超过 maxBackwardMillis，或时间戳超出 41 位
+     */
+    public long nextId() {
+        for (; ; ) {
+            long prev = last.get();
+            long timestamp = prev >>> TIMESTAMP_SHIFT;
+            long now = clock.millis() - epoch;
+            long next;
+            if (now > timestamp) {
+                if (now > MAX_TIMESTAMP) {
+                    throw new IllegalStateException("Timestamp overflow: " + (now + epoch));
+                }
+                next = now << TIMESTAMP_SHIFT | (long) workerId << SEQUENCE_BITS;
+            } else if (timestamp - now > maxBackwardMillis) {
+                throw new IllegalStateException("Clock moved backwards " + (timestamp - now) + " ms");
+            } else if ((prev & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = prev + 1;
+            } else {
+                // 序号用完，等待下一毫秒；不借用后面的毫秒，所以时间戳超前时钟只能是时钟回拨，可能要等 maxBackwardMillis 毫秒
+                if (timestamp > now) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                } else {
+                    Thread.yield();
+                }
+                continue;
+            }
+            if (last.compareAndSet(prev, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return 定长 Base36 字符串
+     */
+    public String nextBase36() {
+        return Base36.encode(0L, nextId(), BASE36_WIDTH);
+    }
+
+    /**
+     * @return 定长 Base58 字符串
+     */
+    public String nextBase58() {
+        return Base58.encode(0L, nextId(), BASE58_WIDTH);
+    }
+
+    /**
+     * @param id
+     *
+     * @return 生成 id 时的时间，毫秒
+     */
+    public long getTimestamp(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + epoch;
+    }
+
+    /**
+     * @param id
+     *
+     * @return
+     */
+    public static int getWorkerId(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_WORKER_ID;
+    }
+
+    /**
+     * @param id
+     *
+     * @return
+     */
+    public static int getSequence(long id) {
+        return (int) (id & SEQUENCE_MASK);
+    }
+
+    /**
+     * @return
+     */
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * @return
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.tomato.util;
+
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 按时间递增的 128 位 ID，格式为第7版 UUID (RFC 9562)，无锁。
+ * <li/>48 位 Unix 毫秒时间戳 | 4 位版本 7 | 12 位序号 | 2 位变体 | 62 位随机数
+ * <li/>同一实例生成的 ID 严格递增：同一毫秒内序号递增，序号用完时等待时钟进入下一毫秒；时钟回拨不超过 maxBackwardMillis 毫秒时，在最后的毫秒内继续递增序号，
+ * 超过则抛出 IllegalStateException；回拨期间序号用完时，每次挂起 1 毫秒，直到时钟追上，不占用 CPU
+ * <li/>不同实例之间靠 62 位随机数区分
+ * <li/>{@link #nextString()}、{@link #nextBase36()}、{@link #nextBase58()} 为定长字符串，字典序与时间顺序一致
+ */
+public final class SortableID {
+    /**
+     * 默认允许的时钟回拨毫秒数
+     */
+    public static final long DEFAULT_MAX_BACKWARD_MILLIS = 5000L;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    // 时钟回拨期间序号用完时，每次挂起的纳秒数
+    private static final long PARK_NANOS = 1000000L;
+    private static final long MAX_TIMESTAMP = (1L << 48) - 1;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+    private static final int BASE36_WIDTH = Base36.getWidth(16);
+    private static final int BASE58_WIDTH = Base58.getWidth(16);
+    private final IDRandom random;
+    private final long maxBackwardMillis;
+    private final Clock clock;
+    // 时间戳和序号
+    private final AtomicLong last = new AtomicLong();
+
+    public SortableID() {
+        this(IDRandom.SECURE, DEFAULT_MAX_BACKWARD_MILLIS, Clock.systemUTC());
+    }
+
+    /**
+     * @param random
+     *         随机数源
+     * @param maxBackwardMillis
+     *         允许的时钟回拨毫秒数
+     * @param clock
+     */
+    public SortableID(IDRandom random, long maxBackwardMillis, Clock clock) {
+        super();
+        if (null == random) {
+            throw new NullPointerException("random");
+        }
+        if (maxBackwardMillis < 0) {
+            throw new IllegalArgumentException("maxBackwardMillis: " + maxBackwardMillis);
+        }
+        if (null == clock) {
+            throw new NullPointerException("clock");
+        }
+        this.random = random;
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return 高 64 位
+     */
+    private long nextMostSignificantBits() {
+        for (; ; ) {
+            long prev = last.get();
+            long timestamp = prev >>> SEQUENCE_BITS;
+            long now = clock.millis();
+            long next;
+            if (now > timestamp) {
+                if (now > MAX_TIMESTAMP) {
+                    throw new IllegalStateException("Timestamp overflow: " + now);
+                }
+                next = now << SEQUENCE_BITS;
+            } else if (timestamp - now > maxBackwardMillis) {
+                throw new IllegalStateException("Clock moved backwards " + (timestamp - now) + " ms");
+            } else if ((prev & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = prev + 1;
+            } else {
+                // 序号用完，等待下一毫秒；不借用后面的毫秒，所以时间戳超前时钟只能是时钟回拨，可能要等 maxBackwardMillis 毫秒
+                if (timestamp > now) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                } else {
+                    Thread.yield();
+                }
+                continue;
+            }
+            if (last.compareAndSet(prev, next)) {
+                return (next >>> SEQUENCE_BITS) << 16 | VERSION | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * @return 低 64 位
+     */
+    private long nextLeastSignificantBits() {
+        return random.nextLong() & RANDOM_MASK | VARIANT;
+    }
+
+    /**
+     * @return
+     */
+    public UUID nextUUID() {
+        long msb = nextMostSignificantBits();
+        return new UUID(msb, nextLeastSignificantBits());
+    }
+
+    /**
+     * @return 与 UUID.toString() 相同的格式
+     */
+    public String nextString() {
+        return nextUUID().toString();
+    }
+
+    /**
+     * @return 定长 Base36 字符串
+     */
+    public String nextBase36() {
+        long msb = nextMostSignificantBits();
+        return Base36.encode(msb, nextLeastSignificantBits(), BASE36_WIDTH);
+    }
+
+    /**
+     * @return 定长 Base58 字符串
+     */
+    public String nextBase58() {
+        long msb = nextMostSignificantBits();
+        return Base58.encode(msb, nextLeastSignificantBits(), BASE58_WIDTH);
+    }
+
+    /**
+     * @param uuid
+     *
+     * @return 生成 uuid 时的时间，毫秒
+     */
+    public static long getTimestamp(UUID uuid) {
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+
+}
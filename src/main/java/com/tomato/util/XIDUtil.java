@@ -28,6 +28,100 @@ public final class XIDUtil {
     private static final CheckDigit SHXYDM_CHECKER = new CheckGB32100Mod31_3();
     private static Object PYJC_TRANSLATOR;
 
+    /**
+     * 统一社会信用代码字符集，字符在其中的位置即为代码字符数值（不使用 I、O、S、V、Z）
+     */
+    private static final String SHXYDM_CHARS = "0123456789ABCDEFGHJKLMNPQRTUWXY";
+    /**
+     * ASCII 字母数字的数值（0-9、A-Z 为 10-35，不区分大小写），其他字符为 -1
+     */
+    private static final byte[] ALNUM_VALUES = new byte[128];
+    /**
+     * ASCII 字符的统一社会信用代码字符数值（不区分大小写），其他字符为 -1
+     */
+    private static final byte[] SHXYDM_VALUES = new byte[128];
+    private static final Classification[] CLASSIFICATIONS = new Classification[Type.values().length * 2];
+
+    static {
+        for (int c = 0; c < 128; ++c) {
+            int upper = Character.toUpperCase(c);
+            if (c >= '0' && c <= '9') {
+                ALNUM_VALUES[c] = (byte) (c - '0');
+            } else if (upper >= 'A' && upper <= 'Z') {
+                ALNUM_VALUES[c] = (byte) (upper - 'A' + 10);
+            } else {
+                ALNUM_VALUES[c] = -1;
+            }
+            SHXYDM_VALUES[c] = (byte) SHXYDM_CHARS.indexOf(upper);
+        }
+        for (Type type : Type.values()) {
+            CLASSIFICATIONS[type.ordinal() * 2] = new Classification(type, false);
+            CLASSIFICATIONS[type.ordinal() * 2 + 1] = new Classification(type, true);
+        }
+    }
+
+    /**
+     * 证件号码类型
+     */
+    public enum Type {
+        /**
+         * 无法识别
+         */
+        UNKNOWN,
+        /**
+         * 第一代公民身份号码，15位数字，没有校验码
+         */
+        PIN15,
+        /**
+         * 第二代公民身份号码，18位，末位校验码按 ISO 7064 MOD 11-2 计算
+         */
+        PIN18,
+        /**
+         * 组织机构代码，9位，末位校验码按 GB 11714 计算
+         */
+        ZZJGDM,
+        /**
+         * 以组织机构代码为基础的15位纳税人识别号，6位行政区划码加9位组织机构代码
+         */
+        NSRSBH15,
+        /**
+         * 统一社会信用代码，18位，末位校验码按 GB 32100 计算，其中第9至17位为组织机构代码
+         */
+        SHXYDM
+    }
+
+    /**
+     * 证件号码的识别结果：类型及是否有效，实例是共享的常量
+     */
+    public static final class Classification {
+        private final Type type;
+        private final boolean valid;
+
+        private Classification(Type type, boolean valid) {
+            this.type = type;
+            this.valid = valid;
+        }
+
+        /**
+         * @return 识别出的类型
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return 校验码（第一代公民身份号码为格式）是否有效
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        @Override
+        public String toString() {
+            return type + (valid ? "" : "(invalid)");
+        }
+    }
+
     private XIDUtil() {
         super();
     }
@@ -398,6 +492,89 @@ public final class XIDUtil {
         return false;
     }
 
+    /**
+     * 一次扫描识别证件号码的类型并校验：长度、字符类别及各候选类型的校验和在同一次遍历中计算，不使用正则表达式。
+     * <p>
+     * 18位号码优先识别为统一社会信用代码，15位号码优先识别为以组织机构代码为基础的纳税人识别号，与 {@link #isNsrsbh(String)}
+     * 的判断顺序一致；校验失败时，前17位（或15位）全为数字的识别为公民身份号码。调用者应保证号码是干净的，含有非字母数字字符的一律无法识别。
+     *
+     * @param id
+     *         公民身份号码、组织机构代码、纳税人识别号或统一社会信用代码
+     *
+     * @return 识别结果
+     */
+    public static Classification classify(String id) {
+        int len;
+        if (null == id || ((len = id.length()) != PINUtil.MAX_PRCPIN_G2 && len != MAX_NSRSBH_15 && len != MIN_NSRSBH_9)) {
+            return CLASSIFICATIONS[Type.UNKNOWN.ordinal() * 2];
+        }
+        // 组织机构代码在号码中的位置
+        int zzjgdmOffset = len == MAX_NSRSBH_18 ? 8 : len == MAX_NSRSBH_15 ? 6 : 0;
+        boolean digits = true, shxydmChars = true;
+        // 公民身份号码、组织机构代码的 2^i 加权和，及统一社会信用代码的 3^i 加权和
+        int pin = 0, zzjgdm = 0, zzjgdmCheck = -1, shxydm = 0, w = 1;
+        for (int i = 0; i < len - 1; ++i) {
+            char c = id.charAt(i);
+            int v = c < 128 ? ALNUM_VALUES[c] : -1;
+            if (v < 0) {
+                return CLASSIFICATIONS[Type.UNKNOWN.ordinal() * 2];
+            }
+            if (v > 9) {
+                digits = false;
+            }
+            pin = 2 * (pin + v) % 11;
+            if (i >= zzjgdmOffset && i < zzjgdmOffset + 8) {
+                zzjgdm = 2 * (zzjgdm + v) % 11;
+            } else if (i == zzjgdmOffset + 8) {
+                zzjgdmCheck = checkValue(c);
+            }
+            int s = SHXYDM_VALUES[c];
+            if (s < 0) {
+                shxydmChars = false;
+            }
+            shxydm = (shxydm + s * w) % 31;
+            w = w * 3 % 31;
+        }
+        char last = id.charAt(len - 1);
+        if (last >= 128 || ALNUM_VALUES[last] < 0) {
+            return CLASSIFICATIONS[Type.UNKNOWN.ordinal() * 2];
+        }
+
+        Type type;
+        boolean valid;
+        if (len == MAX_NSRSBH_18) {
+            if (shxydmChars && (31 - shxydm) % 31 == SHXYDM_VALUES[last] && (11 - zzjgdm) % 11 == zzjgdmCheck) {
+                type = Type.SHXYDM;
+                valid = true;
+            } else if (digits) {
+                type = Type.PIN18;
+                valid = (12 - pin) % 11 == checkValue(last);
+            } else {
+                type = Type.SHXYDM;
+                valid = false;
+            }
+        } else if (len == MAX_NSRSBH_15) {
+            if ((11 - zzjgdm) % 11 == checkValue(last)) {
+                type = Type.NSRSBH15;
+                valid = true;
+            } else {
+                type = digits && last <= '9' ? Type.PIN15 : Type.NSRSBH15;
+                valid = type == Type.PIN15;
+            }
+        } else {
+            type = Type.ZZJGDM;
+            valid = (11 - zzjgdm) % 11 == checkValue(last);
+        }
+        return CLASSIFICATIONS[type.ordinal() * 2 + (valid ? 1 : 0)];
+    }
+
+    /**
+     * @return 校验码字符的数值：数字为0-9，X 为10，其他为-1
+     */
+    private static int checkValue(char c) {
+        return c >= '0' && c <= '9' ? c - '0' : c == 'X' || c == 'x' ? 10 : -1;
+    }
+
     /**
      * @param nsrsbh
      *         纳税人识别号
@@ -430,7 +607,9 @@ public final class XIDUtil {
         int len;
         if (null != nsrsbh && ((len = nsrsbh.length()) >= MIN_NSRSBH_9) && StringUtil.isAsciiAlphanumeric(nsrsbh, true, false)) {
             // 办理税务登记纳税人 或 自然人登记纳税人
-            boolean result = isShxydm(nsrsbh) || isPin(nsrsbh);
+            Classification classification = classify(nsrsbh);
+            Type type = classification.getType();
+            boolean result = classification.isValid() && (type == Type.SHXYDM || type == Type.NSRSBH15 || type == Type.PIN18);
             if (!result) {
                 /**
                  * 税总发[2013]41号 国家税务总局关于发布纳税人识别号代码标准的通知 <br/>
@@ -20,6 +20,8 @@
  */
 package com.tomato.util.checkdigits;
 
+import java.util.BitSet;
+
 /**
  * Interface for encoding and verifing check digits
  *
@@ -48,6 +50,54 @@ public interface CheckDigit {
      */
     public abstract boolean verify(String digits);
 
+    /**
+     * Verify the characters digits[off..off+len-1] that have been encoded with a check digit. Never throws; null,
+     * out of range and malformed input is reported as invalid.
+     *
+     * @param digits
+     *         input digits
+     * @param off
+     *         the offset of the first character
+     * @param len
+     *         the number of characters
+     *
+     * @return true if valid, false otherwise
+     */
+    default boolean verify(CharSequence digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length(), off, len)) {
+            return false;
+        }
+        try {
+            return verify(digits.subSequence(off, off + len).toString());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Verify the ASCII characters digits[off..off+len-1] that have been encoded with a check digit. Never throws;
+     * null, out of range and malformed input is reported as invalid.
+     *
+     * @param digits
+     *         input digits, one byte per character
+     * @param off
+     *         the offset of the first byte
+     * @param len
+     *         the number of bytes
+     *
+     * @return true if valid, false otherwise
+     */
+    default boolean verify(byte[] digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length, off, len)) {
+            return false;
+        }
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) {
+            chars[i] = (char)(digits[off + i] & 0xFF);
+        }
+        return verify(new String(chars), 0, len);
+    }
+
     /**
      * Computes the check digit value
      *
@@ -58,6 +108,53 @@ public interface CheckDigit {
      */
     public abstract int computeCheck(String digits);
 
+    /**
+     * Verify a column of encoded numbers packed as longs. Each value is read as a string of exactly the given number
+     * of digits, with leading zeros, so "0042" is packed as 42 with digits = 4. Negative values and values with more
+     * digits are invalid.
+     *
+     * @param values
+     *         the packed numbers, each including its check digit
+     * @param digits
+     *         the number of digits of every number, in the range [1..19]
+     * @param out
+     *         receives bit i set if values[i] is valid and cleared otherwise
+     */
+    default void verifyAll(long[] values, int digits, BitSet out) {
+        CheckTables.checkPackedDigits(digits);
+        out.clear(0, values.length);
+        for (int i = 0; i < values.length; i++) {
+            String s = CheckTables.format(values[i], digits);
+            if (s != null && verify(s)) {
+                out.set(i);
+            }
+        }
+    }
+
+    /**
+     * Computes the check digit values of a column of data packed as longs. Each value is read as a string of exactly
+     * the given number of digits, with leading zeros.
+     *
+     * @param values
+     *         the packed data, without check digits
+     * @param digits
+     *         the number of digits of every value, in the range [1..19]
+     *
+     * @return the check digit of each value, as computeCheck(String) would return it
+     */
+    default int[] computeCheck(long[] values, int digits) {
+        CheckTables.checkPackedDigits(digits);
+        int[] checks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            String s = CheckTables.format(values[i], digits);
+            if (s == null) {
+                throw new NumberFormatException("'" + values[i] + "' is not a number of " + digits + " digits");
+            }
+            checks[i] = computeCheck(s);
+        }
+        return checks;
+    }
+
     /**
      * Extract just the check digits from an encoded string
      *
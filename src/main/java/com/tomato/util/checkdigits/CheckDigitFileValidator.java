@@ -0,0 +1,372 @@
+/*
+ * Copyright 2005, Nick Galbreath
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software for any purpose
+ * with or without fee is hereby granted, provided that the above copyright
+ * notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT OF THIRD PARTY RIGHTS. IN
+ * NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * Except as contained in this notice, the name of a copyright holder shall not
+ * be used in advertising or otherwise to promote the sale, use or other dealings
+ * in this Software without prior written authorization of the copyright holder.
+ */
+package com.tomato.util.checkdigits;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Validates the check digits of one field on every line of a text file.
+ * <p>
+ * The file is memory-mapped and split into chunks on line boundaries, which are scanned in parallel on the common
+ * fork/join pool. The field is copied out of the mapping into a small buffer and checked with
+ * {@link CheckDigit#verify(byte[], int, int)}, so no Strings are created. The field is either a column of a delimited
+ * file, with one pair of surrounding double quotes removed, or a fixed byte range of every line. Lines end with "\n"
+ * or "\r\n"; lines without the field are invalid.
+ * <p>
+ * For example, the 18-digit PINs accepted by {@code PINUtil.verify} are checked with
+ * {@code new CheckDigitFileValidator(new CheckISO7064Mod11_2(), 18, ',', column)}, and the 18-character codes accepted by
+ * {@code XIDUtil.isShxydm} with a {@link CheckGB32100Mod31_3} and 18.
+ */
+public final class CheckDigitFileValidator {
+
+    /**
+     * The smallest and largest number of bytes per chunk.
+     */
+    private static final long MIN_CHUNK = 1 << 20, MAX_CHUNK = 256 << 20;
+
+    /**
+     * The number of bytes mapped past the end of a chunk for its last line; longer lines are mapped again.
+     */
+    private static final long SLACK = 1 << 20;
+
+    private final CheckDigit scheme;
+
+    /**
+     * The required length of the field in bytes, or 0 for any length.
+     */
+    private final int length;
+
+    /**
+     * The delimiter and column of a delimited file, or -1 and the offset of the field in a fixed-width file.
+     */
+    private final int delimiter, column;
+
+    /**
+     * Constructs a validator for a column of a delimited file, such as a CSV file.
+     *
+     * @param scheme
+     *         the check digit scheme
+     * @param length
+     *         the required length of the field in bytes, or 0 for any length
+     * @param delimiter
+     *         the ASCII delimiter of the columns
+     * @param column
+     *         the index of the column, from 0
+     */
+    public CheckDigitFileValidator(CheckDigit scheme, int length, char delimiter, int column) {
+        // validate scheme, length, delimiter and column
+        if (scheme == null) {
+            throw new NullPointerException("scheme must not be null");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("length must not be negative: " + length);
+        }
+        if (delimiter >= 128 || delimiter == '\n' || delimiter == '\r' || delimiter == '"') {
+            throw new IllegalArgumentException("delimiter must be an ASCII character other than CR, LF and '\"': "
+                + (int)delimiter);
+        }
+        if (column < 0) {
+            throw new IllegalArgumentException("column must not be negative: " + column);
+        }
+
+        this.scheme = scheme;
+        this.length = length;
+        this.delimiter = delimiter;
+        this.column = column;
+    }
+
+    /**
+     * Constructs a validator for a fixed byte range of every line.
+     *
+     * @param scheme
+     *         the check digit scheme
+     * @param offset
+     *         the offset of the field in the line
+     * @param length
+     *         the length of the field in bytes
+     */
+    public CheckDigitFileValidator(CheckDigit scheme, int offset, int length) {
+        // validate scheme, offset and length
+        if (scheme == null) {
+            throw new NullPointerException("scheme must not be null");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative: " + offset);
+        }
+        if (length < 1) {
+            throw new IllegalArgumentException("length must be positive: " + length);
+        }
+
+        this.scheme = scheme;
+        this.length = length;
+        this.delimiter = -1;
+        this.column = offset;
+    }
+
+    /**
+     * Validates every line of a file.
+     *
+     * @param file
+     *         the file
+     * @param maxReported
+     *         the maximum number of invalid lines whose numbers and offsets are reported; all are counted
+     *
+     * @return the line counts and the first maxReported invalid lines
+     *
+     * @throws IOException
+     *         if the file can not be read
+     */
+    public Result validate(Path file, int maxReported) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return validate(channel, size, maxReported,
+                Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (4 * parallelism) + 1)));
+        }
+    }
+
+    /**
+     * Validates every line of a channel in chunks of the given size.
+     */
+    Result validate(FileChannel channel, long size, int maxReported, long chunk) throws IOException {
+        // validate maxReported
+        if (maxReported < 0) {
+            throw new IllegalArgumentException("maxReported must not be negative: " + maxReported);
+        }
+
+        Scan[] scans = new Scan[(int)((size + chunk - 1) / chunk)];
+        for (int i = 0; i < scans.length; i++) {
+            scans[i] = new Scan(channel, size, i * chunk, Math.min(size, (i + 1) * chunk), maxReported);
+            scans[i].fork();
+        }
+
+        long lines = 0, invalid = 0;
+        long[] invalidLines = new long[0], invalidOffsets = new long[0];
+        for (Scan scan : scans) {
+            try {
+                scan.join();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            int n = Math.min(scan.reported, maxReported - invalidLines.length);
+            if (n > 0) {
+                int m = invalidLines.length;
+                invalidLines = Arrays.copyOf(invalidLines, m + n);
+                invalidOffsets = Arrays.copyOf(invalidOffsets, m + n);
+                for (int i = 0; i < n; i++) {
+                    invalidLines[m + i] = lines + scan.lines[i] + 1;
+                    invalidOffsets[m + i] = scan.offsets[i];
+                }
+            }
+            lines += scan.lineCount;
+            invalid += scan.invalidCount;
+        }
+        return new Result(lines, invalid, invalidLines, invalidOffsets);
+    }
+
+    /**
+     * The outcome of {@link CheckDigitFileValidator#validate(Path, int)}.
+     */
+    public static final class Result {
+
+        private final long lines, invalid;
+
+        private final long[] invalidLines, invalidOffsets;
+
+        Result(long lines, long invalid, long[] invalidLines, long[] invalidOffsets) {
+            this.lines = lines;
+            this.invalid = invalid;
+            this.invalidLines = invalidLines;
+            this.invalidOffsets = invalidOffsets;
+        }
+
+        /**
+         * @return the number of lines
+         */
+        public long getLineCount() {
+            return lines;
+        }
+
+        /**
+         * @return the number of invalid lines
+         */
+        public long getInvalidCount() {
+            return invalid;
+        }
+
+        /**
+         * @return the numbers, from 1, of the first reported invalid lines in ascending order
+         */
+        public long[] getInvalidLines() {
+            return invalidLines.clone();
+        }
+
+        /**
+         * @return the byte offsets of the first reported invalid lines in the file, matching getInvalidLines()
+         */
+        public long[] getInvalidOffsets() {
+            return invalidOffsets.clone();
+        }
+    }
+
+    /**
+     * Scans the lines that start in [start..end-1] of the file.
+     */
+    private final class Scan extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long size, start, end;
+        private final int maxReported;
+
+        /**
+         * The mapped window of the file and its offset.
+         */
+        private MappedByteBuffer buf;
+        private long base;
+
+        /**
+         * The field copied out of the window.
+         */
+        private byte[] field = new byte[64];
+
+        /**
+         * The results: the lines counted, the invalid lines counted, and the first reported invalid lines by their
+         * index in this chunk and their offset in the file.
+         */
+        long lineCount, invalidCount;
+        int reported;
+        long[] lines = new long[16], offsets = new long[16];
+
+        Scan(FileChannel channel, long size, long start, long end, int maxReported) {
+            this.channel = channel;
+            this.size = size;
+            this.start = start;
+            this.end = end;
+            this.maxReported = maxReported;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                scan();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void scan() throws IOException {
+            map(start == 0 ? 0 : start - 1, Math.min(size, end + SLACK));
+            int p = (int)(start - base);
+            // a line starts after a line feed
+            while (start > 0 && base + p < end && buf.get(p - 1) != '\n') {
+                p++;
+            }
+            while (base + p < end) {
+                int eol = p, limit = buf.limit();
+                while (eol < limit && buf.get(eol) != '\n') {
+                    eol++;
+                }
+                if (eol == limit && base + limit < size) {
+                    // the line runs past the window, map the largest window that starts with it
+                    long line = base + p;
+                    if (p == 0 && limit == Integer.MAX_VALUE) {
+                        throw new IOException("Line at offset " + line + " is too long");
+                    }
+                    map(line, Math.min(size, line + Integer.MAX_VALUE));
+                    p = 0;
+                    continue;
+                }
+                if (!check(p, eol > p && buf.get(eol - 1) == '\r' ? eol - 1 : eol)) {
+                    if (reported < maxReported) {
+                        if (reported == lines.length) {
+                            lines = Arrays.copyOf(lines, 2 * reported);
+                            offsets = Arrays.copyOf(offsets, 2 * reported);
+                        }
+                        lines[reported] = lineCount;
+                        offsets[reported++] = base + p;
+                    }
+                    invalidCount++;
+                }
+                lineCount++;
+                p = eol + 1;
+            }
+        }
+
+        private void map(long from, long to) throws IOException {
+            base = from;
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        }
+
+        /**
+         * Checks the field of the line buf[p..eol-1].
+         */
+        private boolean check(int p, int eol) {
+            int a, b;
+            if (delimiter < 0) {
+                a = p + column;
+                b = a + length;
+                if (b > eol) {
+                    return false;
+                }
+            } else {
+                a = p;
+                for (int i = 0; i < column; i++) {
+                    while (a < eol && buf.get(a) != delimiter) {
+                        a++;
+                    }
+                    if (a == eol) {
+                        return false;
+                    }
+                    a++;
+                }
+                b = a;
+                while (b < eol && buf.get(b) != delimiter) {
+                    b++;
+                }
+                if (b - a >= 2 && buf.get(a) == '"' && buf.get(b - 1) == '"') {
+                    a++;
+                    b--;
+                }
+                if (length > 0 && b - a != length) {
+                    return false;
+                }
+            }
+            int n = b - a;
+            if (n > field.length) {
+                field = new byte[Math.max(n, 2 * field.length)];
+            }
+            for (int i = 0; i < n; i++) {
+                field[i] = buf.get(a + i);
+            }
+            return scheme.verify(field, 0, n);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2005, Nick Galbreath
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software for any purpose
+ * with or without fee is hereby granted, provided that the above copyright
+ * notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT OF THIRD PARTY RIGHTS. IN
+ * NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * Except as contained in this notice, the name of a copyright holder shall not
+ * be used in advertising or otherwise to promote the sale, use or other dealings
+ * in this Software without prior written authorization of the copyright holder.
+ */
+package com.tomato.util.checkdigits;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Generates the consecutive numbers n, n+1, n+2, ... with their check characters.
+ * <p>
+ * The check character is derived from a running sum that is corrected only for the digits that change from one
+ * number to the next, so each number costs amortised O(1) besides copying it out, where
+ * {@link CheckDigit#encode(String)} sums every digit again. The supported schemes are {@link CheckLuhnMod10},
+ * {@link CheckISO7064Mod11_2}, {@link CheckGB11714Mod11_2} and {@link CheckGB32100Mod31_3}.
+ * <p>
+ * The counter is the run of decimal digits at the end of the data; for GB 11714 and GB 32100 codes it is the run at
+ * the end of the organization code body, and the characters before it are kept as they are. The sequence ends after
+ * the number whose counter digits are all 9.
+ * <p>
+ * {@link CheckLuhnMod10} counts the doubled digits from the left, so its check digits only verify when the data has
+ * an even number of digits; odd-length Luhn data is rejected.
+ * <p>
+ * Like other iterators, a CheckDigitSequence is not thread-safe.
+ *
+ * @see CheckDigit#encode(String)
+ */
+public final class CheckDigitSequence implements Iterator<String> {
+
+    /**
+     * the supported schemes
+     */
+    private static final int LUHN = 0, MOD11_2 = 1, GB11714 = 2, GB32100 = 3;
+
+    /**
+     * the position and length of the organization code body in a GB 32100 code
+     */
+    private static final int ZZJGDM_OFFSET = 8, ZZJGDM_BODY_LEN = 8;
+
+    private final int scheme;
+
+    /**
+     * the sum is kept Mod modulus, and check + sum = offset Mod modulus
+     */
+    private final int modulus, offset;
+
+    /**
+     * the current number: the data followed by the check character
+     */
+    private final char[] code;
+
+    /**
+     * the counter digits are code[lo..hi-1]
+     */
+    private final int lo, hi;
+
+    /**
+     * terms[(i - lo) * 10 + d] is the term of the digit d at position i in the sum, Mod modulus
+     */
+    private final int[] terms;
+
+    /**
+     * the sum of the terms of the data, Mod modulus
+     */
+    private int sum;
+
+    /**
+     * for GB 32100 codes: the terms and sum of the embedded GB 11714 code, Mod 11, and the term of its check
+     * character in the outer sum for each check value
+     */
+    private final int[] innerTerms, innerCheckTerms;
+    private int innerSum;
+
+    private boolean hasNext = true;
+
+    /**
+     * Constructs a sequence that starts with first.
+     *
+     * @param scheme
+     *         the check digit scheme
+     * @param first
+     *         the data of the first number, without its check character; for a GB 11714 code the 8 characters of the
+     *         body, for a GB 32100 code the 17 characters before the check character, where the 17th, the check
+     *         character of the organization code, is recomputed; for Luhn an even number of digits
+     *
+     * @throws IllegalArgumentException
+     *         if the scheme is not supported or first is not valid data for it
+     */
+    public CheckDigitSequence(CheckDigit scheme, String first) {
+        // validate scheme and first
+        if (scheme == null) {
+            throw new NullPointerException("scheme must not be null");
+        }
+        if (first == null) {
+            throw new NullPointerException("first must not be null");
+        }
+        int start = 0, end = first.length();
+        if (scheme instanceof CheckLuhnMod10) {
+            this.scheme = LUHN;
+            modulus = 10;
+            if ((end & 1) != 0) {
+                throw new IllegalArgumentException("first must have an even number of digits for Luhn: " + first);
+            }
+        } else if (scheme instanceof CheckISO7064Mod11_2) {
+            this.scheme = MOD11_2;
+            modulus = 11;
+        } else if (scheme instanceof CheckGB11714Mod11_2) {
+            this.scheme = GB11714;
+            modulus = 11;
+            if (end != ZZJGDM_BODY_LEN) {
+                throw new IllegalArgumentException("first must have " + ZZJGDM_BODY_LEN + " characters: " + first);
+            }
+        } else if (scheme instanceof CheckGB32100Mod31_3) {
+            this.scheme = GB32100;
+            modulus = 31;
+            if (end != ZZJGDM_OFFSET + ZZJGDM_BODY_LEN + 1) {
+                throw new IllegalArgumentException("first must have " + (ZZJGDM_OFFSET + ZZJGDM_BODY_LEN + 1)
+                    + " characters: " + first);
+            }
+            start = ZZJGDM_OFFSET;
+            end = ZZJGDM_OFFSET + ZZJGDM_BODY_LEN;
+        } else {
+            throw new IllegalArgumentException("scheme is not supported: " + scheme.getClass().getName());
+        }
+        offset = this.scheme == MOD11_2 ? 1 : 0;
+
+        code = new char[first.length() + 1];
+        first.getChars(0, first.length(), code, 0);
+        hi = end;
+        int i = end;
+        while (i > start && code[i - 1] >= '0' && code[i - 1] <= '9') {
+            i--;
+        }
+        lo = i;
+        if (lo == hi) {
+            throw new IllegalArgumentException("first must end with a digit: " + first);
+        }
+
+        terms = new int[(hi - lo) * 10];
+        for (i = lo; i < hi; i++) {
+            for (int d = 0; d < 10; d++) {
+                terms[(i - lo) * 10 + d] = term(i, d);
+            }
+        }
+        if (this.scheme == GB32100) {
+            innerTerms = new int[(hi - lo) * 10];
+            for (i = lo; i < hi; i++) {
+                for (int d = 0; d < 10; d++) {
+                    innerTerms[(i - lo) * 10 + d] = CheckGB11714Mod11_2.W[i - ZZJGDM_OFFSET] * d % 11;
+                }
+            }
+            innerCheckTerms = new int[11];
+            for (int c = 0; c < 11; c++) {
+                innerCheckTerms[c] = CheckGB32100Mod31_3.W[end] * CheckGB32100Mod31_3.C2N[mod11Char(c) - '0'] % 31;
+            }
+            innerSum = (11 - new CheckGB11714Mod11_2().computeCheck(new String(code, start, ZZJGDM_BODY_LEN))) % 11;
+            code[end] = mod11Char((11 - innerSum) % 11);
+        } else {
+            innerTerms = innerCheckTerms = null;
+        }
+
+        // the sum follows from the check digit of the first number, which also validates the rest of the data
+        sum = (modulus + offset - scheme.computeCheck(new String(code, 0, first.length()))) % modulus;
+        code[first.length()] = checkChar((modulus + offset - sum) % modulus);
+    }
+
+    /**
+     * @return the length of every number, including its check character
+     */
+    public int getLength() {
+        return code.length;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * @return the next number with its check character
+     */
+    @Override
+    public String next() {
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        String s = new String(code);
+        advance();
+        return s;
+    }
+
+    /**
+     * Writes the next number with its check character into dst[off..off+getLength()-1].
+     *
+     * @param dst
+     *         the output buffer
+     * @param off
+     *         the offset in dst
+     */
+    public void next(char[] dst, int off) {
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        System.arraycopy(code, 0, dst, off, code.length);
+        advance();
+    }
+
+    /**
+     * Writes the next number with its check character into dst[off..off+getLength()-1], one byte per character.
+     *
+     * @param dst
+     *         the output buffer
+     * @param off
+     *         the offset in dst
+     */
+    public void next(byte[] dst, int off) {
+        if (!hasNext) {
+            throw new NoSuchElementException();
+        }
+        if (off < 0 || off > dst.length - code.length) {
+            throw new IndexOutOfBoundsException("off: " + off);
+        }
+        for (int i = 0; i < code.length; i++) {
+            dst[off + i] = (byte)code[i];
+        }
+        advance();
+    }
+
+    /**
+     * Writes up to count next numbers back to back into dst, starting at off.
+     *
+     * @param dst
+     *         the output buffer, with room for count * getLength() characters from off
+     * @param off
+     *         the offset in dst
+     * @param count
+     *         the number of numbers to write
+     *
+     * @return the number of numbers written, less than count if the sequence ends
+     */
+    public int next(char[] dst, int off, int count) {
+        checkRange(dst.length, off, count);
+        int n = 0;
+        for (; n < count && hasNext; n++) {
+            next(dst, off + n * code.length);
+        }
+        return n;
+    }
+
+    /**
+     * Writes up to count next numbers back to back into dst, starting at off, one byte per character.
+     *
+     * @param dst
+     *         the output buffer, with room for count * getLength() bytes from off
+     * @param off
+     *         the offset in dst
+     * @param count
+     *         the number of numbers to write
+     *
+     * @return the number of numbers written, less than count if the sequence ends
+     */
+    public int next(byte[] dst, int off, int count) {
+        checkRange(dst.length, off, count);
+        int n = 0;
+        for (; n < count && hasNext; n++) {
+            next(dst, off + n * code.length);
+        }
+        return n;
+    }
+
+    private void checkRange(int length, int off, int count) {
+        if (off < 0 || count < 0 || off > length - (long)count * code.length) {
+            throw new IndexOutOfBoundsException("off: " + off + ", count: " + count);
+        }
+    }
+
+    /**
+     * Increments the counter and updates the sums for the digits that change.
+     */
+    private void advance() {
+        int i = hi - 1;
+        for (;;) {
+            int t = (i - lo) * 10, d = code[i] - '0';
+            if (d < 9) {
+                code[i]++;
+                update(t + d, t + d + 1);
+                break;
+            }
+            code[i] = '0';
+            update(t + 9, t);
+            if (i == lo) {
+                // all the counter digits were 9
+                hasNext = false;
+                return;
+            }
+            i--;
+        }
+        if (scheme == GB32100) {
+            // code[hi] is the check character of the organization code
+            int check = (11 - innerSum) % 11;
+            sum = reduce(sum + innerCheckTerms[check] - innerCheckTerms[mod11Value(code[hi])], 31);
+            code[hi] = mod11Char(check);
+        }
+        code[code.length - 1] = checkChar((modulus + offset - sum) % modulus);
+    }
+
+    /**
+     * Replaces the term at old with the term at now in the sums.
+     */
+    private void update(int old, int now) {
+        sum = reduce(sum + terms[now] - terms[old], modulus);
+        if (innerTerms != null) {
+            innerSum = reduce(innerSum + innerTerms[now] - innerTerms[old], 11);
+        }
+    }
+
+    private static int reduce(int s, int m) {
+        return s < 0 ? s + m : s >= m ? s - m : s;
+    }
+
+    /**
+     * Returns the term of the digit d at position i of the data in the sum, Mod modulus.
+     */
+    private int term(int i, int d) {
+        switch (scheme) {
+        case LUHN:
+            return CheckLuhnMod10.WEIGHTED[(i & 1) * 10 + d];
+        case MOD11_2:
+            // the weight of a data digit is 2^k at k places from the end of the data
+            int w = 1;
+            for (int k = i; k < code.length - 1; k++) {
+                w = w * 2 % 11;
+            }
+            return w * d % 11;
+        case GB11714:
+            return CheckGB11714Mod11_2.W[i] * d % 11;
+        default:
+            return CheckGB32100Mod31_3.W[i] * d % 31;
+        }
+    }
+
+    private char checkChar(int check) {
+        return scheme == GB32100 ? CheckGB32100Mod31_3.N2C[check] : mod11Char(check);
+    }
+
+    private static char mod11Char(int check) {
+        return check == 10 ? 'X' : (char)('0' + check);
+    }
+
+    private static int mod11Value(char c) {
+        return c == 'X' ? 10 : c - '0';
+    }
+}
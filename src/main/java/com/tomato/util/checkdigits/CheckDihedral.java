@@ -20,6 +20,8 @@
  */
 package com.tomato.util.checkdigits;
 
+import java.util.BitSet;
+
 /**
  * Implemention of Verhoeff's Dihedral Check Digit
  *
@@ -47,6 +49,21 @@ public class CheckDihedral implements CheckDigit {
             { 8, 9, 1, 6, 0, 4, 3, 5, 2, 7 }, { 9, 4, 5, 3, 1, 2, 6, 8, 7, 0 }, { 4, 2, 8, 6, 5, 7, 3, 9, 0, 1 }, { 2, 7, 9, 3, 8, 0, 6, 4, 1, 5 },
             { 7, 0, 4, 6, 9, 1, 3, 2, 5, 8 } };
 
+    /**
+     * STEP[((i &amp; 7) * 10 + check) * 10 + d] = a[check][p[i % 8][d]], one step of verify for digit d at position i
+     */
+    private static final byte[] STEP = new byte[8 * 10 * 10];
+
+    static {
+        for (int i = 0; i < 8; i++) {
+            for (int check = 0; check < 10; check++) {
+                for (int d = 0; d < 10; d++) {
+                    STEP[(i * 10 + check) * 10 + d] = (byte)a[check][p[i][d]];
+                }
+            }
+        }
+    }
+
     /**
      * Constructor.
      *
@@ -61,15 +78,39 @@ public class CheckDihedral implements CheckDigit {
     }
 
     public boolean verify(String digits) {
-        try {
-            int check = 0;
-            for (int i = 0; i < digits.length(); ++i) {
-                check = a[check][p[i % 8][digits.charAt(i) - '0']];
+        return digits != null && verify(digits, 0, digits.length());
+    }
+
+    @Override
+    public boolean verify(CharSequence digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length(), off, len)) {
+            return false;
+        }
+        int check = 0;
+        for (int i = 0; i < len; ++i) {
+            int d = CheckTables.value(CheckTables.DIGITS, digits.charAt(off + i));
+            if (d < 0) {
+                return false;
             }
-            return (check == 0);
-        } catch (Exception e) {
+            check = STEP[((i & 7) * 10 + check) * 10 + d];
+        }
+        return check == 0;
+    }
+
+    @Override
+    public boolean verify(byte[] digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length, off, len)) {
             return false;
         }
+        int check = 0;
+        for (int i = 0; i < len; ++i) {
+            int d = CheckTables.value(CheckTables.DIGITS, digits[off + i]);
+            if (d < 0) {
+                return false;
+            }
+            check = STEP[((i & 7) * 10 + check) * 10 + d];
+        }
+        return check == 0;
     }
 
     public int computeCheck(String digits) {
@@ -84,10 +125,60 @@ public class CheckDihedral implements CheckDigit {
         return inverse[check];
     }
 
+    @Override
+    public void verifyAll(long[] values, int digits, BitSet out) {
+        CheckTables.checkPackedDigits(digits);
+        out.clear(0, values.length);
+        for (int i = 0; i < values.length; i++) {
+            long v = values[i];
+            if (CheckTables.inRange(v, digits) && packedCheck(v, digits, 0) == 0) {
+                out.set(i);
+            }
+        }
+    }
+
+    @Override
+    public int[] computeCheck(long[] values, int digits) {
+        CheckTables.checkPackedDigits(digits);
+        int[] checks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (!CheckTables.inRange(values[i], digits)) {
+                throw new NumberFormatException("'" + values[i] + "' is not a number of " + digits + " digits");
+            }
+            checks[i] = inverse[packedCheck(values[i], digits, 1)];
+        }
+        return checks;
+    }
+
     public int getCheckDigit(String digits) {
         return Integer.parseInt(digits.substring(0, 1));
     }
 
+    // runs the dihedral sum over the digits of a packed number, whose first digit is at position first; the leading
+    // zeros of the groups that are not part of the number are skipped
+    private static int packedCheck(long v, int digits, int first) {
+        int check = 0;
+        if (digits > 16) {
+            check = groupCheck(CheckTables.digits8((int)(v / (CheckTables.GROUP * CheckTables.GROUP))), 24 - digits,
+                digits + first, check);
+        }
+        if (digits > 8) {
+            check = groupCheck(CheckTables.digits8((int)(v / CheckTables.GROUP % CheckTables.GROUP)),
+                Math.max(16 - digits, 0), digits + first, check);
+        }
+        return groupCheck(CheckTables.digits8((int)(v % CheckTables.GROUP)), Math.max(8 - digits, 0), digits + first,
+            check);
+    }
+
+    // continues the dihedral sum over the bytes j = start .. 7 of d; the digit in byte j is at a position that is
+    // j + shift Mod 8
+    private static int groupCheck(long d, int start, int shift, int check) {
+        for (int j = start; j < 8; j++) {
+            check = STEP[(((j + shift) & 7) * 10 + check) * 10 + (int)(d >>> (j << 3) & 0xF)];
+        }
+        return check;
+    }
+
     public String getData(String digits) {
         return digits.substring(1);
     }
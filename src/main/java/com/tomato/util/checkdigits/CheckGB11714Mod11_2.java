@@ -36,9 +36,22 @@ public class CheckGB11714Mod11_2 implements CheckDigit {
      * <li>w<sub>i</sub> = 2<sup>(i - 1)</sup> % 11</li>
      * </ul>
      */
-    private static final int W[] = { 3, 7, 9, 10, 5, 8, 4, 2 };
+    static final int W[] = { 3, 7, 9, 10, 5, 8, 4, 2 };
     private static final int ZZJGDM_BODY_LEN = 8;
 
+    /**
+     * PRODUCTS[i * 36 + v] = W[i] * v % 11 for a character of value v at position i
+     */
+    private static final byte[] PRODUCTS = new byte[ZZJGDM_BODY_LEN * 36];
+
+    static {
+        for (int i = 0; i < ZZJGDM_BODY_LEN; i++) {
+            for (int v = 0; v < 36; v++) {
+                PRODUCTS[i * 36 + v] = (byte)(W[i] * v % 11);
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see com.tomato.util.checkdigits.CheckDigit#encode(java.lang.String)
      */
@@ -57,11 +70,54 @@ public class CheckGB11714Mod11_2 implements CheckDigit {
      */
     @Override
     public boolean verify(String digits) {
-        try {
-            return computeCheck(getData(digits)) == getCheckDigit(digits);
-        } catch (Exception e) {
+        return digits != null && verify(digits, 0, digits.length());
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(java.lang.CharSequence, int, int)
+     */
+    @Override
+    public boolean verify(CharSequence digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length(), off, len) || len < 1) {
             return false;
         }
+        int c9 = 0, i = 0;
+        for (int j = off; j < off + len - 1; ++j) {
+            char c = digits.charAt(j);
+            int ci = CheckTables.value(CheckTables.ALPHANUMERICS, c);
+            if (ci == CheckTables.SKIP || ci < 0 && Character.isWhitespace(c)) {
+                continue;
+            }
+            if (ci < 0 || i >= ZZJGDM_BODY_LEN) {
+                return false;
+            }
+            c9 += PRODUCTS[i++ * 36 + ci];
+        }
+        return i == ZZJGDM_BODY_LEN
+            && (11 - c9 % 11) % 11 == CheckTables.value(CheckTables.DIGITS_X, digits.charAt(off + len - 1));
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(byte[], int, int)
+     */
+    @Override
+    public boolean verify(byte[] digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length, off, len) || len < 1) {
+            return false;
+        }
+        int c9 = 0, i = 0;
+        for (int j = off; j < off + len - 1; ++j) {
+            int ci = CheckTables.value(CheckTables.ALPHANUMERICS, digits[j]);
+            if (ci == CheckTables.SKIP) {
+                continue;
+            }
+            if (ci < 0 || i >= ZZJGDM_BODY_LEN) {
+                return false;
+            }
+            c9 += PRODUCTS[i++ * 36 + ci];
+        }
+        return i == ZZJGDM_BODY_LEN
+            && (11 - c9 % 11) % 11 == CheckTables.value(CheckTables.DIGITS_X, digits[off + len - 1]);
     }
 
     /* (non-Javadoc)
@@ -31,17 +31,33 @@ public class CheckGB32100Mod31_3 implements CheckDigit {
      * <li>w<sub>i</sub> = 2<sup>(i - 1)</sup> % 31</li>
      * </ul>
      */
-    private static final int W[] = { 1, 3, 9, 27, 19, 26, 16, 17, 20, 29, 25, 13, 8, 24, 10, 30, 28 };
-    private static final char N2C[] = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H' /*'I'*/, 'J', 'K', 'L', 'M',
+    static final int W[] = { 1, 3, 9, 27, 19, 26, 16, 17, 20, 29, 25, 13, 8, 24, 10, 30, 28 };
+    static final char N2C[] = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H' /*'I'*/, 'J', 'K', 'L', 'M',
             'N' /*'O'*/, 'P', 'Q', 'R' /*'S'*/, 'T', 'U' /*'V'*/, 'W', 'X', 'Y' /*'Z'*/ };
-    private static final int C2N[] = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, -1, -1, -1, -1, -1, -1, -1, 10, 11, 12, 13, 14, 15, 16, 17, -1 /*I*/, 18, 19, 20, 21, 22,
+    static final int C2N[] = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, -1, -1, -1, -1, -1, -1, -1, 10, 11, 12, 13, 14, 15, 16, 17, -1 /*I*/, 18, 19, 20, 21, 22,
             -1 /*O*/, 23, 24, 25, -1 /*S*/, 26, 27, -1 /*V*/, 28, 29, 30, -1 /*Z*/, -1, -1, -1, -1, -1, -1, 10, 11, 12, 13, 14, 15, 16, 17, -1 /*i*/, 18, 19,
             20, 21, 22, -1 /*o*/, 23, 24, 25, -1 /*s*/, 26, 27, -1 /*v*/, 28, 29, 30, -1 /*z*/ };
     private static final int SHXYDM_BODY_LEN = 17;
     private static final int SHXYDM_FULL_LEN = SHXYDM_BODY_LEN + 1;
     private static final int SHXYDM_ZZJGDM_OFFSET = 8;
     private static final int SHXYDM_ZZJGDM_END = SHXYDM_BODY_LEN;
-    private static final CheckDigit ZZJGDM_CHECKER = new CheckGB11714Mod11_2();
+
+    /**
+     * C2N for ASCII characters, with CheckTables.SKIP for separators and CheckTables.INVALID for the others
+     */
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            if (c >= '0' && c <= 'z') {
+                VALUES[c] = (byte)C2N[c - '0'];
+            } else if (Character.isWhitespace(c) || c == '-') {
+                VALUES[c] = CheckTables.SKIP;
+            } else {
+                VALUES[c] = CheckTables.INVALID;
+            }
+        }
+    }
 
     /* (non-Javadoc)
      * @see com.tomato.util.checkdigits.CheckDigit#encode(java.lang.String)
@@ -57,15 +73,74 @@ public class CheckGB32100Mod31_3 implements CheckDigit {
      */
     @Override
     public boolean verify(String digits) {
-        try {
-            if (computeCheck(getData(digits)) == getCheckDigit(digits)) {
-                String zzjgdm = getZzjgdm(digits);
-                return ZZJGDM_CHECKER.verify(zzjgdm);
-            }
+        return digits != null && verify(digits, 0, digits.length());
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(java.lang.CharSequence, int, int)
+     */
+    @Override
+    public boolean verify(CharSequence digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length(), off, len) || len < 1) {
             return false;
-        } catch (Exception e) {
+        }
+        // the outer sum over the 17 data characters, and the sum of the embedded organization code
+        int c18 = 0, c9 = 0, i = 0;
+        for (int j = off; j < off + len - 1; ++j) {
+            char c = digits.charAt(j);
+            int ci = CheckTables.value(VALUES, c);
+            if (ci == CheckTables.SKIP || ci < 0 && Character.isWhitespace(c)) {
+                continue;
+            }
+            if (ci < 0 || i >= SHXYDM_BODY_LEN) {
+                return false;
+            }
+            if (i >= SHXYDM_ZZJGDM_OFFSET) {
+                int zi = CheckTables.value(i < SHXYDM_ZZJGDM_END - 1 ? CheckTables.ALPHANUMERICS : CheckTables.DIGITS_X, c);
+                if (zi < 0) {
+                    return false;
+                }
+                c9 = i < SHXYDM_ZZJGDM_END - 1 ? c9 + CheckGB11714Mod11_2.W[i - SHXYDM_ZZJGDM_OFFSET] * zi : c9 % 11 + zi;
+            }
+            c18 += ci * W[i++];
+        }
+        return verify(i, c18, c9, CheckTables.value(VALUES, digits.charAt(off + len - 1)));
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(byte[], int, int)
+     */
+    @Override
+    public boolean verify(byte[] digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length, off, len) || len < 1) {
             return false;
         }
+        int c18 = 0, c9 = 0, i = 0;
+        for (int j = off; j < off + len - 1; ++j) {
+            byte c = digits[j];
+            int ci = CheckTables.value(VALUES, c);
+            if (ci == CheckTables.SKIP) {
+                continue;
+            }
+            if (ci < 0 || i >= SHXYDM_BODY_LEN) {
+                return false;
+            }
+            if (i >= SHXYDM_ZZJGDM_OFFSET) {
+                int zi = CheckTables.value(i < SHXYDM_ZZJGDM_END - 1 ? CheckTables.ALPHANUMERICS : CheckTables.DIGITS_X, c);
+                if (zi < 0) {
+                    return false;
+                }
+                c9 = i < SHXYDM_ZZJGDM_END - 1 ? c9 + CheckGB11714Mod11_2.W[i - SHXYDM_ZZJGDM_OFFSET] * zi : c9 % 11 + zi;
+            }
+            c18 += ci * W[i++];
+        }
+        return verify(i, c18, c9, CheckTables.value(VALUES, digits[off + len - 1]));
+    }
+
+    // checks the sums of verify: i data characters with the weighted sum c18 and check value check, and the
+    // organization code whose weighted sum plus its check value is c9
+    private static boolean verify(int i, int c18, int c9, int check) {
+        return i == SHXYDM_BODY_LEN && (31 - c18 % 31) % 31 == check && c9 % 11 == 0;
     }
 
     /* (non-Javadoc)
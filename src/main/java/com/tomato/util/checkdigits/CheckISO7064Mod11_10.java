@@ -28,6 +28,20 @@ package com.tomato.util.checkdigits;
  */
 public class CheckISO7064Mod11_10 implements CheckDigit {
 
+    /**
+     * NEXT[t * 10 + c] = 2 * f(t + c) % 11, the next value of t in computeCheck for a digit c
+     */
+    private static final byte[] NEXT = new byte[11 * 10];
+
+    static {
+        for (int t = 0; t < 11; t++) {
+            for (int c = 0; c < 10; c++) {
+                int val = (t + c) % 10;
+                NEXT[t * 10 + c] = (byte)(2 * (val == 0 ? 10 : val) % 11);
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -43,15 +57,51 @@ public class CheckISO7064Mod11_10 implements CheckDigit {
      * @see com.modp.checkdigit.CheckDigit#verify(java.lang.String)
      */
     public boolean verify(String digits) {
-        try {
-            int t = 10;
-            for (int i = 0; i < digits.length() - 1; ++i) {
-                t = (2 * f(t + digits.charAt(i) - '0')) % 11;
+        return digits != null && verify(digits, 0, digits.length());
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(java.lang.CharSequence, int, int)
+     */
+    @Override
+    public boolean verify(CharSequence digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length(), off, len) || len < 1) {
+            return false;
+        }
+        int t = 10;
+        for (int i = off; i < off + len - 1; i++) {
+            int c = CheckTables.value(CheckTables.DIGITS, digits.charAt(i));
+            if (c < 0) {
+                return false;
             }
-            return (((t + getCheckDigit(digits)) % 10) == 1);
-        } catch (Exception e) {
+            t = NEXT[t * 10 + c];
+        }
+        int check = CheckTables.value(CheckTables.DIGITS, digits.charAt(off + len - 1));
+        return check >= 0 && (t + check) % 10 == 1;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(byte[], int, int)
+     */
+    @Override
+    public boolean verify(byte[] digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length, off, len) || len < 1) {
             return false;
         }
+        int t = 10;
+        for (int i = off; i < off + len - 1; i++) {
+            int c = CheckTables.value(CheckTables.DIGITS, digits[i]);
+            if (c < 0) {
+                return false;
+            }
+            t = NEXT[t * 10 + c];
+        }
+        int check = CheckTables.value(CheckTables.DIGITS, digits[off + len - 1]);
+        return check >= 0 && (t + check) % 10 == 1;
     }
 
     /**
@@ -20,6 +20,8 @@
  */
 package com.tomato.util.checkdigits;
 
+import java.util.BitSet;
+
 /**
  * Implements ISO 7064 Mod 11,2 check digit scheme.
  *
@@ -28,6 +30,19 @@ package com.tomato.util.checkdigits;
  */
 public class CheckISO7064Mod11_2 implements CheckDigit {
 
+    /**
+     * NEXT[p * 10 + c] = 2 * (p + c) % 11, the next value of p in computeCheck for a digit c
+     */
+    private static final byte[] NEXT = new byte[11 * 10];
+
+    static {
+        for (int p = 0; p < 11; p++) {
+            for (int c = 0; c < 10; c++) {
+                NEXT[p * 10 + c] = (byte)(2 * (p + c) % 11);
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see com.modp.checkdigit.CheckDigit#encode(java.lang.String)
      */
@@ -44,13 +59,45 @@ public class CheckISO7064Mod11_2 implements CheckDigit {
      * @see com.modp.checkdigit.CheckDigit#verify(java.lang.String)
      */
     public boolean verify(String digits) {
-        // normally I'd redo the algorith, but with check digit
-        // using 0-9 + X, it's easiler this way.
-        try {
-            return computeCheck(getData(digits)) == getCheckDigit(digits);
-        } catch (Exception e) {
+        return digits != null && verify(digits, 0, digits.length());
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(java.lang.CharSequence, int, int)
+     */
+    @Override
+    public boolean verify(CharSequence digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length(), off, len) || len < 1) {
             return false;
         }
+        int p = 0;
+        for (int i = off; i < off + len - 1; i++) {
+            int c = CheckTables.value(CheckTables.DIGITS, digits.charAt(i));
+            if (c < 0) {
+                return false;
+            }
+            p = NEXT[p * 10 + c];
+        }
+        return (12 - p) % 11 == CheckTables.value(CheckTables.DIGITS_X, digits.charAt(off + len - 1));
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(byte[], int, int)
+     */
+    @Override
+    public boolean verify(byte[] digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length, off, len) || len < 1) {
+            return false;
+        }
+        int p = 0;
+        for (int i = off; i < off + len - 1; i++) {
+            int c = CheckTables.value(CheckTables.DIGITS, digits[i]);
+            if (c < 0) {
+                return false;
+            }
+            p = NEXT[p * 10 + c];
+        }
+        return (12 - p) % 11 == CheckTables.value(CheckTables.DIGITS_X, digits[off + len - 1]);
     }
 
     /* (non-Javadoc)
@@ -63,15 +110,49 @@ public class CheckISO7064Mod11_2 implements CheckDigit {
             if (c < 0 || c > 9) {
                 throw new NumberFormatException("'" + digits + "' has bad digit: '" + digits.charAt(i) + "'");
             }
-            p = 2 * (p + c);
+            // reduce at every step, so that long inputs do not overflow
+            p = NEXT[p * 10 + c];
         }
-        p = p % 11;
         // check + p == 1 Mod 11
         return (12 - p) % 11;
         // could also do
         // if (p <= 1) { return 1 -p} else { return 12 -p}
     }
 
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verifyAll(long[], int, java.util.BitSet)
+     */
+    @Override
+    public void verifyAll(long[] values, int digits, BitSet out) {
+        CheckTables.checkPackedDigits(digits);
+        out.clear(0, values.length);
+        for (int i = 0; i < values.length; i++) {
+            // the check digit has weight 1 and the others 2, 4, 8, ... from the right, so the weighted sum of a valid
+            // number is 1 Mod 11 whatever the leading zeros; numbers with the check digit X can not be packed
+            long v = values[i];
+            if (CheckTables.inRange(v, digits) && packedSum(v, digits) % 11 == 1) {
+                out.set(i);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#computeCheck(long[], int)
+     */
+    @Override
+    public int[] computeCheck(long[] values, int digits) {
+        CheckTables.checkPackedDigits(digits);
+        int[] checks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (!CheckTables.inRange(values[i], digits)) {
+                throw new NumberFormatException("'" + values[i] + "' is not a number of " + digits + " digits");
+            }
+            int p = 2 * packedSum(values[i], digits) % 11;
+            checks[i] = (12 - p) % 11;
+        }
+        return checks;
+    }
+
     /* (non-Javadoc)
      * @see com.modp.checkdigit.CheckDigit#getCheckDigit(java.lang.String)
      */
@@ -91,4 +172,24 @@ public class CheckISO7064Mod11_2 implements CheckDigit {
         return digits.substring(0, digits.length() - 1);
     }
 
+    // sum of the digits of a packed number weighted by 2^k Mod 11 at k places from the right, eight digits at a time;
+    // 2^8 = 3 and 2^16 = 9 Mod 11
+    private static int packedSum(long v, int digits) {
+        int sum = groupSum(CheckTables.digits8((int)(v % CheckTables.GROUP)));
+        if (digits > 8) {
+            v /= CheckTables.GROUP;
+            sum += 3 * groupSum(CheckTables.digits8((int)(v % CheckTables.GROUP)));
+            if (digits > 16) {
+                sum += 9 * groupSum(CheckTables.digits8((int)(v / CheckTables.GROUP)));
+            }
+        }
+        return sum;
+    }
+
+    // sum of the digits in the bytes of d weighted by 2^7 .. 2^0 from the left
+    private static int groupSum(long d) {
+        return (int)(((d & 0xF) << 7) + ((d >>> 8 & 0xF) << 6) + ((d >>> 16 & 0xF) << 5) + ((d >>> 24 & 0xF) << 4)
+            + ((d >>> 32 & 0xF) << 3) + ((d >>> 40 & 0xF) << 2) + ((d >>> 48 & 0xF) << 1) + (d >>> 56));
+    }
+
 }
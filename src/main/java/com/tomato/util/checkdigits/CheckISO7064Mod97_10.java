@@ -46,7 +46,45 @@ public class CheckISO7064Mod97_10 implements CheckDigit {
      * @see com.modp.checkdigit.CheckDigit#verify(java.lang.String)
      */
     public boolean verify(String digits) {
-        return (Long.parseLong(digits) % 97 == 1);
+        return digits != null && verify(digits, 0, digits.length());
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(java.lang.CharSequence, int, int)
+     */
+    @Override
+    public boolean verify(CharSequence digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length(), off, len) || len < 1) {
+            return false;
+        }
+        int r = 0;
+        for (int i = off; i < off + len; i++) {
+            int c = CheckTables.value(CheckTables.DIGITS, digits.charAt(i));
+            if (c < 0) {
+                return false;
+            }
+            r = (r * 10 + c) % 97;
+        }
+        return r == 1;
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(byte[], int, int)
+     */
+    @Override
+    public boolean verify(byte[] digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length, off, len) || len < 1) {
+            return false;
+        }
+        int r = 0;
+        for (int i = off; i < off + len; i++) {
+            int c = CheckTables.value(CheckTables.DIGITS, digits[i]);
+            if (c < 0) {
+                return false;
+            }
+            r = (r * 10 + c) % 97;
+        }
+        return r == 1;
     }
 
     /* (non-Javadoc)
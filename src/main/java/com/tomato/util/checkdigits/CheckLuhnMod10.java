@@ -21,6 +21,8 @@
 
 package com.tomato.util.checkdigits;
 
+import java.util.BitSet;
+
 /**
  * Implement the Luhn Formula Mod 10 check digit scheme
  *
@@ -29,6 +31,18 @@ package com.tomato.util.checkdigits;
  */
 public class CheckLuhnMod10 implements CheckDigit {
 
+    /**
+     * contribution of digit d to the sum at position i: WEIGHTED[(i &amp; 1) * 10 + d], where odd positions are doubled
+     * and reduced by 9
+     */
+    static final byte[] WEIGHTED = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 0, 2, 4, 6, 8, 1, 3, 5, 7, 9 };
+
+    /**
+     * the bytes of a group from CheckTables.digits8 that are doubled when the number has an even or odd digit count
+     */
+    private static final long DOUBLED_EVEN = 0xFF00FF00FF00FF00L;
+    private static final long DOUBLED_ODD = 0x00FF00FF00FF00FFL;
+
     /* (non-Javadoc)
      * @see com.modp.checkdigit.CheckDigit#encode(java.lang.String)
      */
@@ -40,11 +54,45 @@ public class CheckLuhnMod10 implements CheckDigit {
      * @see com.modp.checkdigit.CheckDigit#verify(java.lang.String)
      */
     public boolean verify(String digits) {
-        try {
-            return ((computeSum(digits) % 10) == 0);
-        } catch (Exception e) {
+        return digits != null && verify(digits, 0, digits.length());
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(java.lang.CharSequence, int, int)
+     */
+    @Override
+    public boolean verify(CharSequence digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length(), off, len)) {
             return false;
         }
+        int sum = 0;
+        for (int i = 0; i < len; i++) {
+            int c = CheckTables.value(CheckTables.DIGITS, digits.charAt(off + i));
+            if (c < 0) {
+                return false;
+            }
+            sum += WEIGHTED[(i & 1) * 10 + c];
+        }
+        return sum % 10 == 0;
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verify(byte[], int, int)
+     */
+    @Override
+    public boolean verify(byte[] digits, int off, int len) {
+        if (digits == null || !CheckTables.inBounds(digits.length, off, len)) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < len; i++) {
+            int c = CheckTables.value(CheckTables.DIGITS, digits[off + i]);
+            if (c < 0) {
+                return false;
+            }
+            sum += WEIGHTED[(i & 1) * 10 + c];
+        }
+        return sum % 10 == 0;
     }
 
     /* (non-Javadoc)
@@ -55,6 +103,38 @@ public class CheckLuhnMod10 implements CheckDigit {
         return (val == 0) ? 0 : (10 - val);
     }
 
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#verifyAll(long[], int, java.util.BitSet)
+     */
+    @Override
+    public void verifyAll(long[] values, int digits, BitSet out) {
+        CheckTables.checkPackedDigits(digits);
+        out.clear(0, values.length);
+        for (int i = 0; i < values.length; i++) {
+            long v = values[i];
+            if (CheckTables.inRange(v, digits) && packedSum(v, digits) % 10 == 0) {
+                out.set(i);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.tomato.util.checkdigits.CheckDigit#computeCheck(long[], int)
+     */
+    @Override
+    public int[] computeCheck(long[] values, int digits) {
+        CheckTables.checkPackedDigits(digits);
+        int[] checks = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (!CheckTables.inRange(values[i], digits)) {
+                throw new NumberFormatException("'" + values[i] + "' is not a number of " + digits + " digits");
+            }
+            int val = packedSum(values[i], digits) % 10;
+            checks[i] = (val == 0) ? 0 : (10 - val);
+        }
+        return checks;
+    }
+
     /* (non-Javadoc)
      * @see com.modp.checkdigit.CheckDigit#getCheckDigit(java.lang.String)
      */
@@ -69,6 +149,27 @@ public class CheckLuhnMod10 implements CheckDigit {
         return digits.substring(0, digits.length() - 1);
     }
 
+    // computes the special sum function of a packed number, eight digits at a time
+    private static int packedSum(long v, int digits) {
+        long doubled = (digits & 1) == 0 ? DOUBLED_EVEN : DOUBLED_ODD;
+        int sum = groupSum(CheckTables.digits8((int)(v % CheckTables.GROUP)), doubled);
+        if (digits > 8) {
+            v /= CheckTables.GROUP;
+            sum += groupSum(CheckTables.digits8((int)(v % CheckTables.GROUP)), doubled);
+            if (digits > 16) {
+                sum += groupSum(CheckTables.digits8((int)(v / CheckTables.GROUP)), doubled);
+            }
+        }
+        return sum;
+    }
+
+    // adds up the digits in the bytes of d, doubling those selected by the mask and subtracting 9 if 5 or more
+    private static int groupSum(long d, long doubled) {
+        long five = ((d + 0x0303030303030303L) >>> 3) & 0x0101010101010101L;
+        long weighted = (d & ~doubled) + (((d << 1) - five * 9) & doubled);
+        return (int)((weighted * 0x0101010101010101L) >>> 56);
+    }
+
     // computes the special sum function
     private int computeSum(String digits) {
         int val = 0;
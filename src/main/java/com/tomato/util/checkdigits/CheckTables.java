@@ -0,0 +1,169 @@
+/*
+ * Copyright 2005, Nick Galbreath
+ * All rights reserved.
+ *
+ * Permission to use, copy, modify, and distribute this software for any purpose
+ * with or without fee is hereby granted, provided that the above copyright
+ * notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT OF THIRD PARTY RIGHTS. IN
+ * NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ * Except as contained in this notice, the name of a copyright holder shall not
+ * be used in advertising or otherwise to promote the sale, use or other dealings
+ * in this Software without prior written authorization of the copyright holder.
+ */
+package com.tomato.util.checkdigits;
+
+/**
+ * ASCII lookup tables shared by the table-driven verify methods.
+ * <p>
+ * Each table maps a character below 128 to its value, {@link #INVALID} or {@link #SKIP}; characters from 128 up are
+ * invalid. The lookups neither throw nor allocate.
+ */
+final class CheckTables {
+
+    /**
+     * Value of a character that is not accepted.
+     */
+    static final int INVALID = -1;
+
+    /**
+     * Value of a separator that is ignored: ASCII whitespace and '-'.
+     */
+    static final int SKIP = -2;
+
+    /**
+     * '0'-'9' to 0-9.
+     */
+    static final byte[] DIGITS = new byte[128];
+
+    /**
+     * '0'-'9' to 0-9, and 'X' or 'x' to 10.
+     */
+    static final byte[] DIGITS_X = new byte[128];
+
+    /**
+     * '0'-'9' to 0-9, 'A'-'Z' and 'a'-'z' to 10-35, and separators to SKIP.
+     */
+    static final byte[] ALPHANUMERICS = new byte[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            int digit = c >= '0' && c <= '9' ? c - '0' : INVALID;
+            DIGITS[c] = (byte)digit;
+            DIGITS_X[c] = (byte)(c == 'X' || c == 'x' ? 10 : digit);
+            if (digit >= 0) {
+                ALPHANUMERICS[c] = (byte)digit;
+            } else if (c >= 'A' && c <= 'Z') {
+                ALPHANUMERICS[c] = (byte)(c - 'A' + 10);
+            } else if (c >= 'a' && c <= 'z') {
+                ALPHANUMERICS[c] = (byte)(c - 'a' + 10);
+            } else if (Character.isWhitespace(c) || c == '-') {
+                ALPHANUMERICS[c] = SKIP;
+            } else {
+                ALPHANUMERICS[c] = INVALID;
+            }
+        }
+    }
+
+    /**
+     * The largest number of decimal digits of a packed value.
+     */
+    static final int MAX_PACKED_DIGITS = 19;
+
+    /**
+     * 10<sup>8</sup>, the size of the groups that are unpacked with {@link #digits8(int)}.
+     */
+    static final long GROUP = 100000000L;
+
+    /**
+     * POW10[i] = 10<sup>i</sup>.
+     */
+    private static final long[] POW10 = new long[MAX_PACKED_DIGITS];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < MAX_PACKED_DIGITS; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Throws if a packed value can not have the given number of decimal digits.
+     */
+    static void checkPackedDigits(int digits) {
+        if (digits < 1 || digits > MAX_PACKED_DIGITS) {
+            throw new IllegalArgumentException("digits must be in the range [1.." + MAX_PACKED_DIGITS + "]: " + digits);
+        }
+    }
+
+    /**
+     * Tests whether v is a non-negative number of at most the given number of decimal digits.
+     */
+    static boolean inRange(long v, int digits) {
+        return v >= 0 && (digits == MAX_PACKED_DIGITS || v < POW10[digits]);
+    }
+
+    /**
+     * Unpacks the eight decimal digits of x &lt; 10<sup>8</sup>, with leading zeros, into the bytes of a long: byte j
+     * (bits 8j to 8j+7) holds the j-th digit from the left. Every digit is extracted at once by dividing the 32-, 16-
+     * and 8-bit lanes of the long by 100 and 10 with multiplications.
+     */
+    static long digits8(int x) {
+        int hi = x / 10000;
+        long merged = hi | (long)(x - hi * 10000) << 32;
+        long top = (merged * 10486 >>> 20) & 0x0000007F0000007FL;
+        long hundreds = top | (merged - top * 100) << 16;
+        long tens = (hundreds * 103 >>> 10) & 0x000F000F000F000FL;
+        return tens | (hundreds - tens * 10) << 8;
+    }
+
+    /**
+     * Returns the packed value v formatted as a digit string with the given number of digits, or null if it is out
+     * of range.
+     */
+    static String format(long v, int digits) {
+        if (!inRange(v, digits)) {
+            return null;
+        }
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[i] = (char)('0' + v % 10);
+            v /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns the value of a character in a table, or INVALID.
+     */
+    static int value(byte[] table, char c) {
+        return c < 128 ? table[c] : INVALID;
+    }
+
+    /**
+     * Returns the value of an ASCII byte in a table, or INVALID.
+     */
+    static int value(byte[] table, byte b) {
+        return b >= 0 ? table[b] : INVALID;
+    }
+
+    /**
+     * Tests whether [off..off+len-1] is a range of a sequence of the given length.
+     */
+    static boolean inBounds(int length, int off, int len) {
+        return off >= 0 && len >= 0 && off <= length - len;
+    }
+
+    /**
+     * Non-instantiable class.
+     */
+    private CheckTables() {
+    }
+}
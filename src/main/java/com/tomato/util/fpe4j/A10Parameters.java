@@ -14,18 +14,10 @@
  */
 package com.tomato.util.fpe4j;
 
-import java.math.BigInteger;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
 
 import com.tomato.util.fpe4j.FFX.ArithmeticFunction;
 import com.tomato.util.fpe4j.FFX.FFXParameters;
@@ -49,14 +41,19 @@ import static com.tomato.util.fpe4j.Common.floor;
 public class A10Parameters implements FFXParameters {
 
     /**
-     * Instance of the AES cipher in CBC mode with no padding.
+     * Instances of AES ciphers for the CBC-MAC, with the key schedule expanded once per key.
      */
-    Cipher mAesCbcCipher;
+    final Ciphers ciphers;
 
     /**
-     * Zero initialization vector for AEC CBC
+     * Reusable P || Q buffer for the round function, reallocated when its length changes.
      */
-    IvParameterSpec mAesCbcIv;
+    private byte[] PQ = new byte[0];
+
+    /**
+     * Reusable output block of the CBC-MAC in the round function.
+     */
+    private final byte[] Y = new byte[16];
 
     /**
      * Split function for A10
@@ -97,60 +94,59 @@ public class A10Parameters implements FFXParameters {
             // vers <- 1; t <- |T|8
             int t = T.length;
 
+            // the P || Q buffer is reused, so that a round only allocates its output
+            int q = 16 + t + Common.mod(-t - 9, 16);
+            if (PQ.length != q + 9) {
+                PQ = new byte[q + 9];
+            }
+
             // P <- [vers]^2 || [method]^1 || [addition]^1 || [radix]^1 || [n]^1
             // || [split(n)]^1 || [rnds(n)]^1 || [t]^8
-            byte[] obn = bytestring(n, 1);
-            byte[] obs = bytestring(a10Splitter.split(n), 1);
-            byte[] obr = bytestring(a10RoundCounter.rnds(n), 1);
-            byte[] ebt = bytestring(t, 8);
-            byte[] P =
-                {0, 1, 2, 1, (byte)getRadix(), obn[0], obs[0], obr[0], ebt[7], ebt[6], ebt[5], ebt[4], ebt[3], ebt[2],
-                    ebt[1], ebt[0]};
+            // (with [t]^8 in little-endian byte order, as in the reference implementation)
+            PQ[0] = 0;
+            PQ[1] = 1;
+            PQ[2] = 2;
+            PQ[3] = 1;
+            PQ[4] = (byte)getRadix();
+            PQ[5] = bytestring(n, 1)[0];
+            PQ[6] = bytestring(a10Splitter.split(n), 1)[0];
+            PQ[7] = bytestring(a10RoundCounter.rnds(n), 1)[0];
+            for (int k = 0; k < 8; k++) {
+                PQ[8 + k] = (byte)(k < 4 ? t >>> 8 * k : 0);
+            }
 
             // Q <- T || [0]^(-t-9 mod 16) || [i]^1 || [num10(B)]^8
-            byte[] Q = T;
-            Q = Common.concatenate(Q, bytestring(0, Common.mod(-t - 9, 16)));
-            Q = Common.concatenate(Q, bytestring(i, 1));
-            Q = Common.concatenate(Q, Common.bytestring(Common.num(B, getRadix()), 8));
+            System.arraycopy(T, 0, PQ, 16, t);
+            Arrays.fill(PQ, 16 + t, q, (byte)0);
+            PQ[q] = bytestring(i, 1)[0];
+            Common.bytestring(Common.numLong(B, 0, B.length, getRadix()), PQ, q + 1, 8);
 
             // Y <- CBC-MAC K(P || Q)
-            byte[] Y;
-
-            try {
-                mAesCbcCipher.init(Cipher.ENCRYPT_MODE, K, mAesCbcIv);
-                Y = mAesCbcCipher.doFinal(Common.concatenate(P, Q));
-                Y = Arrays.copyOfRange(Y, Y.length - 16, Y.length);
-            } catch (IllegalBlockSizeException | BadPaddingException | InvalidAlgorithmParameterException e) {
-                // these would be programming errors so convert to an unchecked
-                // exception
-                throw new RuntimeException(e);
-            }
+            Arrays.fill(Y, (byte)0);
+            ciphers.prepare(K).prf(Y, PQ, 0, PQ.length, Y);
 
             // Y' <- Y [1 .. 64]; Y'' <- Y [65 .. 128]
-            byte[] Y1 = Arrays.copyOfRange(Y, 0, 8);
-            byte[] Y2 = Arrays.copyOfRange(Y, 8, 16);
-
-            // y' <- num2(Y'); y'' <- num2(Y'')
-            BigInteger y1 = Common.num(Y1);
-            BigInteger y2 = Common.num(Y2);
+            // y' <- num2(Y'); y'' <- num2(Y''), which are only needed modulo powers of 10 below 10^18
 
             // if even (i) then m <- split(n) else m <- n-split(n)
             int m = i % 2 == 0 ? a10Splitter.split(n) : n - a10Splitter.split(n);
 
             // if m <= 9 then z <- y'' mod 10^m
             // else z <- (y' mod 10^(m-9)) * 10^9 + (y'' mod 10^9)
-            BigInteger z;
+            long z;
             if (m <= 9) {
-                z = y2.mod(BigInteger.valueOf(10).pow(m));
+                z = Common.modLong(Y, 8, 8, Common.powLong(10, m));
             } else {
                 // 10^9, for readability
-                BigInteger oneBillion = BigInteger.valueOf(10).pow(9);
+                long oneBillion = 1000000000L;
 
-                z = y1.mod(BigInteger.valueOf(10).pow(m - 9)).multiply(oneBillion).add(y2.mod(oneBillion));
+                z = Common.modLong(Y, 0, 8, Common.powLong(10, m - 9)) * oneBillion
+                    + Common.modLong(Y, 8, 8, oneBillion);
             }
 
             // return str m 10 (z)
-            int[] Z = Common.str(z, getRadix(), m);
+            int[] Z = new int[m];
+            Common.strLong(z, getRadix(), m, Z, 0);
             return Z;
         }
 
@@ -171,13 +167,7 @@ public class A10Parameters implements FFXParameters {
      * Construct a new A10Parameters instance.
      */
     public A10Parameters() {
-        try {
-            mAesCbcCipher = Cipher.getInstance("AES/CBC/NoPadding");
-            mAesCbcIv = new IvParameterSpec(new byte[16]);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            // this could happen if the JRE doesn't have the AES-CBC cipher
-            throw new RuntimeException(e);
-        }
+        ciphers = new Ciphers();
     }
 
     @Override public int getRadix() {
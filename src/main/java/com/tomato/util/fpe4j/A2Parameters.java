@@ -14,17 +14,10 @@
  */
 package com.tomato.util.fpe4j;
 
-import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
 
 import com.tomato.util.fpe4j.FFX.ArithmeticFunction;
 import com.tomato.util.fpe4j.FFX.FFXParameters;
@@ -48,14 +41,19 @@ import static com.tomato.util.fpe4j.Common.floor;
 public class A2Parameters implements FFXParameters {
 
     /**
-     * Instance of the AES cipher in CBC mode with no padding.
+     * Instances of AES ciphers for the CBC-MAC, with the key schedule expanded once per key.
      */
-    Cipher mAesCbcCipher;
+    final Ciphers ciphers;
 
     /**
-     * Zero initialization vector for AEC CBC
+     * Reusable P || Q buffer for the round function, reallocated when its length changes.
      */
-    IvParameterSpec mAesCbcIv;
+    private byte[] PQ = new byte[0];
+
+    /**
+     * Reusable output block of the CBC-MAC in the round function.
+     */
+    private final byte[] Y = new byte[16];
 
     /**
      * Split function for A2
@@ -100,48 +98,59 @@ public class A2Parameters implements FFXParameters {
             // vers <- 1; t <- |T|8
             int t = T.length;
 
+            // the P || Q buffer is reused, so that a round only allocates its output
+            int q = 16 + t + Common.mod(-t - 9, 16);
+            if (PQ.length != q + 9) {
+                PQ = new byte[q + 9];
+            }
+
             // P <- [vers]^2 || [method]^1 || [addition]^1 || [radix]^1 || [n]^1
             // || [split(n)]^1 || [rnds(n)]^1 || [t]^8
-            byte[] obn = bytestring(n, 1);
-            byte[] obs = bytestring(a2Splitter.split(n), 1);
-            byte[] obr = bytestring(a2RoundCounter.rnds(n), 1);
-            byte[] ebt = bytestring(t, 8);
-            byte[] P =
-                {0, 1, 2, 0, 2, obn[0], obs[0], obr[0], ebt[7], ebt[6], ebt[5], ebt[4], ebt[3], ebt[2], ebt[1], ebt[0]};
+            // (with [t]^8 in little-endian byte order, as in the reference implementation)
+            PQ[0] = 0;
+            PQ[1] = 1;
+            PQ[2] = 2;
+            PQ[3] = 0;
+            PQ[4] = (byte)getRadix();
+            PQ[5] = bytestring(n, 1)[0];
+            PQ[6] = bytestring(a2Splitter.split(n), 1)[0];
+            PQ[7] = bytestring(a2RoundCounter.rnds(n), 1)[0];
+            for (int k = 0; k < 8; k++) {
+                PQ[8 + k] = (byte)(k < 4 ? t >>> 8 * k : 0);
+            }
 
             // Q <- T || [0]^(-t-9 mod 16) || [i]^1 || 0^(64-|B|) || B
-            byte[] Q = T;
-            Q = Common.concatenate(Q, bytestring(0, Common.mod(-t - 9, 16)));
-            Q = Common.concatenate(Q, bytestring(i, 1));
+            System.arraycopy(T, 0, PQ, 16, t);
+            Arrays.fill(PQ, 16 + t, q, (byte)0);
+            PQ[q] = bytestring(i, 1)[0];
             /*
              * Note that the last two operands form a 64-bit string of the value
              * of B padded with leading zeros. Since the maximum length of the
              * input (n) is 128, |B| is always <= 64. To conform with the FFX
              * specification, B is an array of integers, albeit with values of
              * only 1 or 0. Rather than generate odd-length bit strings for the
-             * padding and B, we convert B directly to a string of 8 bytes.
+             * padding and B, we convert B directly to a string of 8 bytes (the
+             * long arithmetic wraps for |B| = 64, which leaves the same bits).
              */
-            Q = Common.concatenate(Q, Common.bytestring(Common.num(B, getRadix()), 8));
+            long b = Common.numLong(B, 0, B.length, getRadix());
+            for (int k = 0; k < 8; k++) {
+                PQ[q + 8 - k] = (byte)(b >>> 8 * k);
+            }
 
             // Y <- CBC-MAC K(P || Q)
-            byte[] Y;
-
-            try {
-                mAesCbcCipher.init(Cipher.ENCRYPT_MODE, K, mAesCbcIv);
-                Y = mAesCbcCipher.doFinal(Common.concatenate(P, Q));
-                Y = Arrays.copyOfRange(Y, Y.length - 16, Y.length);
-            } catch (IllegalBlockSizeException | BadPaddingException | InvalidAlgorithmParameterException e) {
-                // these would be programming errors so convert to an unchecked
-                // exception
-                throw new RuntimeException(e);
-            }
+            Arrays.fill(Y, (byte)0);
+            ciphers.prepare(K).prf(Y, PQ, 0, PQ.length, Y);
 
             // if even (i) then m <- split(n) else m <- n-split(n)
             int m = i % 2 == 0 ? a2Splitter.split(n) : n - a2Splitter.split(n);
 
             // return Y [129 - m .. 128]
-            int[] Z = Common.str(Common.num(Y), 2, 128);
-            return Arrays.copyOfRange(Z, 128 - m, 128);
+            int[] Z = new int[m];
+            for (int k = 0; k < m; k++) {
+                int bit = 128 - m + k;
+                Z[k] = Y[bit >>> 3] >>> 7 - (bit & 7) & 1;
+            }
+            return Z;
         }
 
         @Override public boolean validKey(SecretKey K) {
@@ -161,13 +170,7 @@ public class A2Parameters implements FFXParameters {
      * Construct a new A2Parameters instance.
      */
     public A2Parameters() {
-        try {
-            mAesCbcCipher = Cipher.getInstance("AES/CBC/NoPadding");
-            mAesCbcIv = new IvParameterSpec(new byte[16]);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            // this could happen if the JRE doesn't have the AES-CBC cipher
-            throw new RuntimeException(e);
-        }
+        ciphers = new Ciphers();
     }
 
     @Override public int getRadix() {
@@ -14,17 +14,10 @@
  */
 package com.tomato.util.fpe4j;
 
-import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
 
 /**
  * Common cipher functions for FF1 and FF3 based on AES.
@@ -35,26 +28,28 @@ import javax.crypto.spec.IvParameterSpec;
 class Ciphers {
 
     /**
-     * Instance of the AES cipher in ECB mode with no padding.
+     * The most recently used key, with the AES ciphers initialized.
      */
-    private Cipher mAesEcbCipher;
+    private PreparedKey mPreparedKey;
 
     /**
-     * Instance of the AES cipher in CBC mode with no padding.
-     */
-    private Cipher mAesCbcCipher;
-
-    /**
-     * Constructs a Ciphers instance with the required AES ciphers.
+     * Returns the prepared AES ciphers for K, expanding the key schedule only if K is not the key used by the previous
+     * call.
+     * 
+     * @param K
+     *            The AES key, or a PreparedKey.
+     * @return The PreparedKey for K.
+     * @throws InvalidKeyException
+     *             If the key is not a valid AES key.
      */
-    public Ciphers() {
-        try {
-            mAesEcbCipher = Cipher.getInstance("AES/ECB/NoPadding");
-            mAesCbcCipher = Cipher.getInstance("AES/CBC/NoPadding");
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            // this could happen if the JRE doesn't have the ciphers
-            throw new RuntimeException(e);
+    public PreparedKey prepare(SecretKey K) throws InvalidKeyException {
+        if (K instanceof PreparedKey) {
+            return (PreparedKey)K;
+        }
+        if (mPreparedKey == null || mPreparedKey.getKey() != K) {
+            mPreparedKey = new PreparedKey(K);
         }
+        return mPreparedKey;
     }
 
     /**
@@ -107,19 +102,13 @@ class Ciphers {
         // 3. Let Y(0) = bitstring(0,128), and
         byte[] Y = Common.bitstring(false, 128);
 
+        // the key schedule is expanded once for all the blocks
+        PreparedKey key = prepare(K);
+
         // for j from 1 to m let Y(j) = CIPH(K,Y(j-1) xor X[j]).
         for (int j = 0; j < m; j++) {
             byte[] Xj = Arrays.copyOfRange(X, j * 16, j * 16 + 16);
-            try {
-                mAesEcbCipher.init(Cipher.ENCRYPT_MODE, K);
-
-                Y = mAesEcbCipher.doFinal(Common.xor(Y, Xj));
-
-            } catch (IllegalBlockSizeException | BadPaddingException e) {
-                // these would be programming errors so convert to an unchecked
-                // exception
-                throw new RuntimeException(e);
-            }
+            Y = key.ciph(Common.xor(Y, Xj));
         }
 
         // 4. Return Y(m).
@@ -160,23 +149,8 @@ class Ciphers {
                 "The length of X is not within the permitted range of 1.." + Constants.MAXLEN + ": " + X.length);
         }
 
-        byte[] Z;
-
-        try {
-            byte[] Y = {(byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
-                (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00};
-
-            mAesCbcCipher.init(Cipher.ENCRYPT_MODE, K, new IvParameterSpec(Y));
-
-            Z = mAesCbcCipher.doFinal(X);
-
-        } catch (IllegalBlockSizeException | BadPaddingException | InvalidAlgorithmParameterException e) {
-            // these would be programming errors so convert to an unchecked
-            // exception
-            throw new RuntimeException(e);
-        }
-
-        return Arrays.copyOfRange(Z, Z.length - 16, Z.length);
+        // the prepared CBC cipher already holds the zero initialization vector
+        return prepare(K).prf(X);
     }
 
     /**
@@ -215,19 +189,6 @@ class Ciphers {
                 "The length of X is not within the permitted range of 1.." + Constants.MAXLEN + ": " + X.length);
         }
 
-        byte[] cipherText;
-        try {
-
-            mAesEcbCipher.init(Cipher.ENCRYPT_MODE, K);
-
-            cipherText = mAesEcbCipher.doFinal(X);
-
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
-            // these would be programming errors so convert to an unchecked
-            // exception
-            throw new RuntimeException(e);
-        }
-
-        return cipherText;
+        return prepare(K).ciph(X);
     }
 }
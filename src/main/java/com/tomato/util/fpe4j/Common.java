@@ -183,6 +183,43 @@ class Common {
         return string;
     }
 
+    /**
+     * Writes x into X[off..off+s-1] as an array of bytes of length s, in decreasing order of significance.
+     * <p>
+     * This is the primitive counterpart of bytestring(BigInteger, int) used by the long arithmetic paths of FF1 and
+     * FF3. Bytes beyond the eight bytes of a long are filled with zeros.
+     * <p>
+     * NIST SP 800-38G notation: [x]<sup>s</sup>
+     * 
+     * @param x
+     *            The nonnegative integer to convert to an array of bytes.
+     * @param X
+     *            The destination array.
+     * @param off
+     *            The offset of the first byte to write.
+     * @param s
+     *            The number of bytes to write.
+     * @throws IllegalArgumentException
+     *             If x is negative or if s is negative.
+     */
+    static void bytestring(long x, byte[] X, int off, int s) {
+        // validate x
+        if (x < 0) {
+            throw new IllegalArgumentException("x must be nonnegative");
+        }
+
+        // validate s
+        if (s < 0) {
+            throw new IllegalArgumentException("s must be nonnegative");
+        }
+
+        // traverse s in reverse order, shifting x one byte at a time
+        for (int i = off + s - 1; i >= off; i--) {
+            X[i] = (byte)(x & 0xFF);
+            x >>>= 8;
+        }
+    }
+
     /**
      * Returns the smallest integer value that is greater than or equal to x.
      * <p>
@@ -436,6 +473,50 @@ class Common {
         return x - m * floor(x / (double)m);
     }
 
+    /**
+     * Returns NUM(X[off..off+len-1]) mod m without materialising the (possibly much larger) value of NUM(X).
+     * <p>
+     * This is equivalent to mod(num(Arrays.copyOfRange(X, off, off + len)), BigInteger.valueOf(m)) and is used by
+     * the long arithmetic paths of FF1 and FF3 to reduce the output of the cipher function.
+     * 
+     * @param X
+     *            The string of bytes to convert to a number.
+     * @param off
+     *            The offset of the first (most significant) byte.
+     * @param len
+     *            The number of bytes.
+     * @param m
+     *            The modulus.
+     * @return The nonnegative remainder of NUM(X[off..off+len-1]) modulo m.
+     * @throws ArithmeticException
+     *             If m is less than 1.
+     */
+    static long modLong(byte[] X, int off, int len, long m) {
+        // validate m
+        if (m < 1) {
+            throw new ArithmeticException("m must be a positive integer");
+        }
+
+        long x = 0;
+        if (m <= Long.MAX_VALUE >>> 8) {
+            // x * 256 + 255 cannot overflow, so reduce one byte at a time
+            for (int i = off; i < off + len; i++) {
+                x = ((x << 8) | (X[i] & 0xFF)) % m;
+            }
+        } else {
+            // x * 2 + 1 fits in 64 unsigned bits, so reduce one bit at a time
+            for (int i = off; i < off + len; i++) {
+                for (int j = 7; j >= 0; j--) {
+                    x = (x << 1) | ((X[i] >>> j) & 1);
+                    if (x < 0 || x >= m) {
+                        x -= m;
+                    }
+                }
+            }
+        }
+        return x;
+    }
+
     /**
      * NIST SP 800-38G Algorithm 2: NUM(X) - Converts a string of bytes to an integer, valuing the bytes as unsigned
      * integers in decreasing order of significance.
@@ -562,6 +643,93 @@ class Common {
         return x;
     }
 
+    /**
+     * NIST SP 800-38G Algorithm 1: NUM<sub>radix</sub>(X) computed in a long for X[off..off+len-1].
+     * <p>
+     * The caller must ensure that radix<sup>len</sup> fits in a long, e.g. by checking that powLong(radix, len) is not
+     * negative.
+     * 
+     * @param X
+     *            The string of numerals to convert to a number.
+     * @param off
+     *            The offset of the first (most significant) numeral.
+     * @param len
+     *            The number of numerals.
+     * @param radix
+     *            The base of the numerals such that 0 &lt;= X[i] &lt; radix for all i.
+     * @return The number that the numeral string represents in base <i>radix</i>.
+     * @throws IllegalArgumentException
+     *             If any numeral X[i] is outside the range [0..radix-1].
+     */
+    static long numLong(int[] X, int off, int len, int radix) {
+        long x = 0;
+        for (int i = off; i < off + len; i++) {
+            // check the value of X[i]
+            if (X[i] < 0 || X[i] >= radix) {
+                throw new IllegalArgumentException(
+                    "X[" + i + "] is not within the range of values defined by the radix (0.." + radix + ")");
+            }
+
+            // let x = x * radix + X[i]
+            x = x * radix + X[i];
+        }
+        return x;
+    }
+
+    /**
+     * Computes NUM<sub>radix</sub>(REV(X[off..off+len-1])) in a long, i.e. values the numerals in increasing order of
+     * significance, without allocating the reversed numeral string.
+     * 
+     * @param X
+     *            The string of numerals to convert to a number.
+     * @param off
+     *            The offset of the first (least significant) numeral.
+     * @param len
+     *            The number of numerals.
+     * @param radix
+     *            The base of the numerals such that 0 &lt;= X[i] &lt; radix for all i.
+     * @return The number that the reversed numeral string represents in base <i>radix</i>.
+     * @throws IllegalArgumentException
+     *             If any numeral X[i] is outside the range [0..radix-1].
+     */
+    static long numLongRev(int[] X, int off, int len, int radix) {
+        long x = 0;
+        for (int i = off + len - 1; i >= off; i--) {
+            // check the value of X[i]
+            if (X[i] < 0 || X[i] >= radix) {
+                throw new IllegalArgumentException(
+                    "X[" + i + "] is not within the range of values defined by the radix (0.." + radix + ")");
+            }
+
+            // let x = x * radix + X[i]
+            x = x * radix + X[i];
+        }
+        return x;
+    }
+
+    /**
+     * Returns radix<sup>m</sup> as a long, or -1 if the value does not fit in 63 bits.
+     * <p>
+     * FF1 and FF3 use this to decide whether a Feistel half can be processed with primitive arithmetic instead of
+     * BigInteger.
+     * 
+     * @param radix
+     *            The base.
+     * @param m
+     *            The exponent.
+     * @return radix<sup>m</sup>, or -1 if radix<sup>m</sup> &gt; Long.MAX_VALUE.
+     */
+    static long powLong(int radix, int m) {
+        long x = 1;
+        for (int i = 0; i < m; i++) {
+            if (x > Long.MAX_VALUE / radix) {
+                return -1;
+            }
+            x *= radix;
+        }
+        return x;
+    }
+
     /**
      * NIST SP 800-38G Algorithm 4: REV(X) - Reverse a string of numerals.
      * <p>
@@ -640,6 +808,24 @@ class Common {
         return Y;
     }
 
+    /**
+     * Reverses the bytes X[off..off+len-1] in place, i.e. REVB without allocating a new byte string.
+     * 
+     * @param X
+     *            The bit string (i.e. array of bytes) containing the bytes to reverse.
+     * @param off
+     *            The offset of the first byte.
+     * @param len
+     *            The number of bytes.
+     */
+    static void revb(byte[] X, int off, int len) {
+        for (int i = off, j = off + len - 1; i < j; i++, j--) {
+            byte x = X[i];
+            X[i] = X[j];
+            X[j] = x;
+        }
+    }
+
     /**
      * NIST SP 800-38G Algorithm 3: STR<sup>m</sup><sub>radix</sub>(x) - Converts an integer to an array of numerals of
      * a given radix.
@@ -721,6 +907,50 @@ class Common {
         return X;
     }
 
+    /**
+     * NIST SP 800-38G Algorithm 3: STR<sup>m</sup><sub>radix</sub>(x) for a long value, writing the numerals into
+     * Y[off..off+m-1] in decreasing order of significance.
+     * 
+     * @param x
+     *            The integer to convert, such that 0 &lt;= x &lt; radix<sup>m</sup>.
+     * @param radix
+     *            The base of the numerals.
+     * @param m
+     *            The length of the string of numerals.
+     * @param Y
+     *            The destination array.
+     * @param off
+     *            The offset of the first (most significant) numeral.
+     */
+    static void strLong(long x, int radix, int m, int[] Y, int off) {
+        for (int i = off + m - 1; i >= off; i--) {
+            Y[i] = (int)(x % radix);
+            x /= radix;
+        }
+    }
+
+    /**
+     * Computes REV(STR<sup>m</sup><sub>radix</sub>(x)) for a long value, writing the numerals into Y[off..off+m-1] in
+     * increasing order of significance, without allocating the intermediate numeral string.
+     * 
+     * @param x
+     *            The integer to convert, such that 0 &lt;= x &lt; radix<sup>m</sup>.
+     * @param radix
+     *            The base of the numerals.
+     * @param m
+     *            The length of the string of numerals.
+     * @param Y
+     *            The destination array.
+     * @param off
+     *            The offset of the first (least significant) numeral.
+     */
+    static void strLongRev(long x, int radix, int m, int[] Y, int off) {
+        for (int i = off; i < off + m; i++) {
+            Y[i] = (int)(x % radix);
+            x /= radix;
+        }
+    }
+
     /**
      * Converts an array of bytes to a string, treating the bytes as unsigned integers, with commas and spaces
      * separating the byte values.
@@ -800,6 +1030,31 @@ class Common {
         return Z;
     }
 
+    /**
+     * Writes X[xoff..xoff+len-1] xor Y[yoff..yoff+len-1] into Z[zoff..zoff+len-1], without allocating a result.
+     * Z may be the same array as X or Y.
+     * 
+     * @param X
+     *            The first bit string (i.e. array of bytes).
+     * @param xoff
+     *            The offset in X.
+     * @param Y
+     *            The second bit string (i.e. array of bytes).
+     * @param yoff
+     *            The offset in Y.
+     * @param Z
+     *            The output array.
+     * @param zoff
+     *            The offset in Z.
+     * @param len
+     *            The number of bytes.
+     */
+    static void xor(byte[] X, int xoff, byte[] Y, int yoff, byte[] Z, int zoff, int len) {
+        for (int i = 0; i < len; i++) {
+            Z[zoff + i] = (byte)(X[xoff + i] ^ Y[yoff + i]);
+        }
+    }
+
     /**
      * Non-instantiable class.
      */
@@ -21,13 +21,18 @@ import static com.tomato.util.fpe4j.Common.concatenate;
 import static com.tomato.util.fpe4j.Common.floor;
 import static com.tomato.util.fpe4j.Common.log2;
 import static com.tomato.util.fpe4j.Common.mod;
+import static com.tomato.util.fpe4j.Common.modLong;
 import static com.tomato.util.fpe4j.Common.num;
+import static com.tomato.util.fpe4j.Common.numLong;
+import static com.tomato.util.fpe4j.Common.powLong;
 import static com.tomato.util.fpe4j.Common.str;
-import static com.tomato.util.fpe4j.Common.xor;
+import static com.tomato.util.fpe4j.Common.strLong;
 
 import java.math.BigInteger;
 import java.security.InvalidKeyException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.crypto.SecretKey;
 
@@ -56,6 +61,16 @@ public class FF1 {
      */
     private final int radix;
 
+    /**
+     * The LongRounds of the last call, reused while the key, tweak and length stay the same.
+     */
+    private LongRounds mRounds;
+
+    /**
+     * Workspace for the blocks R xor [j]^16 of step 6.iii and their encryption.
+     */
+    private byte[] mBlocks, mCipherBlocks;
+
     /**
      * Construct a new FF1 instance with a given radix and maximum tweak length.
      * 
@@ -139,7 +154,7 @@ public class FF1 {
 
         if (T.length > maxTlen) {
             throw new IllegalArgumentException(
-                "The length of T is not within the permitted range of 1.." + maxTlen + ": " + T.length);
+                "The length of T is not within the permitted range of 0.." + maxTlen + ": " + T.length);
         }
 
         // validate X
@@ -175,6 +190,12 @@ public class FF1 {
             System.out.println("Step 1\n\tu is " + u + ", v is " + v);
         }
 
+        // steps 2 to 7 in primitive arithmetic if radix^v fits in a long
+        if (!Constants.CONFORMANCE_OUTPUT && powLong(radix, v) > 0) {
+            return rounds(mCiphers.prepare(K), T, n).decrypt(X);
+        }
+        FpeMetrics.getInstance().slowPath(FpeEngine.Method.FF1, radix, n);
+
         // 2. Let A = X[1..u]; B = X[u+1..n].
         int[] A = Arrays.copyOfRange(X, 0, u);
         int[] B = Arrays.copyOfRange(X, u, n);
@@ -244,11 +265,7 @@ public class FF1 {
             // iii. Let S be the string of the first d bytes of the following
             // string of ceiling (d/16) blocks: R || CIPH K (R xor [1] 16 ) ||
             // CIPH K (R xor [2] 16 ) ... CIPH K (R xor [ceiling(d/16) - 1] 16 ).
-            byte[] S = R;
-            for (int j = 1; j <= ceiling(d / 16.0) - 1; j++) {
-                S = concatenate(S, mCiphers.ciph(K, xor(R, bytestring(j, 16))));
-            }
-            S = Arrays.copyOf(S, d);
+            byte[] S = expand(mCiphers.prepare(K), R, d);
             if (Constants.CONFORMANCE_OUTPUT) {
                 System.out.println("\tStep 6.iii.\n\t\tS is " + byteArrayToHexString(S));
             }
@@ -336,6 +353,35 @@ public class FF1 {
         return decrypt(K, T, X, 0);
     }
 
+    /**
+     * Decrypt a batch of ciphertext numeral strings with the same key and tweak.
+     * <p>
+     * The result is the same as calling decrypt(K, T, X[j]) for each element, but the key is prepared once, and for
+     * each distinct length n where radix<sup>v</sup> fits in a long the block P, the CBC-MAC chaining value over P || T
+     * and the round buffers are computed once and shared by every element of that length. Elements of other lengths
+     * are decrypted individually.
+     * 
+     * @param K
+     *            The 128-, 192- or 256-bit AES key.
+     * @param T
+     *            The tweak with length in the range [0..maxTlen].
+     * @param X
+     *            The ciphertext numeral strings, which may have different lengths.
+     * @return The plaintext numeral strings, in the same order as X.
+     * @throws NullPointerException
+     *             If any of the arguments or elements of X are null.
+     * @throws IllegalArgumentException
+     *             If the length of T is not within the range of [0..maxTlen]; the length of any X[j] is not within the
+     *             range [{@value com.tomato.util.fpe4j.Constants#MINLEN}..
+     *             {@value com.tomato.util.fpe4j.Constants#MAXLEN}]; radix<sup>X[j].length</sup> is less than 100; or any
+     *             value X[j][i] is not in the range [0..radix].
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     */
+    public int[][] decryptBatch(SecretKey K, byte[] T, int[][] X) throws InvalidKeyException {
+        return batch(K, T, X, false);
+    }
+
     /**
      * NIST SP 800-38G Algorithm 7: FF1.Encrypt(K, T, X) - Encrypt a plaintext string of numerals and produce a
      * ciphertext string of numerals of the same length and radix.
@@ -387,7 +433,7 @@ public class FF1 {
         }
         if (T.length > maxTlen) {
             throw new IllegalArgumentException(
-                "The length of T is not within the permitted range of 1.." + maxTlen + ": " + T.length);
+                "The length of T is not within the permitted range of 0.." + maxTlen + ": " + T.length);
         }
 
         // validate X
@@ -425,6 +471,12 @@ public class FF1 {
             System.out.println("Step 1\n\tu is " + u + ", v is " + v);
         }
 
+        // steps 2 to 7 in primitive arithmetic if radix^v fits in a long
+        if (!Constants.CONFORMANCE_OUTPUT && powLong(radix, v) > 0) {
+            return rounds(mCiphers.prepare(K), T, n).encrypt(X);
+        }
+        FpeMetrics.getInstance().slowPath(FpeEngine.Method.FF1, radix, n);
+
         // 2. Let A = X[1..u]; B = X[u + 1..n].
         int[] A = Arrays.copyOfRange(X, 0, u);
         int[] B = Arrays.copyOfRange(X, u, n);
@@ -493,11 +545,7 @@ public class FF1 {
             // iii. Let S be the first d bytes of the following string of
             // ceiling(d/16) blocks: R || CIPH K (R xor [1]^16 ) || CIPH K (R
             // xor [2]^16 ) ... CIPH K (R xor [ceiling(d/16)-1]^16 ).
-            byte[] S = R;
-            for (int j = 1; j <= ceiling(d / 16.0) - 1; j++) {
-                S = concatenate(S, mCiphers.ciph(K, xor(R, bytestring(j, 16))));
-            }
-            S = Arrays.copyOf(S, d);
+            byte[] S = expand(mCiphers.prepare(K), R, d);
             if (Constants.CONFORMANCE_OUTPUT) {
                 System.out.println("\tStep 6.iii.\n\t\tS is " + byteArrayToHexString(S));
             }
@@ -584,4 +632,373 @@ public class FF1 {
         return encrypt(K, T, X, 0);
     }
 
+    /**
+     * Encrypt a batch of plaintext numeral strings with the same key and tweak.
+     * <p>
+     * The result is the same as calling encrypt(K, T, X[j]) for each element, but the key is prepared once, and for
+     * each distinct length n where radix<sup>v</sup> fits in a long the block P, the CBC-MAC chaining value over P || T
+     * and the round buffers are computed once and shared by every element of that length. Elements of other lengths
+     * are encrypted individually.
+     * 
+     * @param K
+     *            The 128-, 192- or 256-bit AES key.
+     * @param T
+     *            The tweak with length in the range [0..maxTlen].
+     * @param X
+     *            The plaintext numeral strings, which may have different lengths.
+     * @return The ciphertext numeral strings, in the same order as X.
+     * @throws NullPointerException
+     *             If any of the arguments or elements of X are null.
+     * @throws IllegalArgumentException
+     *             If the length of T is not within the range of [0..maxTlen]; the length of any X[j] is not within the
+     *             range [{@value com.tomato.util.fpe4j.Constants#MINLEN}..
+     *             {@value com.tomato.util.fpe4j.Constants#MAXLEN}]; radix<sup>X[j].length</sup> is less than 100; or any
+     *             value X[j][i] is not in the range [0..radix].
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     */
+    public int[][] encryptBatch(SecretKey K, byte[] T, int[][] X) throws InvalidKeyException {
+        return batch(K, T, X, true);
+    }
+
+    /**
+     * Step 6.iii: returns the first d bytes of R || CIPH(R xor [1]^16) || ... || CIPH(R xor [ceiling(d/16)-1]^16).
+     * The blocks after R are built in one buffer and encrypted with a single ECB call.
+     */
+    private byte[] expand(PreparedKey key, byte[] R, int d) {
+        byte[] S = new byte[d];
+        int len = 16 * (ceiling(d / 16.0) - 1);
+        if (len == 0) {
+            System.arraycopy(R, 0, S, 0, d);
+            return S;
+        }
+        if (mBlocks == null || mBlocks.length < len) {
+            mBlocks = new byte[len];
+            mCipherBlocks = new byte[len];
+        }
+
+        // R xor [j]^16 for each j
+        for (int j = 1, off = 0; off < len; j++, off += 16) {
+            System.arraycopy(R, 0, mBlocks, off, 16);
+            mBlocks[off + 12] ^= j >>> 24;
+            mBlocks[off + 13] ^= j >>> 16;
+            mBlocks[off + 14] ^= j >>> 8;
+            mBlocks[off + 15] ^= j;
+        }
+        key.ciph(mBlocks, 0, len, mCipherBlocks, 0);
+
+        System.arraycopy(R, 0, S, 0, 16);
+        System.arraycopy(mCipherBlocks, 0, S, 16, d - 16);
+        return S;
+    }
+
+    /**
+     * Returns the LongRounds for a key, tweak and length, reusing those of the last call if they match, so that a
+     * steady-state call allocates only its output.
+     */
+    private LongRounds rounds(PreparedKey key, byte[] T, int n) {
+        if (mRounds == null || !mRounds.matches(key, T, n)) {
+            mRounds = new LongRounds(key, T, n);
+        }
+        return mRounds;
+    }
+
+    /**
+     * Computes FF1.Encrypt(K, T, X) for every numeral string X of length n, as a table from NUM<sub>radix</sub>(X) to
+     * NUM<sub>radix</sub> of the ciphertext. The caller validates K, T and n, and radix<sup>n</sup> must fit in an int.
+     */
+    int[] permutation(SecretKey K, byte[] T, int n) throws InvalidKeyException {
+        LongRounds rounds = new LongRounds(mCiphers.prepare(K), T, n);
+        int[] table = new int[(int)powLong(radix, n)];
+        for (int x = 0; x < table.length; x++) {
+            table[x] = (int)rounds.encrypt(x);
+        }
+        return table;
+    }
+
+    /**
+     * Encrypts or decrypts a batch of numeral strings, sharing the LongRounds for each length.
+     */
+    private int[][] batch(SecretKey K, byte[] T, int[][] X, boolean encrypt) throws InvalidKeyException {
+        // validate K
+        if (K == null) {
+            throw new NullPointerException("K must not be null");
+        }
+        if (!K.getAlgorithm().equals("AES")) {
+            throw new InvalidKeyException("K must be an AES key");
+        }
+
+        // validate T
+        if (T == null) {
+            throw new NullPointerException("T must not be null");
+        }
+        if (T.length > maxTlen) {
+            throw new IllegalArgumentException(
+                "The length of T is not within the permitted range of 0.." + maxTlen + ": " + T.length);
+        }
+
+        // validate X
+        if (X == null) {
+            throw new NullPointerException("X must not be null");
+        }
+
+        PreparedKey key = mCiphers.prepare(K);
+
+        // the rounds for each length, or null where radix^v does not fit in a long
+        Map<Integer, LongRounds> rounds = new HashMap<Integer, LongRounds>();
+
+        int[][] Y = new int[X.length][];
+        for (int j = 0; j < X.length; j++) {
+            // validate X[j]
+            if (X[j] == null) {
+                throw new NullPointerException("X[" + j + "] must not be null");
+            }
+            int n = X[j].length;
+
+            LongRounds r = rounds.get(n);
+            if (r == null && !rounds.containsKey(n)) {
+                if (n < Constants.MINLEN || n > Constants.MAXLEN) {
+                    throw new IllegalArgumentException("The length of X is not within the permitted range of "
+                        + Constants.MINLEN + ".." + Constants.MAXLEN + ": " + n);
+                }
+                if (Math.pow(radix, n) < 100) {
+                    throw new IllegalArgumentException("The length of X must be such that radix ^ length > 100");
+                }
+                if (!Constants.CONFORMANCE_OUTPUT && powLong(radix, n - n / 2) > 0) {
+                    r = new LongRounds(key, T, n);
+                }
+                rounds.put(n, r);
+            }
+
+            if (r != null) {
+                Y[j] = encrypt ? r.encrypt(X[j]) : r.decrypt(X[j]);
+            } else {
+                Y[j] = encrypt ? encrypt(key, T, X[j]) : decrypt(key, T, X[j]);
+            }
+        }
+        return Y;
+    }
+
+    /**
+     * Steps 2 to 7 of FF1 for one key, one tweak and one input length n where radix<sup>v</sup> fits in a long.
+     * <p>
+     * The numeral strings A and B are carried through the rounds as their NUM<sub>radix</sub> values, so no
+     * BigInteger or intermediate numeral string is created; the result is identical to the BigInteger implementation.
+     * <p>
+     * P || T || [0]<sup>(-t-b-1) mod 16</sup> is the same in every round and for every input of length n, so the
+     * CBC-MAC chaining value over its complete blocks is computed once, and each round only encrypts the last block of
+     * P || Q, which holds [i]<sup>1</sup> and [NUM<sub>radix</sub>(B)]<sup>b</sup>. Since b is at most 8, d is at most
+     * 12 and S is simply the first d bytes of R.
+     * <p>
+     * An instance holds round buffers, so it must only be used by one thread.
+     */
+    private final class LongRounds {
+
+        /**
+         * The prepared AES key.
+         */
+        private final PreparedKey key;
+
+        /**
+         * The tweak.
+         */
+        private final byte[] T;
+
+        /**
+         * The length of the numeral strings.
+         */
+        private final int n;
+
+        /**
+         * The lengths of A and B.
+         */
+        private final int u, v;
+
+        /**
+         * The byte lengths of NUM<sub>radix</sub>(B) in Q and of S.
+         */
+        private final int b, d;
+
+        /**
+         * radix<sup>u</sup> and radix<sup>v</sup>.
+         */
+        private final long radixU, radixV;
+
+        /**
+         * P || Q, where the bytes from q onwards change in each round.
+         */
+        private final byte[] PQ;
+
+        /**
+         * The offset of [i]<sup>1</sup> in PQ.
+         */
+        private final int q;
+
+        /**
+         * The offset of the first block of PQ that changes in each round.
+         */
+        private final int start;
+
+        /**
+         * The CBC-MAC chaining value over PQ[0..start-1].
+         */
+        private final byte[] Y = new byte[16];
+
+        /**
+         * R = PRF(P || Q) in the current round.
+         */
+        private final byte[] R = new byte[16];
+
+        /**
+         * NUM<sub>radix</sub>(A) and NUM<sub>radix</sub>(B) in the current round.
+         */
+        private long numA, numB;
+
+        /**
+         * Computes steps 1, 3, 4 and 5 and the CBC-MAC over the fixed blocks of P || Q.
+         */
+        LongRounds(PreparedKey key, byte[] T, int n) {
+            this.key = key;
+            this.T = T.clone();
+            this.n = n;
+            int t = T.length;
+
+            // 1. Let u = floor(n/2); v = n - u.
+            u = n / 2;
+            v = n - u;
+            radixU = powLong(radix, u);
+            radixV = powLong(radix, v);
+
+            // 3. Let b = ceiling(ceiling(v * LOG(radix))/8).
+            b = ceiling(ceiling(v * log2(radix)) / 8.0);
+
+            // 4. Let d = 4 * ceiling(b/4) + 4.
+            d = 4 * ceiling(b / 4.0) + 4;
+
+            // 5. Let P = [1]^1 || [2]^1 || [1]^1 || [radix]^3 || [10]^1 || [u mod 256]^1 || [n]^4 || [t]^4,
+            // followed by T || [0]^((-t-b-1) mod 16)
+            q = 16 + t + mod(-t - b - 1, 16);
+            PQ = new byte[q + 1 + b];
+            PQ[0] = 0x01;
+            PQ[1] = 0x02;
+            PQ[2] = 0x01;
+            bytestring(radix, PQ, 3, 3);
+            PQ[6] = 0x0A;
+            PQ[7] = (byte)(mod(u, 256) & 0xFF);
+            bytestring(n, PQ, 8, 4);
+            bytestring(t, PQ, 12, 4);
+            System.arraycopy(T, 0, PQ, 16, t);
+
+            start = q / 16 * 16;
+            key.prf(new byte[16], PQ, 0, start, Y);
+        }
+
+        /**
+         * Returns true if these rounds are for the given key, tweak and length.
+         */
+        boolean matches(PreparedKey key, byte[] T, int n) {
+            return this.key == key && this.n == n && Arrays.equals(this.T, T);
+        }
+
+        /**
+         * Steps 2, 6 and 7 of FF1.Encrypt(K, T, X).
+         */
+        int[] encrypt(int[] X) {
+            // 2. Let A = X[1..u]; B = X[u + 1..n].
+            numA = numLong(X, 0, u, radix);
+            numB = numLong(X, u, v, radix);
+
+            encryptRounds();
+
+            // 7. Return A || B.
+            int[] AB = new int[u + v];
+            strLong(numA, radix, u, AB, 0);
+            strLong(numB, radix, v, AB, u);
+            return AB;
+        }
+
+        /**
+         * FF1.Encrypt(K, T, X) on NUM<sub>radix</sub> values, where radix<sup>n</sup> fits in a long.
+         */
+        long encrypt(long x) {
+            numA = x / radixV;
+            numB = x % radixV;
+            encryptRounds();
+            return numA * radixV + numB;
+        }
+
+        /**
+         * Step 6 of FF1.Encrypt(K, T, X) on numA and numB.
+         */
+        private void encryptRounds() {
+            // 6. For i from 0 to 9:
+            for (int i = 0; i < 10; i++) {
+                // i. Let Q = T || [0]^((-t-b-1) mod 16) || [i]^1 || [NUMradix(B)]^b
+                PQ[q] = (byte)i;
+                bytestring(numB, PQ, q + 1, b);
+
+                // ii. Let R = PRF(P || Q).
+                key.prf(Y, PQ, start, PQ.length - start, R);
+
+                // v. If i is even, let m = u; else, let m = v.
+                long radixM = i % 2 == 0 ? radixU : radixV;
+
+                // iii., iv. and vi. Let c = (NUMradix(A) + NUM(S)) mod radix^m.
+                long c = numA + modLong(R, 0, d, radixM);
+                if (c < 0 || c >= radixM) {
+                    c -= radixM;
+                }
+
+                // viii. Let A = B; ix. Let B = C.
+                numA = numB;
+                numB = c;
+            }
+        }
+
+        /**
+         * Steps 2, 6 and 7 of FF1.Decrypt(K, T, X).
+         */
+        int[] decrypt(int[] X) {
+            // 2. Let A = X[1..u]; B = X[u+1..n].
+            numA = numLong(X, 0, u, radix);
+            numB = numLong(X, u, v, radix);
+
+            decryptRounds();
+
+            // 7. Return A || B.
+            int[] AB = new int[u + v];
+            strLong(numA, radix, u, AB, 0);
+            strLong(numB, radix, v, AB, u);
+            return AB;
+        }
+
+        /**
+         * Step 6 of FF1.Decrypt(K, T, X) on numA and numB.
+         */
+        private void decryptRounds() {
+            // 6. For i from 9 to 0:
+            for (int i = 9; i >= 0; i--) {
+                // i. Let Q = T || [0]^((-t-b-1) mod 16) || [i]^1 || [NUMradix(A)]^b
+                PQ[q] = (byte)i;
+                bytestring(numA, PQ, q + 1, b);
+
+                // ii. Let R = PRF(P || Q).
+                key.prf(Y, PQ, start, PQ.length - start, R);
+
+                // v. If i is even, let m = u; else, let m = v.
+                long radixM = i % 2 == 0 ? radixU : radixV;
+
+                // iii., iv. and vi. Let c = (NUMradix(B) - NUM(S)) mod radix^m.
+                long c = numB - modLong(R, 0, d, radixM);
+                if (c < 0) {
+                    c += radixM;
+                }
+
+                // viii. Let B = A; ix. Let A = C.
+                numB = numA;
+                numA = c;
+            }
+        }
+    }
+
 }
@@ -0,0 +1,325 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import static com.tomato.util.fpe4j.Common.numLong;
+import static com.tomato.util.fpe4j.Common.powLong;
+import static com.tomato.util.fpe4j.Common.strLong;
+
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.crypto.SecretKey;
+
+/**
+ * FF1 for tiny domains by table lookup.
+ * <p>
+ * When radix<sup>n</sup> is at most {@link #MAX_DOMAIN}, e.g. for 4 to 6 digit codes, the first call for a key, tweak
+ * and length n encrypts every numeral string of length n once, and keeps the forward and inverse permutations as int
+ * arrays of radix<sup>n</sup> entries. Later calls for the same key, tweak and length are answered with one array
+ * lookup each, and the results are identical to FF1. The tables are held in a least recently used cache whose total
+ * size is bounded by the byte budget given to the constructor; inputs with larger domains, or whose tables do not fit
+ * in the budget, are encrypted with FF1 directly.
+ * <p>
+ * Tables are identified by the SecretKey instance, so callers should reuse the same instance for a key; no key
+ * material is kept, and keys whose encoding is not available, such as keys held in an HSM, are supported. The cache
+ * does not keep keys reachable.
+ * <p>
+ * An FF1Table may be shared between threads. The first call for a new key, tweak or length runs FF1
+ * radix<sup>n</sup> times to build the tables; callers for the same tables wait for it, while lookups in other tables
+ * and inputs encrypted with FF1 proceed.
+ */
+public final class FF1Table {
+
+    /**
+     * The largest domain size radix<sup>n</sup> for which permutation tables are built.
+     */
+    public static final int MAX_DOMAIN = 1 << 22;
+
+    /**
+     * The radix for symbols to be processed.
+     */
+    private final int radix;
+
+    /**
+     * The maximum length of a tweak in bytes.
+     */
+    private final int maxTlen;
+
+    /**
+     * The maximum total size of the cached tables in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * FF1 instance used for inputs outside the tables, guarded by itself.
+     */
+    private final FF1 ff1;
+
+    /**
+     * An identity for each key in use, guarded by this. The keys are weakly referenced.
+     */
+    private final WeakHashMap<SecretKey, Object> keyIds = new WeakHashMap<SecretKey, Object>();
+
+    /**
+     * The cached tables in least recently used order, guarded by this.
+     */
+    private final LinkedHashMap<Domain, Holder> cache = new LinkedHashMap<Domain, Holder>(16, 0.75f, true);
+
+    /**
+     * The total size of the cached tables in bytes, guarded by this.
+     */
+    private long bytes;
+
+    /**
+     * Key of the cache: the identity of the key, the tweak and the length.
+     */
+    private static final class Domain {
+        final Object keyId;
+        final byte[] T;
+        final int n;
+
+        Domain(Object keyId, byte[] T, int n) {
+            this.keyId = keyId;
+            this.T = T;
+            this.n = n;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Domain)) {
+                return false;
+            }
+            Domain d = (Domain)o;
+            return n == d.n && keyId == d.keyId && Arrays.equals(T, d.T);
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(keyId) * 31 + Arrays.hashCode(T)) * 31 + n;
+        }
+    }
+
+    /**
+     * The tables of a domain, built once by the first caller while later callers wait on the holder.
+     */
+    private static final class Holder {
+        Tables tables;
+    }
+
+    /**
+     * The forward and inverse permutations of a domain.
+     */
+    private static final class Tables {
+        final int[] forward;
+        final int[] inverse;
+
+        Tables(int[] forward) {
+            this.forward = forward;
+            this.inverse = new int[forward.length];
+            for (int x = 0; x < forward.length; x++) {
+                inverse[forward[x]] = x;
+            }
+        }
+
+        long bytes() {
+            return 8L * forward.length;
+        }
+    }
+
+    /**
+     * Construct a new FF1Table instance.
+     *
+     * @param radix
+     *            The radix for symbols to be processed by this instance.
+     * @param maxTlen
+     *            The maximum length of tweaks accepted by this instance.
+     * @param maxBytes
+     *            The maximum total size of the cached tables in bytes; each table uses 8 * radix<sup>n</sup> bytes.
+     * @throws IllegalArgumentException
+     *             If radix or maxTlen is not accepted by FF1, or maxBytes is negative.
+     */
+    public FF1Table(int radix, int maxTlen, long maxBytes) {
+        // validate maxBytes
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+        }
+
+        this.ff1 = new FF1(radix, maxTlen);
+        this.radix = radix;
+        this.maxTlen = maxTlen;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * FF1.Encrypt(K, T, X), by table lookup where possible.
+     *
+     * @param K
+     *            The 128-, 192- or 256-bit AES key.
+     * @param T
+     *            The tweak with length in the range [0..maxTlen].
+     * @param X
+     *            The plaintext numeral string.
+     * @return The ciphertext numeral string of the same length and radix.
+     * @throws NullPointerException
+     *             If any of the arguments are null.
+     * @throws IllegalArgumentException
+     *             If the input is not accepted by FF1.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     */
+    public int[] encrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+        Tables tables = tables(K, T, X);
+        if (tables == null) {
+            synchronized (ff1) {
+                return ff1.encrypt(K, T, X);
+            }
+        }
+        return lookup(tables.forward, X);
+    }
+
+    /**
+     * FF1.Decrypt(K, T, X), by table lookup where possible.
+     *
+     * @param K
+     *            The 128-, 192- or 256-bit AES key.
+     * @param T
+     *            The tweak with length in the range [0..maxTlen].
+     * @param X
+     *            The ciphertext numeral string.
+     * @return The plaintext numeral string of the same length and radix.
+     * @throws NullPointerException
+     *             If any of the arguments are null.
+     * @throws IllegalArgumentException
+     *             If the input is not accepted by FF1.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     */
+    public int[] decrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+        Tables tables = tables(K, T, X);
+        if (tables == null) {
+            synchronized (ff1) {
+                return ff1.decrypt(K, T, X);
+            }
+        }
+        return lookup(tables.inverse, X);
+    }
+
+    /**
+     * @return The total size of the cached tables in bytes.
+     */
+    public synchronized long getCachedBytes() {
+        return bytes;
+    }
+
+    /**
+     * Removes all cached tables.
+     */
+    public synchronized void clear() {
+        cache.clear();
+        keyIds.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the tables for K, T and the length of X, building them if necessary, or null if the input must be
+     * processed by FF1.
+     */
+    private Tables tables(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+        // validate K, T and X as far as needed to select the tables; FF1 validates the rest
+        if (K == null || T == null || X == null || !K.getAlgorithm().equals("AES") || T.length > maxTlen
+            || Constants.CONFORMANCE_OUTPUT) {
+            return null;
+        }
+        int n = X.length;
+        long N = powLong(radix, n);
+        if (n < Constants.MINLEN || N < 100 || N > MAX_DOMAIN || 8 * N > maxBytes) {
+            return null;
+        }
+
+        // a PreparedKey is not thread-safe, so the tables are built with a copy prepared from the underlying key
+        if (K instanceof PreparedKey) {
+            K = ((PreparedKey)K).getKey();
+        }
+
+        // find or add the holder
+        Domain domain;
+        Holder holder;
+        synchronized (this) {
+            Object keyId = keyIds.get(K);
+            if (keyId == null) {
+                keyId = new Object();
+                keyIds.put(K, keyId);
+            }
+            domain = new Domain(keyId, T, n);
+            holder = cache.get(domain);
+            if (holder == null) {
+                holder = new Holder();
+                domain = new Domain(keyId, T.clone(), n);
+                cache.put(domain, holder);
+            }
+        }
+
+        // build the tables outside the lock of the instance
+        Tables tables;
+        synchronized (holder) {
+            if (holder.tables != null) {
+                return holder.tables;
+            }
+            try {
+                tables = new Tables(new FF1(radix, maxTlen).permutation(K, T, n));
+            } catch (InvalidKeyException | RuntimeException e) {
+                synchronized (this) {
+                    if (cache.get(domain) == holder) {
+                        cache.remove(domain);
+                    }
+                }
+                throw e;
+            }
+            holder.tables = tables;
+        }
+
+        // account for the tables, unless they were evicted or cleared while being built
+        synchronized (this) {
+            if (cache.get(domain) == holder) {
+                bytes += tables.bytes();
+
+                // evict the least recently used tables
+                Iterator<Map.Entry<Domain, Holder>> i = cache.entrySet().iterator();
+                while (bytes > maxBytes) {
+                    Holder evicted = i.next().getValue();
+                    i.remove();
+                    if (evicted.tables != null) {
+                        bytes -= evicted.tables.bytes();
+                    }
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Maps X through a permutation table.
+     */
+    private int[] lookup(int[] table, int[] X) {
+        int[] Y = new int[X.length];
+        strLong(table[(int)numLong(X, 0, X.length, radix)], radix, X.length, Y, 0);
+        return Y;
+    }
+}
@@ -20,10 +20,14 @@ import static com.tomato.util.fpe4j.Common.ceiling;
 import static com.tomato.util.fpe4j.Common.concatenate;
 import static com.tomato.util.fpe4j.Common.floor;
 import static com.tomato.util.fpe4j.Common.mod;
+import static com.tomato.util.fpe4j.Common.modLong;
 import static com.tomato.util.fpe4j.Common.num;
+import static com.tomato.util.fpe4j.Common.numLongRev;
+import static com.tomato.util.fpe4j.Common.powLong;
 import static com.tomato.util.fpe4j.Common.rev;
 import static com.tomato.util.fpe4j.Common.revb;
 import static com.tomato.util.fpe4j.Common.str;
+import static com.tomato.util.fpe4j.Common.strLongRev;
 import static com.tomato.util.fpe4j.Common.xor;
 
 import java.math.BigInteger;
@@ -63,6 +67,36 @@ public class FF3 {
      */
     private final int radix;
 
+    /**
+     * radix<sup>m</sup> for m in [0..maxlen].
+     */
+    private final BigInteger[] mPowers;
+
+    /**
+     * radix<sup>m</sup> for m in [0..maxlen], or -1 where it does not fit in a long.
+     */
+    private final long[] mLongPowers;
+
+    /**
+     * The most recently used key.
+     */
+    private SecretKey mKey;
+
+    /**
+     * REVB(mKey), with the AES ciphers initialized.
+     */
+    private PreparedKey mRevK;
+
+    /**
+     * Round buffer for REVB(P) in the long arithmetic path.
+     */
+    private final byte[] mP = new byte[16];
+
+    /**
+     * Round buffer for S in the long arithmetic path.
+     */
+    private final byte[] mS = new byte[16];
+
     /**
      * Construct a new FF3 instance with a given radix.
      * 
@@ -83,6 +117,14 @@ public class FF3 {
         maxlen = Math.max(minlen, 2 * floor(Math.log(Math.pow(2, 96)) / Math.log(radix)));
 
         mCiphers = new Ciphers();
+
+        // memoise radix^m for every m that can occur in the rounds
+        mPowers = new BigInteger[maxlen + 1];
+        mLongPowers = new long[maxlen + 1];
+        for (int m = 0; m <= maxlen; m++) {
+            mPowers[m] = BigInteger.valueOf(radix).pow(m);
+            mLongPowers[m] = powLong(radix, m);
+        }
     }
 
     /**
@@ -163,7 +205,7 @@ public class FF3 {
         // int n = X.length;
 
         // value of REVB(K) for readability
-        SecretKeySpec revK = new SecretKeySpec(revb(K.getEncoded()), "AES");
+        PreparedKey revK = revK(K);
 
         // 1. Let u = ceiling(n/2); v = n - u.
         int u = ceiling(n / 2.0);
@@ -172,6 +214,12 @@ public class FF3 {
             System.out.println("Step 1\n\tu is <" + u + ">, and v is <" + v + ">");
         }
 
+        // steps 2 to 5 in primitive arithmetic if radix^u fits in a long
+        if (!Constants.CONFORMANCE_OUTPUT && mLongPowers[u] > 0) {
+            return decryptLong(revK, X, u, v, T);
+        }
+        FpeMetrics.getInstance().slowPath(FpeEngine.Method.FF3, radix, n);
+
         // 2. Let A = X[1..u]; B = X[u + 1..n].
         int[] A = Arrays.copyOfRange(X, 0, u);
         int[] B = Arrays.copyOfRange(X, u, n);
@@ -221,7 +269,7 @@ public class FF3 {
             }
 
             // v. Let c = (NUMradix (REV(B))-y) mod radix m .
-            BigInteger c = mod(num(rev(B), radix).subtract(y), BigInteger.valueOf(radix).pow(m));
+            BigInteger c = mod(num(rev(B), radix).subtract(y), mPowers[m]);
             if (Constants.CONFORMANCE_OUTPUT) {
                 System.out.println("\tStep 4.v\n\t\tc is " + c);
             }
@@ -288,6 +336,74 @@ public class FF3 {
         return decrypt(K, T, X, 0);
     }
 
+    /**
+     * Steps 4 and 5 of FF3.Decrypt(K, T, X) for inputs where radix<sup>u</sup> fits in a long.
+     * <p>
+     * The numeral strings A and B are carried through the rounds as NUM<sub>radix</sub>(REV(A)) and
+     * NUM<sub>radix</sub>(REV(B)), so no BigInteger or intermediate numeral string is created; the result is
+     * identical to the BigInteger implementation.
+     * 
+     * @param revK
+     *            The prepared AES key with its bytes reversed, i.e. REVB(K).
+     * @param X
+     *            The ciphertext numeral string.
+     * @param u
+     *            The length of A.
+     * @param v
+     *            The length of B.
+     * @param T
+     *            The 8 byte tweak, i.e. T_L || T_R.
+     * @return The plaintext numeral string.
+     */
+    private int[] decryptLong(PreparedKey revK, int[] X, int u, int v, byte[] T) {
+        // values of radix^u and radix^v for readability
+        long radixU = mLongPowers[u];
+        long radixV = mLongPowers[v];
+
+        // 2. Let A = X[1..u]; B = X[u + 1..n].
+        long numA = numLongRev(X, 0, u, radix);
+        long numB = numLongRev(X, u, v, radix);
+
+        byte[] P = mP;
+        byte[] S = mS;
+
+        // 4. For i from 7 to 0:
+        for (int i = 7; i >= 0; i--) {
+            // i. If i is even, let m = u and W = T_R, else let m = v and W = T_L.
+            long radixM = i % 2 == 0 ? radixU : radixV;
+            // (W is T[w..w+3])
+            int w = i % 2 == 0 ? 4 : 0;
+
+            // ii. Let P = W xor [i]^4 || [NUMradix(REV(A))]^12.
+            P[0] = T[w];
+            P[1] = T[w + 1];
+            P[2] = T[w + 2];
+            P[3] = (byte)(T[w + 3] ^ i);
+            Common.bytestring(numA, P, 4, 12);
+
+            // iii. Let S = REVB(CIPH REVB(K) REVB(P)).
+            revb(P, 0, 16);
+            revK.ciph(P, 0, 16, S, 0);
+            revb(S, 0, 16);
+
+            // iv. and v. Let c = (NUMradix(REV(B)) - NUM(S)) mod radix^m.
+            long c = numB - modLong(S, 0, S.length, radixM);
+            if (c < 0) {
+                c += radixM;
+            }
+
+            // vii. Let B = A; viii. Let A = C.
+            numB = numA;
+            numA = c;
+        }
+
+        // 5. Return A || B.
+        int[] AB = new int[u + v];
+        strLongRev(numA, radix, u, AB, 0);
+        strLongRev(numB, radix, v, AB, u);
+        return AB;
+    }
+
     /**
      * NIST SP 800-38G Algorithm 9: FF3.Encrypt(K, T, X) - Encrypt a plaintext string of numerals and produce a
      * ciphertext string of numerals of the same length and radix.
@@ -366,7 +482,7 @@ public class FF3 {
         // int n = X.length;
 
         // value of REVB(K) for readability
-        SecretKeySpec revK = new SecretKeySpec(revb(K.getEncoded()), "AES");
+        PreparedKey revK = revK(K);
         /*
          * Note that this only works if K is in RAW format.
          */
@@ -378,6 +494,12 @@ public class FF3 {
             System.out.println("Step 1\n\tu is <" + u + ">, and v is <" + v + ">");
         }
 
+        // steps 2 to 5 in primitive arithmetic if radix^u fits in a long
+        if (!Constants.CONFORMANCE_OUTPUT && mLongPowers[u] > 0) {
+            return encryptLong(revK, X, u, v, T);
+        }
+        FpeMetrics.getInstance().slowPath(FpeEngine.Method.FF3, radix, n);
+
         // 2. Let A = X[1..u]; B = X[u + 1..n].
         int[] A = Arrays.copyOfRange(X, 0, u);
         int[] B = Arrays.copyOfRange(X, u, n);
@@ -427,7 +549,7 @@ public class FF3 {
             }
 
             // v. Let c = (NUMradix (REV(A)) + y) mod radix m .
-            BigInteger c = mod(num(rev(A), radix).add(y), BigInteger.valueOf(radix).pow(m));
+            BigInteger c = mod(num(rev(A), radix).add(y), mPowers[m]);
             if (Constants.CONFORMANCE_OUTPUT) {
                 System.out.println("\tStep 4.v\n\t\tc is " + c);
             }
@@ -494,6 +616,92 @@ public class FF3 {
         return encrypt(K, T, X, 0);
     }
 
+    /**
+     * Steps 4 and 5 of FF3.Encrypt(K, T, X) for inputs where radix<sup>u</sup> fits in a long.
+     * <p>
+     * The numeral strings A and B are carried through the rounds as NUM<sub>radix</sub>(REV(A)) and
+     * NUM<sub>radix</sub>(REV(B)), so no BigInteger or intermediate numeral string is created; the result is
+     * identical to the BigInteger implementation.
+     * 
+     * @param revK
+     *            The prepared AES key with its bytes reversed, i.e. REVB(K).
+     * @param X
+     *            The plaintext numeral string.
+     * @param u
+     *            The length of A.
+     * @param v
+     *            The length of B.
+     * @param T
+     *            The 8 byte tweak, i.e. T_L || T_R.
+     * @return The ciphertext numeral string.
+     */
+    private int[] encryptLong(PreparedKey revK, int[] X, int u, int v, byte[] T) {
+        // values of radix^u and radix^v for readability
+        long radixU = mLongPowers[u];
+        long radixV = mLongPowers[v];
+
+        // 2. Let A = X[1..u]; B = X[u + 1..n].
+        long numA = numLongRev(X, 0, u, radix);
+        long numB = numLongRev(X, u, v, radix);
+
+        byte[] P = mP;
+        byte[] S = mS;
+
+        // 4. For i from 0 to 7:
+        for (int i = 0; i < 8; i++) {
+            // i. If i is even, let m = u and W = T_R, else let m = v and W = T_L.
+            long radixM = i % 2 == 0 ? radixU : radixV;
+            // (W is T[w..w+3])
+            int w = i % 2 == 0 ? 4 : 0;
+
+            // ii. Let P = W xor [i]^4 || [NUMradix(REV(B))]^12.
+            P[0] = T[w];
+            P[1] = T[w + 1];
+            P[2] = T[w + 2];
+            P[3] = (byte)(T[w + 3] ^ i);
+            Common.bytestring(numB, P, 4, 12);
+
+            // iii. Let S = REVB(CIPH REVB(K) REVB(P)).
+            revb(P, 0, 16);
+            revK.ciph(P, 0, 16, S, 0);
+            revb(S, 0, 16);
+
+            // iv. and v. Let c = (NUMradix(REV(A)) + NUM(S)) mod radix^m.
+            long c = numA + modLong(S, 0, S.length, radixM);
+            if (c < 0 || c >= radixM) {
+                c -= radixM;
+            }
+
+            // vii. Let A = B; viii. Let B = C.
+            numA = numB;
+            numB = c;
+        }
+
+        // 5. Return A || B.
+        int[] AB = new int[u + v];
+        strLongRev(numA, radix, u, AB, 0);
+        strLongRev(numB, radix, v, AB, u);
+        return AB;
+    }
+
+    /**
+     * Returns REVB(K) with the AES ciphers initialized, reusing the result of the last call while K is the same
+     * instance, so that steady-state calls neither reverse the key nor expand its key schedule.
+     * 
+     * @param K
+     *            The AES key.
+     * @return The prepared AES key REVB(K).
+     * @throws InvalidKeyException
+     *             If REVB(K) is not a valid AES key.
+     */
+    private PreparedKey revK(SecretKey K) throws InvalidKeyException {
+        if (mKey != K) {
+            mRevK = new PreparedKey(new SecretKeySpec(revb(K.getEncoded()), "AES"));
+            mKey = K;
+        }
+        return mRevK;
+    }
+
     /**
      * Returns the maximum length of plaintext and ciphertext inputs based on the radix.
      * 
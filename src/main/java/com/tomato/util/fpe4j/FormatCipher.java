@@ -0,0 +1,154 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Format-preserving encryption of the strings of a {@link RegularFormat} by rank-encipher-unrank.
+ * <p>
+ * A string of length L is ranked into [0..N-1], where N is the number of strings of length L in the format, the rank
+ * is encrypted with a {@link RangeCipher} for N, and the result is unranked into a string of the same length. The
+ * ciphertext therefore always matches the format and has the length of the plaintext, e.g. "[A-Z]{2}\d{6}" maps
+ * "AB123456" to another two letters followed by six digits.
+ * <p>
+ * The RangeCipher of every length is created by the constructor, so encryption does not compile or allocate tables. A
+ * FormatCipher is immutable, and is thread-safe because RegularFormat and RangeCipher are.
+ */
+public final class FormatCipher {
+
+    /**
+     * The format.
+     */
+    private final RegularFormat format;
+
+    /**
+     * The cipher for the ranks of each length, or null for lengths without strings.
+     */
+    private final RangeCipher[] ciphers;
+
+    /**
+     * Construct a FormatCipher.
+     *
+     * @param method
+     *            The algorithm; FF1, FF3, A2 or A10.
+     * @param pattern
+     *            The regular expression, compiled with {@link RegularFormat#compile(String)}.
+     * @param maxTlen
+     *            The maximum length of tweaks; ignored for FF3, which always uses 8 byte tweaks.
+     * @throws IllegalArgumentException
+     *             If the pattern is not supported, method is IFX, or a length of the format has too many strings for
+     *             the algorithm.
+     */
+    public FormatCipher(FpeEngine.Method method, String pattern, int maxTlen) {
+        this(method, RegularFormat.compile(pattern), maxTlen);
+    }
+
+    /**
+     * Construct a FormatCipher.
+     *
+     * @param method
+     *            The algorithm; FF1, FF3, A2 or A10.
+     * @param format
+     *            The format.
+     * @param maxTlen
+     *            The maximum length of tweaks; ignored for FF3, which always uses 8 byte tweaks.
+     * @throws IllegalArgumentException
+     *             If method is IFX, or a length of the format has too many strings for the algorithm.
+     */
+    public FormatCipher(FpeEngine.Method method, RegularFormat format, int maxTlen) {
+        // validate format
+        if (format == null) {
+            throw new NullPointerException("format must not be null");
+        }
+
+        RangeCipher[] ciphers = new RangeCipher[format.getMaxLength() + 1];
+        for (int L = 0; L < ciphers.length; L++) {
+            BigInteger N = format.size(L);
+            if (N.signum() > 0) {
+                ciphers[L] = new RangeCipher(method, N, maxTlen);
+            }
+        }
+
+        this.format = format;
+        this.ciphers = ciphers;
+    }
+
+    /**
+     * Encrypt a plaintext string.
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param X
+     *            The plaintext string.
+     * @return The ciphertext string, in the format and of the same length.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If X does not match the format, or the engine rejects the tweak.
+     */
+    public String encrypt(SecretKey K, byte[] T, CharSequence X) throws InvalidKeyException {
+        return cipher(K, T, X, true);
+    }
+
+    /**
+     * Decrypt a ciphertext string.
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param X
+     *            The ciphertext string.
+     * @return The plaintext string, in the format and of the same length.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If X does not match the format, or the engine rejects the tweak.
+     */
+    public String decrypt(SecretKey K, byte[] T, CharSequence X) throws InvalidKeyException {
+        return cipher(K, T, X, false);
+    }
+
+    /**
+     * @return The format.
+     */
+    public RegularFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Ranks X, encrypts or decrypts the rank, and unranks the result.
+     */
+    private String cipher(SecretKey K, byte[] T, CharSequence X, boolean encrypt) throws InvalidKeyException {
+        if (format.isLong()) {
+            long x = format.rankLong(X);
+            RangeCipher cipher = ciphers[X.length()];
+            long y = encrypt ? cipher.encrypt(K, T, x) : cipher.decrypt(K, T, x);
+            char[] Y = new char[X.length()];
+            format.unrankLong(y, Y);
+            return new String(Y);
+        }
+
+        BigInteger x = format.rank(X);
+        RangeCipher cipher = ciphers[X.length()];
+        return format.unrank(X.length(), encrypt ? cipher.encrypt(K, T, x) : cipher.decrypt(K, T, x));
+    }
+}
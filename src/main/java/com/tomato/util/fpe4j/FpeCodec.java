@@ -0,0 +1,320 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Encrypts and decrypts character strings over an alphabet, e.g. "0123456789" or "0123456789ABCDEFGHJKMNPQRSTVWXYZ",
+ * with an FpeEngine whose radix is the length of the alphabet.
+ * <p>
+ * The character at index i of the alphabet is the numeral i. Characters are mapped to numerals through an index table,
+ * which covers ASCII when the alphabet and the pass-through characters are all ASCII, and all 64K char values
+ * otherwise. Pass-through characters, e.g. dashes and spaces, keep their positions and are excluded from the numeral
+ * string that is encrypted, so "4111-1111-1111-1111" is encrypted as a 16 digit value.
+ * <p>
+ * An FpeCodec is immutable, and is thread-safe because the FpeEngine is.
+ */
+public final class FpeCodec {
+
+    /**
+     * Index table value for characters that are not in the alphabet.
+     */
+    private static final int ILLEGAL = -1;
+
+    /**
+     * Index table value for pass-through characters.
+     */
+    private static final int PASS = -2;
+
+    /**
+     * The engine used to encrypt and decrypt the numeral strings.
+     */
+    private final FpeEngine engine;
+
+    /**
+     * The characters for the numerals [0..radix-1].
+     */
+    private final char[] alphabet;
+
+    /**
+     * The numeral for each character, or ILLEGAL or PASS; 128 entries for ASCII alphabets, otherwise 65536 entries.
+     */
+    private final int[] indexes;
+
+    /**
+     * Construct an FpeCodec without pass-through characters.
+     *
+     * @param engine
+     *            The FF1, FF3, A2 or A10 engine.
+     * @param alphabet
+     *            The characters for the numerals [0..radix-1].
+     * @throws IllegalArgumentException
+     *             If the length of the alphabet is not the radix of the engine, or the alphabet contains a character
+     *             more than once.
+     */
+    public FpeCodec(FpeEngine engine, String alphabet) {
+        this(engine, alphabet, "");
+    }
+
+    /**
+     * Construct an FpeCodec.
+     *
+     * @param engine
+     *            The FF1, FF3, A2 or A10 engine.
+     * @param alphabet
+     *            The characters for the numerals [0..radix-1].
+     * @param passThrough
+     *            The characters that are copied unchanged, e.g. "- ".
+     * @throws IllegalArgumentException
+     *             If the length of the alphabet is not the radix of the engine, or the alphabet and the pass-through
+     *             characters contain a character more than once.
+     */
+    public FpeCodec(FpeEngine engine, String alphabet, String passThrough) {
+        // validate arguments
+        if (engine == null) {
+            throw new NullPointerException("engine must not be null");
+        }
+        if (alphabet == null) {
+            throw new NullPointerException("alphabet must not be null");
+        }
+        if (passThrough == null) {
+            throw new NullPointerException("passThrough must not be null");
+        }
+        if (engine.getMethod() == FpeEngine.Method.IFX) {
+            throw new IllegalArgumentException("IFX uses a different radix for each position");
+        }
+        if (alphabet.length() != engine.getRadix()) {
+            throw new IllegalArgumentException(
+                "The length of the alphabet must be the radix " + engine.getRadix() + ": " + alphabet.length());
+        }
+
+        boolean ascii = true;
+        for (int i = 0; i < alphabet.length(); i++) {
+            ascii &= alphabet.charAt(i) < 128;
+        }
+        for (int i = 0; i < passThrough.length(); i++) {
+            ascii &= passThrough.charAt(i) < 128;
+        }
+
+        int[] indexes = new int[ascii ? 128 : 65536];
+        Arrays.fill(indexes, ILLEGAL);
+        for (int i = 0; i < alphabet.length(); i++) {
+            char c = alphabet.charAt(i);
+            if (indexes[c] != ILLEGAL) {
+                throw new IllegalArgumentException("Duplicate character " + c + " in the alphabet");
+            }
+            indexes[c] = i;
+        }
+        for (int i = 0; i < passThrough.length(); i++) {
+            char c = passThrough.charAt(i);
+            if (indexes[c] >= 0) {
+                throw new IllegalArgumentException("Pass-through character " + c + " is in the alphabet");
+            }
+            indexes[c] = PASS;
+        }
+
+        this.engine = engine;
+        this.alphabet = alphabet.toCharArray();
+        this.indexes = indexes;
+    }
+
+    /**
+     * Encrypt a plaintext string.
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param X
+     *            The plaintext string.
+     * @return The ciphertext string, with the pass-through characters in the same positions.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If X contains a character that is neither in the alphabet nor a pass-through character, or the
+     *             engine rejects the tweak or the number of numerals.
+     */
+    public String encrypt(SecretKey K, byte[] T, CharSequence X) throws InvalidKeyException {
+        return new String(encrypt(K, T, toCharArray(X)));
+    }
+
+    /**
+     * Decrypt a ciphertext string.
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param X
+     *            The ciphertext string.
+     * @return The plaintext string, with the pass-through characters in the same positions.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If X contains a character that is neither in the alphabet nor a pass-through character, or the
+     *             engine rejects the tweak or the number of numerals.
+     */
+    public String decrypt(SecretKey K, byte[] T, CharSequence X) throws InvalidKeyException {
+        return new String(decrypt(K, T, toCharArray(X)));
+    }
+
+    /**
+     * Encrypt a plaintext in place.
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param X
+     *            The plaintext characters, which are replaced by the ciphertext characters.
+     * @return X.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If X contains a character that is neither in the alphabet nor a pass-through character, or the
+     *             engine rejects the tweak or the number of numerals. X is unchanged in this case.
+     */
+    public char[] encrypt(SecretKey K, byte[] T, char[] X) throws InvalidKeyException {
+        FpeMetrics metrics = FpeMetrics.getInstance();
+        if (metrics != FpeMetrics.NOOP) {
+            return measure(metrics, true, K, T, X);
+        }
+        fromNumerals(engine.encrypt(K, T, toNumerals(X)), X);
+        return X;
+    }
+
+    /**
+     * Decrypt a ciphertext in place.
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param X
+     *            The ciphertext characters, which are replaced by the plaintext characters.
+     * @return X.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If X contains a character that is neither in the alphabet nor a pass-through character, or the
+     *             engine rejects the tweak or the number of numerals. X is unchanged in this case.
+     */
+    public char[] decrypt(SecretKey K, byte[] T, char[] X) throws InvalidKeyException {
+        FpeMetrics metrics = FpeMetrics.getInstance();
+        if (metrics != FpeMetrics.NOOP) {
+            return measure(metrics, false, K, T, X);
+        }
+        fromNumerals(engine.decrypt(K, T, toNumerals(X)), X);
+        return X;
+    }
+
+    /**
+     * @return The characters for the numerals [0..radix-1].
+     */
+    public String getAlphabet() {
+        return new String(alphabet);
+    }
+
+    /**
+     * @return The engine used to encrypt and decrypt the numeral strings.
+     */
+    public FpeEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Encrypts or decrypts X in place, and reports the time of the conversions to metrics.
+     */
+    private char[] measure(FpeMetrics metrics, boolean encrypt, SecretKey K, byte[] T, char[] X)
+        throws InvalidKeyException {
+        long start = System.nanoTime();
+        int[] N = toNumerals(X);
+        long nanos = System.nanoTime() - start;
+        N = encrypt ? engine.encrypt(K, T, N) : engine.decrypt(K, T, N);
+        start = System.nanoTime();
+        fromNumerals(N, X);
+        metrics.conversion(nanos + System.nanoTime() - start);
+        return X;
+    }
+
+    /**
+     * Returns the numeral for c, or ILLEGAL or PASS.
+     */
+    private int index(char c) {
+        return c < indexes.length ? indexes[c] : ILLEGAL;
+    }
+
+    /**
+     * Copies the characters of X into a new array.
+     */
+    private static char[] toCharArray(CharSequence X) {
+        if (X == null) {
+            throw new NullPointerException("X must not be null");
+        }
+        if (X instanceof String) {
+            return ((String)X).toCharArray();
+        }
+        char[] chars = new char[X.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = X.charAt(i);
+        }
+        return chars;
+    }
+
+    /**
+     * Converts the characters of X, other than pass-through characters, into a numeral string.
+     */
+    private int[] toNumerals(char[] X) {
+        if (X == null) {
+            throw new NullPointerException("X must not be null");
+        }
+
+        // count the numerals, and validate the characters
+        int n = 0;
+        for (int i = 0; i < X.length; i++) {
+            int x = index(X[i]);
+            if (x == ILLEGAL) {
+                throw new IllegalArgumentException("Illegal character " + X[i] + " at " + i);
+            }
+            if (x != PASS) {
+                n++;
+            }
+        }
+
+        int[] N = new int[n];
+        for (int i = 0, j = 0; j < n; i++) {
+            int x = index(X[i]);
+            if (x != PASS) {
+                N[j++] = x;
+            }
+        }
+        return N;
+    }
+
+    /**
+     * Writes the characters for the numerals of N into the positions of X that are not pass-through characters.
+     */
+    private void fromNumerals(int[] N, char[] X) {
+        for (int i = 0, j = 0; j < N.length; i++) {
+            if (index(X[i]) != PASS) {
+                X[i] = alphabet[N[j++]];
+            }
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import java.security.InvalidKeyException;
+
+import javax.crypto.SecretKey;
+
+import com.tomato.util.fpe4j.ifx.IFX;
+
+/**
+ * Thread-safe facade over FF1, FF3, the A2 and A10 FFX parameter sets, and IFX.
+ * <p>
+ * The FF1, FF3, FFX and IFX classes hold AES cipher state, so an instance must not be shared between threads. An
+ * FpeEngine holds only an immutable configuration, and lazily creates one instance of the underlying algorithm per
+ * calling thread. A single FpeEngine can therefore be shared by all request threads, and throughput scales with the
+ * number of cores because the threads never contend for cipher state.
+ * <p>
+ * Each per-thread instance caches the expanded key for the last SecretKey it was given, so callers should reuse the
+ * same SecretKey instance for successive calls. A {@link PreparedKey} is not thread-safe; when one is passed, its
+ * underlying key is used, and each thread prepares its own copy.
+ */
+public final class FpeEngine {
+
+    /**
+     * The algorithms supported by FpeEngine.
+     */
+    public enum Method {
+        /**
+         * NIST SP 800-38G FF1.
+         */
+        FF1,
+
+        /**
+         * NIST SP 800-38G FF3, with an 8 byte tweak.
+         */
+        FF3,
+
+        /**
+         * FFX A2, radix 2.
+         */
+        A2,
+
+        /**
+         * FFX A10, radix 10.
+         */
+        A10,
+
+        /**
+         * IFX over a vector of radices.
+         */
+        IFX
+    }
+
+    /**
+     * Per-thread instance of an algorithm.
+     */
+    private interface Worker {
+        int[] encrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException;
+
+        int[] decrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException;
+    }
+
+    /**
+     * The algorithm.
+     */
+    private final Method method;
+
+    /**
+     * The radix, or 0 for IFX.
+     */
+    private final int radix;
+
+    /**
+     * The vector of radices for IFX, otherwise null.
+     */
+    private final int[] W;
+
+    /**
+     * The minimum length of plaintext and ciphertext values.
+     */
+    private final int minlen;
+
+    /**
+     * The maximum length of plaintext and ciphertext values.
+     */
+    private final int maxlen;
+
+    /**
+     * The minimum length of tweaks.
+     */
+    private final int minTlen;
+
+    /**
+     * The maximum length of tweaks.
+     */
+    private final int maxTlen;
+
+    /**
+     * The instance of the algorithm for the current thread.
+     */
+    private final ThreadLocal<Worker> workers;
+
+    /**
+     * Construct an FpeEngine for FF1, FF3, A2 or A10.
+     *
+     * @param method
+     *            The algorithm.
+     * @param radix
+     *            The radix of the symbols; 2 for A2 and 10 for A10.
+     * @param minlen
+     *            The minimum length of plaintext and ciphertext values.
+     * @param maxlen
+     *            The maximum length of plaintext and ciphertext values.
+     * @param maxTlen
+     *            The maximum length of tweaks; ignored for FF3, which always uses 8 byte tweaks.
+     * @throws IllegalArgumentException
+     *             If the configuration is not supported by the algorithm.
+     */
+    public FpeEngine(Method method, int radix, int minlen, int maxlen, int maxTlen) {
+        // validate method
+        if (method == null) {
+            throw new NullPointerException("method must not be null");
+        }
+
+        // validate radix, and determine the limits of the algorithm
+        int lower;
+        int upper;
+        switch (method) {
+            case FF1:
+                if (radix < Constants.MINRADIX || radix > Constants.MAXRADIX) {
+                    throw new IllegalArgumentException("Radix must be in the range [" + Constants.MINRADIX + ".."
+                        + Constants.MAXRADIX + "]: " + radix);
+                }
+                lower = Constants.MINLEN;
+                upper = Constants.MAXLEN;
+                break;
+            case FF3:
+                FF3 ff3 = new FF3(radix);
+                lower = ff3.getMinlen();
+                upper = ff3.getMaxlen();
+                maxTlen = 8;
+                break;
+            case A2:
+            case A10:
+                FFX.FFXParameters params = method == Method.A2 ? new A2Parameters() : new A10Parameters();
+                if (radix != params.getRadix()) {
+                    throw new IllegalArgumentException(
+                        method + " requires a radix of " + params.getRadix() + ": " + radix);
+                }
+                lower = params.getMinLen();
+                upper = params.getMaxLen();
+                break;
+            default:
+                throw new IllegalArgumentException("Use FpeEngine(int[]) for IFX");
+        }
+
+        // validate minlen and maxlen
+        if (minlen < lower || maxlen > upper || minlen > maxlen) {
+            throw new IllegalArgumentException("The length range [" + minlen + ".." + maxlen
+                + "] is not within the range [" + lower + ".." + upper + "] permitted by " + method);
+        }
+        if (Math.pow(radix, minlen) < 100) {
+            throw new IllegalArgumentException(
+                "radix^minlen must be greater than or equal to 100: " + Math.pow(radix, minlen));
+        }
+
+        // validate maxTlen
+        if (maxTlen < 0 || method == Method.FF1 && maxTlen > Constants.MAXLEN) {
+            throw new IllegalArgumentException("maxTlen is not permitted by " + method + ": " + maxTlen);
+        }
+
+        this.method = method;
+        this.radix = radix;
+        this.W = null;
+        this.minlen = minlen;
+        this.maxlen = maxlen;
+        this.minTlen = method == Method.FF3 ? 8 : 0;
+        this.maxTlen = maxTlen;
+        this.workers = new Workers(method, radix, maxTlen, null);
+    }
+
+    /**
+     * Construct an FpeEngine for IFX.
+     *
+     * @param W
+     *            The vector of radices; the array is copied.
+     * @throws IllegalArgumentException
+     *             If W is not accepted by IFX.
+     */
+    public FpeEngine(int[] W) {
+        // validate W
+        if (W == null) {
+            throw new NullPointerException("W must not be null");
+        }
+        new IFX(W.clone());
+
+        this.method = Method.IFX;
+        this.radix = 0;
+        this.W = W.clone();
+        this.minlen = W.length;
+        this.maxlen = W.length;
+        this.minTlen = 0;
+        this.maxTlen = Integer.MAX_VALUE;
+        this.workers = new Workers(Method.IFX, 0, 0, this.W);
+    }
+
+    /**
+     * Encrypt a plaintext using the instance of the algorithm for the current thread.
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param X
+     *            The plaintext numeral string.
+     * @return The ciphertext numeral string of the same length and radix.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If the length of T or X is not within the configured range, or if the algorithm rejects the input.
+     */
+    public int[] encrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+        validate(T, X);
+        FpeMetrics metrics = FpeMetrics.getInstance();
+        if (metrics != FpeMetrics.NOOP) {
+            return measure(metrics, true, K, T, X);
+        }
+        return workers.get().encrypt(unwrap(K), T, X);
+    }
+
+    /**
+     * Decrypt a ciphertext using the instance of the algorithm for the current thread.
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param X
+     *            The ciphertext numeral string.
+     * @return The plaintext numeral string of the same length and radix.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If the length of T or X is not within the configured range, or if the algorithm rejects the input.
+     */
+    public int[] decrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+        validate(T, X);
+        FpeMetrics metrics = FpeMetrics.getInstance();
+        if (metrics != FpeMetrics.NOOP) {
+            return measure(metrics, false, K, T, X);
+        }
+        return workers.get().decrypt(unwrap(K), T, X);
+    }
+
+    /**
+     * @return The algorithm.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return The radix, or 0 for IFX.
+     */
+    public int getRadix() {
+        return radix;
+    }
+
+    /**
+     * @return The minimum length of plaintext and ciphertext values.
+     */
+    public int getMinlen() {
+        return minlen;
+    }
+
+    /**
+     * @return The maximum length of plaintext and ciphertext values.
+     */
+    public int getMaxlen() {
+        return maxlen;
+    }
+
+    /**
+     * @return The maximum length of tweaks.
+     */
+    public int getMaxTlen() {
+        return maxTlen;
+    }
+
+    /**
+     * Validates the lengths of T and X against the configuration.
+     */
+    private void validate(byte[] T, int[] X) {
+        // validate T
+        if (T == null) {
+            throw new NullPointerException("T must not be null");
+        }
+        if (T.length < minTlen || T.length > maxTlen) {
+            throw new IllegalArgumentException(
+                "The length of T must be in the range [" + minTlen + ".." + maxTlen + "]: " + T.length);
+        }
+
+        // validate X
+        if (X == null) {
+            throw new NullPointerException("X must not be null");
+        }
+        if (X.length < minlen || X.length > maxlen) {
+            throw new IllegalArgumentException(
+                "The length of X must be in the range [" + minlen + ".." + maxlen + "]: " + X.length);
+        }
+    }
+
+    /**
+     * Encrypts or decrypts X, and reports the time and allocations to metrics.
+     */
+    private int[] measure(FpeMetrics metrics, boolean encrypt, SecretKey K, byte[] T, int[] X)
+        throws InvalidKeyException {
+        long allocated = metrics.isAllocationTracking() ? FpeMetrics.allocatedBytes() : -1;
+        long start = System.nanoTime();
+        Worker worker = workers.get();
+        int[] Y = encrypt ? worker.encrypt(unwrap(K), T, X) : worker.decrypt(unwrap(K), T, X);
+        long nanos = System.nanoTime() - start;
+        if (allocated >= 0) {
+            allocated = FpeMetrics.allocatedBytes() - allocated;
+        }
+        metrics.operation(method, encrypt, radix, X.length, nanos, allocated);
+        return Y;
+    }
+
+    /**
+     * Returns the key underlying a PreparedKey, so that the per-thread instances never share its cipher state.
+     */
+    private static SecretKey unwrap(SecretKey K) {
+        return K instanceof PreparedKey ? ((PreparedKey) K).getKey() : K;
+    }
+
+    /**
+     * Creates the instance of the algorithm for a new thread. Holds only the configuration, so that the threads do not
+     * keep the FpeEngine reachable.
+     */
+    private static final class Workers extends ThreadLocal<Worker> {
+        private final Method method;
+        private final int radix;
+        private final int maxTlen;
+        private final int[] W;
+
+        Workers(Method method, int radix, int maxTlen, int[] W) {
+            this.method = method;
+            this.radix = radix;
+            this.maxTlen = maxTlen;
+            this.W = W;
+        }
+
+        @Override
+        protected Worker initialValue() {
+            switch (method) {
+                case FF1:
+                    return new FF1Worker(new FF1(radix, maxTlen));
+                case FF3:
+                    return new FF3Worker(new FF3(radix));
+                case A2:
+                    return new FFXWorker(new FFX(new A2Parameters()));
+                case A10:
+                    return new FFXWorker(new FFX(new A10Parameters()));
+                default:
+                    return new IFXWorker(new IFX(W.clone()));
+            }
+        }
+    }
+
+    /**
+     * Wraps an FF1 instance.
+     */
+    private static final class FF1Worker implements Worker {
+        private final FF1 ff1;
+
+        FF1Worker(FF1 ff1) {
+            this.ff1 = ff1;
+        }
+
+        @Override
+        public int[] encrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+            return ff1.encrypt(K, T, X);
+        }
+
+        @Override
+        public int[] decrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+            return ff1.decrypt(K, T, X);
+        }
+    }
+
+    /**
+     * Wraps an FF3 instance.
+     */
+    private static final class FF3Worker implements Worker {
+        private final FF3 ff3;
+
+        FF3Worker(FF3 ff3) {
+            this.ff3 = ff3;
+        }
+
+        @Override
+        public int[] encrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+            return ff3.encrypt(K, T, X);
+        }
+
+        @Override
+        public int[] decrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+            return ff3.decrypt(K, T, X);
+        }
+    }
+
+    /**
+     * Wraps an FFX instance.
+     */
+    private static final class FFXWorker implements Worker {
+        private final FFX ffx;
+
+        FFXWorker(FFX ffx) {
+            this.ffx = ffx;
+        }
+
+        @Override
+        public int[] encrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+            return ffx.encrypt(K, T, X);
+        }
+
+        @Override
+        public int[] decrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+            return ffx.decrypt(K, T, X);
+        }
+    }
+
+    /**
+     * Wraps an IFX instance.
+     */
+    private static final class IFXWorker implements Worker {
+        private final IFX ifx;
+
+        IFXWorker(IFX ifx) {
+            this.ifx = ifx;
+        }
+
+        @Override
+        public int[] encrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+            return ifx.encrypt(K, T, X);
+        }
+
+        @Override
+        public int[] decrypt(SecretKey K, byte[] T, int[] X) throws InvalidKeyException {
+            return ifx.decrypt(K, T, X);
+        }
+    }
+}
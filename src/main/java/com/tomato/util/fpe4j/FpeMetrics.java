@@ -0,0 +1,179 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Instrumentation hooks for format-preserving encryption, installed process-wide with {@link #setInstance}.
+ * <p>
+ * The default instance ignores every event, and the instrumented code checks for it with one volatile read, so the
+ * hooks cost nothing measurable until an implementation is installed. Implementations override the events they need,
+ * must be thread-safe, and should not block, because the events are reported on the calling threads.
+ * {@link FpeMetricsRecorder} is an implementation with counters and latency histograms.
+ * <p>
+ * The events are:
+ * <ul>
+ * <li>{@link #operation}: one encryption or decryption through an {@link FpeEngine};</li>
+ * <li>{@link #keySetup}: the expansion of a new AES key schedule;</li>
+ * <li>{@link #slowPath}: FF1, FF3 or IFX falling back from long arithmetic to BigInteger;</li>
+ * <li>{@link #cycleWalk}: one encryption or decryption by a {@link RangeCipher};</li>
+ * <li>{@link #conversion}: the character to numeral conversion of an {@link FpeCodec} call.</li>
+ * </ul>
+ */
+public abstract class FpeMetrics {
+
+    /**
+     * The instance that ignores every event.
+     */
+    public static final FpeMetrics NOOP = new FpeMetrics() {
+    };
+
+    /**
+     * The installed instance.
+     */
+    private static volatile FpeMetrics instance = NOOP;
+
+    /**
+     * @return The installed instance, {@link #NOOP} by default.
+     */
+    public static FpeMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Installs an instance for all subsequent events.
+     *
+     * @param metrics
+     *            The instance, or {@link #NOOP} to stop instrumentation.
+     */
+    public static void setInstance(FpeMetrics metrics) {
+        // validate metrics
+        if (metrics == null) {
+            throw new NullPointerException("metrics must not be null");
+        }
+
+        instance = metrics;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or -1 if the JVM does not report it.
+     *
+     * @return The allocated bytes.
+     */
+    static long allocatedBytes() {
+        return Allocations.THREADS != null
+            ? Allocations.THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * Determines whether {@link #operation} is given the bytes allocated by each call. Measuring them costs two calls
+     * into the JVM per operation, so the default is false.
+     *
+     * @return True to measure allocations.
+     */
+    public boolean isAllocationTracking() {
+        return false;
+    }
+
+    /**
+     * One encryption or decryption through an FpeEngine.
+     *
+     * @param method
+     *            The algorithm.
+     * @param encrypt
+     *            True for encryption, false for decryption.
+     * @param radix
+     *            The radix, or 0 for IFX.
+     * @param length
+     *            The number of numerals.
+     * @param nanos
+     *            The elapsed time in nanoseconds.
+     * @param allocatedBytes
+     *            The bytes allocated by the call, or -1 if not measured.
+     */
+    public void operation(FpeEngine.Method method, boolean encrypt, int radix, int length, long nanos,
+        long allocatedBytes) {
+    }
+
+    /**
+     * The expansion of a new AES key schedule.
+     *
+     * @param nanos
+     *            The elapsed time in nanoseconds.
+     */
+    public void keySetup(long nanos) {
+    }
+
+    /**
+     * FF1, FF3 or IFX processing a value with BigInteger arithmetic because it does not fit in a long.
+     *
+     * @param method
+     *            The algorithm.
+     * @param radix
+     *            The radix, or 0 for IFX.
+     * @param length
+     *            The number of numerals.
+     */
+    public void slowPath(FpeEngine.Method method, int radix, int length) {
+    }
+
+    /**
+     * One encryption or decryption by a RangeCipher.
+     *
+     * @param steps
+     *            The number of encryptions or decryptions needed to reach a value in the range, at least 1.
+     */
+    public void cycleWalk(int steps) {
+    }
+
+    /**
+     * The conversions between characters and numerals of one FpeCodec call, excluding the encryption.
+     *
+     * @param nanos
+     *            The elapsed time in nanoseconds.
+     */
+    public void conversion(long nanos) {
+    }
+
+    /**
+     * Holds the bean that reports allocated bytes per thread. It is initialized on the first call to
+     * {@link #allocatedBytes()}, which is only made when an instance tracks allocations, so the management classes are
+     * not loaded otherwise.
+     */
+    private static final class Allocations {
+
+        /**
+         * The bean, or null if the JVM does not support it.
+         */
+        static final com.sun.management.ThreadMXBean THREADS = threads();
+
+        private static com.sun.management.ThreadMXBean threads() {
+            try {
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                if (threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported()) {
+                    return (com.sun.management.ThreadMXBean)threads;
+                }
+            } catch (LinkageError e) {
+                // com.sun.management is not available
+            } catch (SecurityException e) {
+                // the management interface is not accessible
+            }
+            return null;
+        }
+    }
+}
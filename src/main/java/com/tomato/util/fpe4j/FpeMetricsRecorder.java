@@ -0,0 +1,431 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FpeMetrics that counts events and keeps log-bucketed histograms of their latencies, per algorithm, radix and length.
+ * <p>
+ * Every power of two is divided into four buckets, so a percentile read from a histogram is within 25% of the exact
+ * value. Recording an event is a few atomic additions and never takes a lock or allocates, and the statistics for an
+ * algorithm, radix and length are found in an open-addressed table of {@value #CAPACITY} entries; events for
+ * combinations beyond that are counted by {@link Snapshot#getDropped()} only. {@link #snapshot()} copies the current
+ * values for export, while recording continues.
+ */
+public final class FpeMetricsRecorder extends FpeMetrics {
+
+    /**
+     * The number of algorithm, radix and length combinations recorded.
+     */
+    public static final int CAPACITY = 1024;
+
+    /**
+     * The number of buckets of a histogram: four per power of two up to 2<sup>63</sup>.
+     */
+    private static final int BUCKETS = 248;
+
+    /**
+     * True to measure the bytes allocated by each operation.
+     */
+    private final boolean allocationTracking;
+
+    /**
+     * The statistics of each algorithm, radix and length.
+     */
+    private final AtomicReferenceArray<Stats> table = new AtomicReferenceArray<Stats>(CAPACITY);
+
+    /**
+     * The histograms of the other events.
+     */
+    private final Histogram keySetups = new Histogram();
+    private final Histogram conversions = new Histogram();
+    private final Histogram cycleWalks = new Histogram();
+
+    /**
+     * The number of operations and slow paths that did not fit in the table.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Construct a recorder that does not measure allocations.
+     */
+    public FpeMetricsRecorder() {
+        this(false);
+    }
+
+    /**
+     * Construct a recorder.
+     *
+     * @param allocationTracking
+     *            True to measure the bytes allocated by each operation, at the cost of two calls into the JVM per
+     *            operation.
+     */
+    public FpeMetricsRecorder(boolean allocationTracking) {
+        this.allocationTracking = allocationTracking;
+    }
+
+    @Override
+    public boolean isAllocationTracking() {
+        return allocationTracking;
+    }
+
+    @Override
+    public void operation(FpeEngine.Method method, boolean encrypt, int radix, int length, long nanos,
+        long allocatedBytes) {
+        Stats stats = stats(method, radix, length);
+        if (stats == null) {
+            dropped.increment();
+            return;
+        }
+        (encrypt ? stats.encrypt : stats.decrypt).record(nanos);
+        if (allocatedBytes > 0) {
+            stats.allocatedBytes.add(allocatedBytes);
+        }
+    }
+
+    @Override
+    public void keySetup(long nanos) {
+        keySetups.record(nanos);
+    }
+
+    @Override
+    public void slowPath(FpeEngine.Method method, int radix, int length) {
+        Stats stats = stats(method, radix, length);
+        if (stats == null) {
+            dropped.increment();
+            return;
+        }
+        stats.slowPaths.increment();
+    }
+
+    @Override
+    public void cycleWalk(int steps) {
+        cycleWalks.record(steps);
+    }
+
+    @Override
+    public void conversion(long nanos) {
+        conversions.record(nanos);
+    }
+
+    /**
+     * Copies the current values.
+     *
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        List<Entry> entries = new ArrayList<Entry>();
+        for (int i = 0; i < CAPACITY; i++) {
+            Stats stats = table.get(i);
+            if (stats != null) {
+                entries.add(new Entry(stats));
+            }
+        }
+        return new Snapshot(entries, keySetups.snapshot(), conversions.snapshot(), cycleWalks.snapshot(),
+            dropped.sum());
+    }
+
+    /**
+     * Returns the statistics for an algorithm, radix and length, adding them to the table if necessary, or null if
+     * the table is full.
+     */
+    private Stats stats(FpeEngine.Method method, int radix, int length) {
+        long key = (long)method.ordinal() << 56 | (long)radix << 32 | length & 0xFFFFFFFFL;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int i = (int)(h >>> 54) & CAPACITY - 1;
+        for (int probe = 0; probe < CAPACITY; probe++, i = i + 1 & CAPACITY - 1) {
+            Stats stats = table.get(i);
+            if (stats == null) {
+                Stats created = new Stats(key, method, radix, length);
+                if (table.compareAndSet(i, null, created)) {
+                    return created;
+                }
+                stats = table.get(i);
+            }
+            if (stats.key == key) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bucket of a value.
+     */
+    static int bucket(long value) {
+        if (value < 4) {
+            return (int)Math.max(value, 0);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        return (exp - 1) * 4 + (int)(value >>> exp - 2 & 3);
+    }
+
+    /**
+     * Returns the largest value in a bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exp = bucket / 4 + 1;
+        return ((long)(5 + bucket % 4) << exp - 2) - 1;
+    }
+
+    /**
+     * The statistics of an algorithm, radix and length.
+     */
+    private static final class Stats {
+        final long key;
+        final FpeEngine.Method method;
+        final int radix;
+        final int length;
+        final Histogram encrypt = new Histogram();
+        final Histogram decrypt = new Histogram();
+        final LongAdder allocatedBytes = new LongAdder();
+        final LongAdder slowPaths = new LongAdder();
+
+        Stats(long key, FpeEngine.Method method, int radix, int length) {
+            this.key = key;
+            this.method = method;
+            this.radix = radix;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A lock-free log-bucketed histogram.
+     */
+    private static final class Histogram {
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final LongAdder sum = new LongAdder();
+
+        void record(long value) {
+            buckets.incrementAndGet(bucket(value));
+            sum.add(value);
+        }
+
+        Distribution snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new Distribution(counts, sum.sum());
+        }
+    }
+
+    /**
+     * The recorded values of an event at the time of a snapshot.
+     */
+    public static final class Distribution {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+
+        Distribution(long[] buckets, long sum) {
+            long count = 0;
+            for (long c : buckets) {
+                count += c;
+            }
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * @return The number of values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The sum of the values.
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * @return The mean of the values, or 0 if there are none.
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double)sum / count;
+        }
+
+        /**
+         * Returns an upper bound of a percentile, within 25% of the exact value.
+         *
+         * @param percentile
+         *            The percentile in [0..100], e.g. 99.9.
+         * @return The largest value of the bucket that holds the percentile, or 0 if there are no values.
+         */
+        public long getPercentile(double percentile) {
+            // validate percentile
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be in the range [0..100]: " + percentile);
+            }
+
+            long rank = (long)Math.ceil(percentile / 100 * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return upperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return An upper bound of the largest value, within 25% of the exact value, or 0 if there are no values.
+         */
+        public long getMax() {
+            return getPercentile(100);
+        }
+    }
+
+    /**
+     * The statistics of an algorithm, radix and length at the time of a snapshot.
+     */
+    public static final class Entry {
+        private final FpeEngine.Method method;
+        private final int radix;
+        private final int length;
+        private final Distribution encrypt;
+        private final Distribution decrypt;
+        private final long allocatedBytes;
+        private final long slowPaths;
+
+        Entry(Stats stats) {
+            this.method = stats.method;
+            this.radix = stats.radix;
+            this.length = stats.length;
+            this.encrypt = stats.encrypt.snapshot();
+            this.decrypt = stats.decrypt.snapshot();
+            this.allocatedBytes = stats.allocatedBytes.sum();
+            this.slowPaths = stats.slowPaths.sum();
+        }
+
+        /**
+         * @return The algorithm.
+         */
+        public FpeEngine.Method getMethod() {
+            return method;
+        }
+
+        /**
+         * @return The radix, or 0 for IFX.
+         */
+        public int getRadix() {
+            return radix;
+        }
+
+        /**
+         * @return The number of numerals.
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return The latencies of encryptions in nanoseconds.
+         */
+        public Distribution getEncrypt() {
+            return encrypt;
+        }
+
+        /**
+         * @return The latencies of decryptions in nanoseconds.
+         */
+        public Distribution getDecrypt() {
+            return decrypt;
+        }
+
+        /**
+         * @return The total bytes allocated by the operations, or 0 if allocations are not tracked.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @return The number of values processed with BigInteger arithmetic.
+         */
+        public long getSlowPaths() {
+            return slowPaths;
+        }
+    }
+
+    /**
+     * All statistics at the time of a snapshot.
+     */
+    public static final class Snapshot {
+        private final List<Entry> entries;
+        private final Distribution keySetups;
+        private final Distribution conversions;
+        private final Distribution cycleWalks;
+        private final long dropped;
+
+        Snapshot(List<Entry> entries, Distribution keySetups, Distribution conversions, Distribution cycleWalks,
+            long dropped) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.keySetups = keySetups;
+            this.conversions = conversions;
+            this.cycleWalks = cycleWalks;
+            this.dropped = dropped;
+        }
+
+        /**
+         * @return The statistics of each algorithm, radix and length that has been used.
+         */
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return The latencies of AES key schedule expansions in nanoseconds.
+         */
+        public Distribution getKeySetups() {
+            return keySetups;
+        }
+
+        /**
+         * @return The latencies of the FpeCodec conversions between characters and numerals in nanoseconds.
+         */
+        public Distribution getConversions() {
+            return conversions;
+        }
+
+        /**
+         * @return The number of steps of each RangeCipher cycle walk.
+         */
+        public Distribution getCycleWalks() {
+            return cycleWalks;
+        }
+
+        /**
+         * @return The number of events that were not recorded because the table was full.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+
+/**
+ * An AES key whose key schedule has been expanded once into AES ciphers that are reused for every block.
+ * <p>
+ * The FF1, FF3, FFX and IFX implementations prepare the keys they are given automatically, and reuse the prepared key
+ * for as long as they are called with the same SecretKey instance. A PreparedKey may also be passed anywhere a
+ * SecretKey is accepted, so that the key setup is shared explicitly.
+ * <p>
+ * Like the Cipher objects it holds, a PreparedKey is not thread-safe.
+ */
+public final class PreparedKey implements SecretKey {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The AES key.
+     */
+    private final SecretKey key;
+
+    /**
+     * Instance of the AES cipher in ECB mode with no padding, initialized with the key.
+     */
+    private final Cipher mAesEcbCipher;
+
+    /**
+     * Instance of the AES cipher in CBC mode with no padding, initialized with the key and a zero initialization
+     * vector.
+     */
+    private final Cipher mAesCbcCipher;
+
+    /**
+     * Scratch block for the input of the cipher, so the cipher never works in place (which makes the JCE copy the
+     * input).
+     */
+    private final byte[] block = new byte[16];
+
+    /**
+     * Returns K if it is already a PreparedKey, otherwise prepares K.
+     *
+     * @param K
+     *            The AES key.
+     * @return A PreparedKey for K.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     */
+    public static PreparedKey of(SecretKey K) throws InvalidKeyException {
+        return K instanceof PreparedKey ? (PreparedKey)K : new PreparedKey(K);
+    }
+
+    /**
+     * Constructs a PreparedKey by initializing the AES ciphers with K.
+     *
+     * @param K
+     *            The 128-, 192- or 256-bit AES key.
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     */
+    public PreparedKey(SecretKey K) throws InvalidKeyException {
+        // validate K
+        if (K == null) {
+            throw new NullPointerException("K must not be null");
+        }
+        if (!K.getAlgorithm().equals("AES")) {
+            throw new InvalidKeyException("K must be an AES key");
+        }
+
+        key = K instanceof PreparedKey ? ((PreparedKey)K).key : K;
+
+        long start = System.nanoTime();
+        try {
+            mAesEcbCipher = Cipher.getInstance("AES/ECB/NoPadding");
+            mAesEcbCipher.init(Cipher.ENCRYPT_MODE, key);
+            mAesCbcCipher = Cipher.getInstance("AES/CBC/NoPadding");
+            mAesCbcCipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(new byte[16]));
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
+            // this could happen if the JRE doesn't have the ciphers
+            throw new RuntimeException(e);
+        }
+        FpeMetrics metrics = FpeMetrics.getInstance();
+        if (metrics != FpeMetrics.NOOP) {
+            metrics.keySetup(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Encrypts X in ECB mode, i.e. applies CIPH to each block of X.
+     *
+     * @param X
+     *            The block string input.
+     * @return The output of the cipher function applied to each block of X.
+     */
+    public byte[] ciph(byte[] X) {
+        try {
+            return mAesEcbCipher.doFinal(X);
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            // these would be programming errors so convert to an unchecked
+            // exception
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Encrypts X[off..off+len-1] in ECB mode into Y[yoff..yoff+len-1]. X and Y may be the same array.
+     *
+     * @param X
+     *            The block string input.
+     * @param off
+     *            The offset of the input.
+     * @param len
+     *            The length of the input, a multiple of 16.
+     * @param Y
+     *            The output array.
+     * @param yoff
+     *            The offset of the output.
+     */
+    public void ciph(byte[] X, int off, int len, byte[] Y, int yoff) {
+        try {
+            mAesEcbCipher.doFinal(X, off, len, Y, yoff);
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            // these would be programming errors so convert to an unchecked
+            // exception
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Encrypts X in CBC mode with the initialization vector IV and returns the complete ciphertext.
+     * <p>
+     * Only the ECB cipher is used, so the key schedule is not expanded again for a new initialization vector.
+     *
+     * @param IV
+     *            The 16-byte initialization vector.
+     * @param X
+     *            The block string input.
+     * @return The CBC ciphertext of X, of the same length as X.
+     */
+    public byte[] cbc(byte[] IV, byte[] X) {
+        byte[] Y = new byte[X.length];
+        cbc(IV, X, 0, X.length, Y, 0);
+        return Y;
+    }
+
+    /**
+     * Encrypts X[off..off+len-1] in CBC mode with the initialization vector IV into Y[yoff..yoff+len-1].
+     *
+     * @param IV
+     *            The 16-byte initialization vector.
+     * @param X
+     *            The block string input.
+     * @param off
+     *            The offset of the input.
+     * @param len
+     *            The length of the input, a multiple of 16.
+     * @param Y
+     *            The output array; may not overlap the input.
+     * @param yoff
+     *            The offset of the output.
+     */
+    public void cbc(byte[] IV, byte[] X, int off, int len, byte[] Y, int yoff) {
+        for (int j = 0; j < len; j += 16) {
+            if (j == 0) {
+                Common.xor(X, off, IV, 0, block, 0, 16);
+            } else {
+                Common.xor(X, off + j, Y, yoff + j - 16, block, 0, 16);
+            }
+            ciph(block, 0, 16, Y, yoff + j);
+        }
+    }
+
+    /**
+     * Applies the PRF function of NIST SP 800-38G, i.e. a CBC-MAC with a zero initialization vector, to X.
+     *
+     * @param X
+     *            The block string input.
+     * @return The last block of the CBC encryption of X.
+     */
+    public byte[] prf(byte[] X) {
+        byte[] Y;
+        try {
+            Y = mAesCbcCipher.doFinal(X);
+        } catch (IllegalBlockSizeException | BadPaddingException e) {
+            // these would be programming errors so convert to an unchecked
+            // exception
+            throw new RuntimeException(e);
+        }
+        return Y.length == 16 ? Y : Arrays.copyOfRange(Y, Y.length - 16, Y.length);
+    }
+
+    /**
+     * Continues a CBC-MAC from the chaining value IV over X[off..off+len-1] and writes the last block into Y.
+     * <p>
+     * With a zero IV this is the PRF function of NIST SP 800-38G; with the chaining value of a fixed prefix it computes
+     * PRF(prefix || X) without processing the prefix again.
+     *
+     * @param IV
+     *            The 16-byte chaining value.
+     * @param X
+     *            The block string input.
+     * @param off
+     *            The offset of the input.
+     * @param len
+     *            The length of the input, a multiple of 16.
+     * @param Y
+     *            The 16-byte output block; may be the same array as IV, but not as X.
+     */
+    public void prf(byte[] IV, byte[] X, int off, int len, byte[] Y) {
+        System.arraycopy(IV, 0, Y, 0, 16);
+        for (int j = off; j < off + len; j += 16) {
+            Common.xor(Y, 0, X, j, block, 0, 16);
+            ciph(block, 0, 16, Y, 0);
+        }
+    }
+
+    /**
+     * Returns the underlying AES key.
+     *
+     * @return The AES key from which this PreparedKey was constructed.
+     */
+    public SecretKey getKey() {
+        return key;
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return key.getAlgorithm();
+    }
+
+    @Override
+    public String getFormat() {
+        return key.getFormat();
+    }
+
+    @Override
+    public byte[] getEncoded() {
+        return key.getEncoded();
+    }
+
+    /**
+     * Serializes the underlying key instead of the ciphers.
+     *
+     * @return The AES key.
+     */
+    private Object writeReplace() {
+        return key;
+    }
+}
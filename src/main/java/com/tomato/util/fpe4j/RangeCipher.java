@@ -0,0 +1,339 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import static com.tomato.util.fpe4j.Common.num;
+import static com.tomato.util.fpe4j.Common.numLong;
+import static com.tomato.util.fpe4j.Common.powLong;
+import static com.tomato.util.fpe4j.Common.str;
+import static com.tomato.util.fpe4j.Common.strLong;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Format-preserving encryption of the integers in [0..N-1] for an arbitrary N.
+ * <p>
+ * The integer is written as a numeral string of length n in a radix chosen so that M = radix<sup>n</sup> is the
+ * smallest such domain accepted by the algorithm with M &gt;= N, the string is encrypted with an {@link FpeEngine},
+ * and the result is encrypted again while it is not less than N (cycle walking). For FF1 and FF3 the radix may be
+ * anything up to 65536, so for N &gt;= 100 the domain M exceeds N by a fraction of roughly n/radix, and the
+ * probability of needing k or more extra encryptions falls off as ((M-N)/M)<sup>k</sup>. The number of encryptions is
+ * never more than M-N+1, which {@link #getMaxWalk()} reports. A2 and A10 have a fixed radix, so M may be up to 2 or
+ * 10 times N and walks are correspondingly longer.
+ * <p>
+ * Domains with M up to Long.MAX_VALUE are processed with long arithmetic; larger domains use BigInteger.
+ * <p>
+ * A RangeCipher is immutable, and is thread-safe because the FpeEngine is.
+ */
+public final class RangeCipher {
+
+    /**
+     * The size of the domain.
+     */
+    private final BigInteger N;
+
+    /**
+     * N as a long, or -1 if it does not fit.
+     */
+    private final long longN;
+
+    /**
+     * The engine used to encrypt the numeral strings.
+     */
+    private final FpeEngine engine;
+
+    /**
+     * The radix and length of the numeral strings.
+     */
+    private final int radix, n;
+
+    /**
+     * radix<sup>n</sup>.
+     */
+    private final BigInteger M;
+
+    /**
+     * True if radix<sup>n</sup> fits in a long.
+     */
+    private final boolean useLong;
+
+    /**
+     * Construct a RangeCipher for the integers [0..N-1].
+     *
+     * @param method
+     *            The algorithm; FF1, FF3, A2 or A10.
+     * @param N
+     *            The size of the domain, at least 1.
+     * @param maxTlen
+     *            The maximum length of tweaks; ignored for FF3, which always uses 8 byte tweaks.
+     * @throws IllegalArgumentException
+     *             If N is less than 1, method is IFX, or N is too large for the algorithm.
+     */
+    public RangeCipher(FpeEngine.Method method, BigInteger N, int maxTlen) {
+        // validate method
+        if (method == null) {
+            throw new NullPointerException("method must not be null");
+        }
+        if (method == FpeEngine.Method.IFX) {
+            throw new IllegalArgumentException("IFX is not supported by RangeCipher");
+        }
+
+        // validate N
+        if (N == null) {
+            throw new NullPointerException("N must not be null");
+        }
+        if (N.signum() <= 0) {
+            throw new IllegalArgumentException("N must be at least 1: " + N);
+        }
+
+        this.N = N;
+        this.longN = N.bitLength() < 64 ? N.longValue() : -1;
+        this.engine = engine(method, N, maxTlen);
+        this.radix = engine.getRadix();
+        this.n = engine.getMinlen();
+        this.M = BigInteger.valueOf(radix).pow(n);
+        this.useLong = powLong(radix, n) > 0;
+    }
+
+    /**
+     * Construct a RangeCipher for the integers [0..N-1].
+     *
+     * @param method
+     *            The algorithm; FF1, FF3, A2 or A10.
+     * @param N
+     *            The size of the domain, at least 1.
+     * @param maxTlen
+     *            The maximum length of tweaks; ignored for FF3, which always uses 8 byte tweaks.
+     * @throws IllegalArgumentException
+     *             If N is less than 1, method is IFX, or N is too large for the algorithm.
+     */
+    public RangeCipher(FpeEngine.Method method, long N, int maxTlen) {
+        this(method, BigInteger.valueOf(N), maxTlen);
+    }
+
+    /**
+     * Encrypt an integer in [0..N-1].
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param x
+     *            The plaintext integer.
+     * @return The ciphertext integer in [0..N-1].
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If x is not in [0..N-1], or the engine rejects the tweak.
+     */
+    public long encrypt(SecretKey K, byte[] T, long x) throws InvalidKeyException {
+        return walk(K, T, x, true);
+    }
+
+    /**
+     * Decrypt an integer in [0..N-1].
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param y
+     *            The ciphertext integer.
+     * @return The plaintext integer in [0..N-1].
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If y is not in [0..N-1], or the engine rejects the tweak.
+     */
+    public long decrypt(SecretKey K, byte[] T, long y) throws InvalidKeyException {
+        return walk(K, T, y, false);
+    }
+
+    /**
+     * Encrypt an integer in [0..N-1].
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param x
+     *            The plaintext integer.
+     * @return The ciphertext integer in [0..N-1].
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If x is not in [0..N-1], or the engine rejects the tweak.
+     */
+    public BigInteger encrypt(SecretKey K, byte[] T, BigInteger x) throws InvalidKeyException {
+        return walk(K, T, x, true);
+    }
+
+    /**
+     * Decrypt an integer in [0..N-1].
+     *
+     * @param K
+     *            The AES key.
+     * @param T
+     *            The tweak.
+     * @param y
+     *            The ciphertext integer.
+     * @return The plaintext integer in [0..N-1].
+     * @throws InvalidKeyException
+     *             If K is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If y is not in [0..N-1], or the engine rejects the tweak.
+     */
+    public BigInteger decrypt(SecretKey K, byte[] T, BigInteger y) throws InvalidKeyException {
+        return walk(K, T, y, false);
+    }
+
+    /**
+     * @return The size N of the domain.
+     */
+    public BigInteger getSize() {
+        return N;
+    }
+
+    /**
+     * @return The engine that encrypts the numeral strings of length {@link FpeEngine#getMinlen()}.
+     */
+    public FpeEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return The largest number of encryptions needed for one value, M-N+1.
+     */
+    public BigInteger getMaxWalk() {
+        return M.subtract(N).add(BigInteger.ONE);
+    }
+
+    /**
+     * Encrypts or decrypts x, and then the result while it is outside [0..N-1].
+     */
+    private long walk(SecretKey K, byte[] T, long x, boolean encrypt) throws InvalidKeyException {
+        // validate x
+        if (longN < 0) {
+            return walk(K, T, BigInteger.valueOf(x), encrypt).longValue();
+        }
+        if (x < 0 || x >= longN) {
+            throw new IllegalArgumentException("x must be in the range [0.." + (longN - 1) + "]: " + x);
+        }
+        if (longN == 1) {
+            return x;
+        }
+        if (!useLong) {
+            return walk(K, T, BigInteger.valueOf(x), encrypt).longValue();
+        }
+
+        int[] X = new int[n];
+        int steps = 0;
+        do {
+            strLong(x, radix, n, X, 0);
+            X = encrypt ? engine.encrypt(K, T, X) : engine.decrypt(K, T, X);
+            x = numLong(X, 0, n, radix);
+            steps++;
+        } while (x >= longN);
+        FpeMetrics.getInstance().cycleWalk(steps);
+        return x;
+    }
+
+    /**
+     * Encrypts or decrypts x, and then the result while it is outside [0..N-1].
+     */
+    private BigInteger walk(SecretKey K, byte[] T, BigInteger x, boolean encrypt) throws InvalidKeyException {
+        // validate x
+        if (x == null) {
+            throw new NullPointerException("x must not be null");
+        }
+        if (x.signum() < 0 || x.compareTo(N) >= 0) {
+            throw new IllegalArgumentException("x must be in the range [0.." + N.subtract(BigInteger.ONE) + "]: " + x);
+        }
+        if (useLong) {
+            return BigInteger.valueOf(walk(K, T, x.longValue(), encrypt));
+        }
+
+        int steps = 0;
+        do {
+            int[] X = str(x, radix, n);
+            X = encrypt ? engine.encrypt(K, T, X) : engine.decrypt(K, T, X);
+            x = num(X, radix);
+            steps++;
+        } while (x.compareTo(N) >= 0);
+        FpeMetrics.getInstance().cycleWalk(steps);
+        return x;
+    }
+
+    /**
+     * Chooses the smallest domain radix<sup>n</sup> &gt;= N that the algorithm accepts, and returns an engine for it.
+     */
+    private static FpeEngine engine(FpeEngine.Method method, BigInteger N, int maxTlen) {
+        // FF1 and FF3 require radix^n >= 100, so smaller domains walk through 100 values
+        BigInteger target = N.max(BigInteger.valueOf(100));
+
+        // log2(target), accurate to well under one bit
+        int shift = Math.max(0, target.bitLength() - 63);
+        double log2 = Math.log(target.shiftRight(shift).doubleValue()) / Math.log(2) + shift;
+
+        FpeEngine best = null;
+        BigInteger bestM = null;
+        for (int n = Constants.MINLEN; n <= target.bitLength() + 16 && n <= Constants.MAXLEN; n++) {
+            int radix;
+            switch (method) {
+                case A2:
+                    radix = 2;
+                    break;
+                case A10:
+                    radix = 10;
+                    break;
+                default:
+                    // the smallest radix with radix^n >= target
+                    double estimate = Math.ceil(Math.pow(2, log2 / n));
+                    if (estimate > Constants.MAXRADIX + 1) {
+                        continue;
+                    }
+                    radix = Math.max(Constants.MINRADIX, (int)estimate);
+                    while (radix > Constants.MINRADIX
+                        && BigInteger.valueOf(radix - 1).pow(n).compareTo(target) >= 0) {
+                        radix--;
+                    }
+                    while (BigInteger.valueOf(radix).pow(n).compareTo(target) < 0) {
+                        radix++;
+                    }
+                    if (radix > Constants.MAXRADIX) {
+                        continue;
+                    }
+            }
+
+            BigInteger M = BigInteger.valueOf(radix).pow(n);
+            if (M.compareTo(N) < 0 || bestM != null && M.compareTo(bestM) >= 0) {
+                continue;
+            }
+            try {
+                best = new FpeEngine(method, radix, n, n, maxTlen);
+                bestM = M;
+            } catch (IllegalArgumentException e) {
+                // radix^n is below the minimum domain size, or n is not a permitted length; try a longer string
+            }
+        }
+        if (best == null) {
+            throw new IllegalArgumentException("N is too large for " + method + ": " + N);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,867 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A finite set of strings described by a regular expression, e.g. "[A-Z]{2}\d{6}", in which the strings of each
+ * length are numbered (ranked) in lexicographic order of the alphabet.
+ * <p>
+ * The expression is compiled into a deterministic finite automaton, and for every state q, remaining length k and
+ * symbol s the table holds the number of accepted strings of length k that leave q by a symbol smaller than s. Ranking
+ * a string of length L is then one table lookup and one addition per character, and unranking is one binary search
+ * per character. The tables hold longs when every count fits in a long, and BigIntegers otherwise.
+ * <p>
+ * The supported syntax is a subset of java.util.regex that can only describe finite sets: literal characters and
+ * escaped metacharacters, character classes with ranges such as [A-Z0-9_], the escapes \d, \w and \s, groups (...) and
+ * (?:...), alternation |, and the quantifiers ?, {n} and {m,n}. A leading ^ and a trailing $ are ignored. The
+ * unbounded quantifiers * and +, the wildcard . and negated classes are rejected.
+ * <p>
+ * Repetition counts are limited to {@value #MAX_REPEAT}, and patterns whose automaton or tables would exceed
+ * {@value #MAX_STATES} states or {@value #MAX_TABLE_SIZE} entries are rejected.
+ * <p>
+ * Formats are immutable and thread-safe. {@link #compile(String)} keeps the {@value #MAX_FORMATS} most recently used
+ * formats, so the tables for a pattern in use are built only once.
+ */
+public final class RegularFormat {
+
+    /**
+     * The largest count accepted in a quantifier {n} or {m,n}.
+     */
+    public static final int MAX_REPEAT = 1000;
+
+    /**
+     * The largest number of states of the nondeterministic and of the deterministic automaton.
+     */
+    public static final int MAX_STATES = 1 << 12;
+
+    /**
+     * The largest number of entries in the count and offset tables.
+     */
+    public static final int MAX_TABLE_SIZE = 1 << 22;
+
+    /**
+     * The number of compiled formats kept by {@link #compile(String)}.
+     */
+    public static final int MAX_FORMATS = 256;
+
+    /**
+     * The most recently used compiled formats by pattern, guarded by itself.
+     */
+    private static final Map<String, RegularFormat> FORMATS = new LinkedHashMap<String, RegularFormat>(16, 0.75f,
+        true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RegularFormat> eldest) {
+            return size() > MAX_FORMATS;
+        }
+    };
+
+    /**
+     * The regular expression.
+     */
+    private final String pattern;
+
+    /**
+     * The character of each symbol, in increasing order.
+     */
+    private final char[] alphabet;
+
+    /**
+     * The symbol of each character up to the largest character of the alphabet, or -1.
+     */
+    private final int[] symbols;
+
+    /**
+     * The number of states of the automaton; state 0 is the initial state.
+     */
+    private final int states;
+
+    /**
+     * The transitions, delta[q * alphabet.length + s], or -1 if q has no transition for s.
+     */
+    private final int[] delta;
+
+    /**
+     * The length of the longest string in the format.
+     */
+    private final int maxLength;
+
+    /**
+     * counts[k * states + q] is the number of strings of length k accepted from state q; null if the counts do not fit
+     * in a long.
+     */
+    private final long[] counts;
+
+    /**
+     * offsets[((k - 1) * states + q) * (alphabet.length + 1) + s] is the number of strings of length k accepted from q
+     * that start with a symbol less than s; null if the counts do not fit in a long.
+     */
+    private final long[] offsets;
+
+    /**
+     * counts and offsets as BigIntegers, or null if they fit in longs.
+     */
+    private final BigInteger[] bigCounts, bigOffsets;
+
+    /**
+     * Returns the format for a pattern, compiling it on first use.
+     *
+     * @param pattern
+     *            The regular expression.
+     * @return The compiled format.
+     * @throws IllegalArgumentException
+     *             If the pattern is not supported, is too large, or matches no strings.
+     */
+    public static RegularFormat compile(String pattern) {
+        // validate pattern
+        if (pattern == null) {
+            throw new NullPointerException("pattern must not be null");
+        }
+
+        synchronized (FORMATS) {
+            RegularFormat format = FORMATS.get(pattern);
+            if (format != null) {
+                return format;
+            }
+        }
+
+        // compile outside the lock; a format compiled concurrently for the same pattern is kept
+        RegularFormat format = new RegularFormat(pattern);
+        synchronized (FORMATS) {
+            RegularFormat previous = FORMATS.get(pattern);
+            if (previous != null) {
+                return previous;
+            }
+            FORMATS.put(pattern, format);
+            return format;
+        }
+    }
+
+    /**
+     * Compiles a pattern.
+     */
+    private RegularFormat(String pattern) {
+        Parser parser = new Parser(pattern);
+        Node root = parser.parse();
+
+        // the alphabet, and the symbol of each character
+        BitSet chars = parser.chars;
+        alphabet = new char[chars.cardinality()];
+        symbols = new int[chars.isEmpty() ? 0 : chars.length()];
+        Arrays.fill(symbols, -1);
+        for (int c = chars.nextSetBit(0), s = 0; c >= 0; c = chars.nextSetBit(c + 1), s++) {
+            alphabet[s] = (char)c;
+            symbols[c] = s;
+        }
+        int sigma = alphabet.length;
+
+        // the nondeterministic automaton
+        Nfa nfa = new Nfa();
+        int initial = nfa.state();
+        int accept = root.compile(nfa, initial);
+
+        // subset construction of the deterministic automaton
+        List<BitSet> sets = new ArrayList<BitSet>();
+        Map<BitSet, Integer> index = new HashMap<BitSet, Integer>();
+        List<int[]> rows = new ArrayList<int[]>();
+        BitSet start = new BitSet();
+        start.set(initial);
+        nfa.closure(start);
+        sets.add(start);
+        index.put(start, 0);
+        for (int d = 0; d < sets.size(); d++) {
+            BitSet set = sets.get(d);
+            int[] row = new int[sigma];
+            for (int s = 0; s < sigma; s++) {
+                BitSet next = new BitSet();
+                for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                    BitSet label = nfa.labels.get(q);
+                    if (label != null && label.get(alphabet[s])) {
+                        next.set(nfa.targets.get(q));
+                    }
+                }
+                if (next.isEmpty()) {
+                    row[s] = -1;
+                    continue;
+                }
+                nfa.closure(next);
+                Integer t = index.get(next);
+                if (t == null) {
+                    if (sets.size() == MAX_STATES) {
+                        throw new IllegalArgumentException(
+                            "The automaton has more than " + MAX_STATES + " states: " + pattern);
+                    }
+                    t = sets.size();
+                    sets.add(next);
+                    index.put(next, t);
+                }
+                row[s] = t;
+            }
+            rows.add(row);
+        }
+        states = sets.size();
+        delta = new int[states * sigma];
+        for (int q = 0; q < states; q++) {
+            System.arraycopy(rows.get(q), 0, delta, q * sigma, sigma);
+        }
+
+        // the counts; the automaton is acyclic, so no accepted string is longer than the number of states
+        if ((states + 1L) * states > MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException("The tables have more than " + MAX_TABLE_SIZE + " entries: " + pattern);
+        }
+        BigInteger[][] count = new BigInteger[states + 1][states];
+        for (int q = 0; q < states; q++) {
+            count[0][q] = sets.get(q).get(accept) ? BigInteger.ONE : BigInteger.ZERO;
+        }
+        int longest = -1;
+        boolean fits = true;
+        for (int k = 0; k <= states; k++) {
+            if (k > 0) {
+                for (int q = 0; q < states; q++) {
+                    BigInteger c = BigInteger.ZERO;
+                    for (int s = 0; s < sigma; s++) {
+                        int t = delta[q * sigma + s];
+                        if (t >= 0) {
+                            c = c.add(count[k - 1][t]);
+                        }
+                    }
+                    count[k][q] = c;
+                }
+            }
+            if (count[k][0].signum() > 0) {
+                longest = k;
+            }
+        }
+        if (longest < 0) {
+            throw new IllegalArgumentException("The pattern matches no strings: " + pattern);
+        }
+        for (int k = 0; k <= longest; k++) {
+            for (int q = 0; q < states; q++) {
+                fits &= count[k][q].bitLength() < 63;
+            }
+        }
+        maxLength = longest;
+        if ((long)maxLength * states * (sigma + 1) > MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException("The tables have more than " + MAX_TABLE_SIZE + " entries: " + pattern);
+        }
+
+        // the offsets of each symbol
+        BigInteger[] bigCounts = new BigInteger[(maxLength + 1) * states];
+        BigInteger[] bigOffsets = new BigInteger[maxLength * states * (sigma + 1)];
+        for (int k = 0; k <= maxLength; k++) {
+            System.arraycopy(count[k], 0, bigCounts, k * states, states);
+        }
+        for (int k = 1; k <= maxLength; k++) {
+            for (int q = 0; q < states; q++) {
+                int base = ((k - 1) * states + q) * (sigma + 1);
+                BigInteger offset = BigInteger.ZERO;
+                for (int s = 0; s < sigma; s++) {
+                    bigOffsets[base + s] = offset;
+                    int t = delta[q * sigma + s];
+                    if (t >= 0) {
+                        offset = offset.add(count[k - 1][t]);
+                    }
+                }
+                bigOffsets[base + sigma] = offset;
+            }
+        }
+        if (fits) {
+            this.counts = new long[bigCounts.length];
+            this.offsets = new long[bigOffsets.length];
+            for (int i = 0; i < bigCounts.length; i++) {
+                counts[i] = bigCounts[i].longValue();
+            }
+            for (int i = 0; i < bigOffsets.length; i++) {
+                offsets[i] = bigOffsets[i].longValue();
+            }
+            this.bigCounts = null;
+            this.bigOffsets = null;
+        } else {
+            this.counts = null;
+            this.offsets = null;
+            this.bigCounts = bigCounts;
+            this.bigOffsets = bigOffsets;
+        }
+
+        this.pattern = pattern;
+    }
+
+    /**
+     * @return The regular expression.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return The length of the longest string in the format.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the number of strings of a length in the format.
+     *
+     * @param length
+     *            The length of the strings.
+     * @return The number of strings of that length, possibly zero.
+     */
+    public BigInteger size(int length) {
+        if (length < 0 || length > maxLength) {
+            return BigInteger.ZERO;
+        }
+        return counts != null ? BigInteger.valueOf(counts[length * states]) : bigCounts[length * states];
+    }
+
+    /**
+     * Tests whether a string is in the format.
+     *
+     * @param X
+     *            The string.
+     * @return True if X is in the format.
+     */
+    public boolean matches(CharSequence X) {
+        // validate X
+        if (X == null) {
+            throw new NullPointerException("X must not be null");
+        }
+
+        int q = X.length() > maxLength ? -1 : 0;
+        for (int i = 0; i < X.length() && q >= 0; i++) {
+            int s = symbol(X.charAt(i));
+            q = s < 0 ? -1 : delta[q * alphabet.length + s];
+        }
+        return q >= 0 && (counts != null ? counts[q] != 0 : bigCounts[q].signum() != 0);
+    }
+
+    /**
+     * Returns the rank of a string among the strings of the same length in the format.
+     *
+     * @param X
+     *            The string.
+     * @return The rank of X in [0..size(X.length())-1].
+     * @throws IllegalArgumentException
+     *             If X is not in the format.
+     */
+    public BigInteger rank(CharSequence X) {
+        if (counts != null) {
+            return BigInteger.valueOf(rankLong(X));
+        }
+
+        BigInteger r = BigInteger.ZERO;
+        int q = 0;
+        int L = validate(X);
+        for (int i = 0; i < L; i++) {
+            int s = symbol(X.charAt(i));
+            r = r.add(bigOffsets[((L - i - 1) * states + q) * (alphabet.length + 1) + s]);
+            q = delta[q * alphabet.length + s];
+        }
+        return r;
+    }
+
+    /**
+     * Returns the string of a rank among the strings of a length in the format.
+     *
+     * @param length
+     *            The length of the string.
+     * @param r
+     *            The rank in [0..size(length)-1].
+     * @return The string.
+     * @throws IllegalArgumentException
+     *             If r is not in [0..size(length)-1].
+     */
+    public String unrank(int length, BigInteger r) {
+        // validate r
+        if (r == null) {
+            throw new NullPointerException("r must not be null");
+        }
+        BigInteger size = size(length);
+        if (r.signum() < 0 || r.compareTo(size) >= 0) {
+            throw new IllegalArgumentException(
+                "r must be in the range [0.." + size.subtract(BigInteger.ONE) + "]: " + r);
+        }
+
+        char[] Y = new char[length];
+        if (counts != null) {
+            unrankLong(r.longValue(), Y);
+            return new String(Y);
+        }
+
+        int q = 0;
+        int sigma = alphabet.length;
+        for (int i = 0; i < length; i++) {
+            int base = ((length - i - 1) * states + q) * (sigma + 1);
+
+            // the largest symbol whose offset is not greater than r
+            int lo = 0;
+            int hi = sigma - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (bigOffsets[base + mid].compareTo(r) <= 0) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            r = r.subtract(bigOffsets[base + lo]);
+            q = delta[q * sigma + lo];
+            Y[i] = alphabet[lo];
+        }
+        return new String(Y);
+    }
+
+    /**
+     * @return True if the ranks of all lengths fit in a long, and {@link #rankLong} and {@link #unrankLong} may be
+     *         used.
+     */
+    boolean isLong() {
+        return counts != null;
+    }
+
+    /**
+     * rank(X) for a format whose ranks fit in a long.
+     */
+    long rankLong(CharSequence X) {
+        long r = 0;
+        int q = 0;
+        int L = validate(X);
+        for (int i = 0; i < L; i++) {
+            int s = symbol(X.charAt(i));
+            r += offsets[((L - i - 1) * states + q) * (alphabet.length + 1) + s];
+            q = delta[q * alphabet.length + s];
+        }
+        return r;
+    }
+
+    /**
+     * unrank(Y.length, r) into Y, for a format whose ranks fit in a long and a rank r in [0..size(Y.length)-1].
+     */
+    void unrankLong(long r, char[] Y) {
+        int q = 0;
+        int sigma = alphabet.length;
+        for (int i = 0; i < Y.length; i++) {
+            int base = ((Y.length - i - 1) * states + q) * (sigma + 1);
+
+            // the largest symbol whose offset is not greater than r
+            int lo = 0;
+            int hi = sigma - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (offsets[base + mid] <= r) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            r -= offsets[base + lo];
+            q = delta[q * sigma + lo];
+            Y[i] = alphabet[lo];
+        }
+    }
+
+    /**
+     * Returns the length of X, or throws IllegalArgumentException if X is not in the format.
+     */
+    private int validate(CharSequence X) {
+        if (!matches(X)) {
+            throw new IllegalArgumentException("X does not match " + pattern + ": " + X);
+        }
+        return X.length();
+    }
+
+    /**
+     * Returns the symbol of c, or -1.
+     */
+    private int symbol(char c) {
+        return c < symbols.length ? symbols[c] : -1;
+    }
+
+    /**
+     * Nondeterministic automaton with epsilon transitions, in which each state has at most one labelled transition.
+     */
+    private static final class Nfa {
+        final List<List<Integer>> epsilons = new ArrayList<List<Integer>>();
+        final List<BitSet> labels = new ArrayList<BitSet>();
+        final List<Integer> targets = new ArrayList<Integer>();
+
+        int state() {
+            if (labels.size() == MAX_STATES) {
+                throw new IllegalArgumentException("The automaton has more than " + MAX_STATES + " states");
+            }
+            epsilons.add(new ArrayList<Integer>(2));
+            labels.add(null);
+            targets.add(-1);
+            return labels.size() - 1;
+        }
+
+        void epsilon(int from, int to) {
+            epsilons.get(from).add(to);
+        }
+
+        void label(int from, BitSet chars, int to) {
+            labels.set(from, chars);
+            targets.set(from, to);
+        }
+
+        /**
+         * Adds the states reachable by epsilon transitions to set.
+         */
+        void closure(BitSet set) {
+            List<Integer> stack = new ArrayList<Integer>();
+            for (int q = set.nextSetBit(0); q >= 0; q = set.nextSetBit(q + 1)) {
+                stack.add(q);
+            }
+            while (!stack.isEmpty()) {
+                for (int t : epsilons.get(stack.remove(stack.size() - 1))) {
+                    if (!set.get(t)) {
+                        set.set(t);
+                        stack.add(t);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Node of the parsed expression, which adds its automaton after state from and returns its final state.
+     */
+    private abstract static class Node {
+        abstract int compile(Nfa nfa, int from);
+    }
+
+    /**
+     * One character from a set.
+     */
+    private static final class Chars extends Node {
+        final BitSet chars;
+
+        Chars(BitSet chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        int compile(Nfa nfa, int from) {
+            int a = nfa.state();
+            int b = nfa.state();
+            nfa.epsilon(from, a);
+            nfa.label(a, chars, b);
+            return b;
+        }
+    }
+
+    /**
+     * Concatenation.
+     */
+    private static final class Sequence extends Node {
+        final List<Node> nodes;
+
+        Sequence(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        int compile(Nfa nfa, int from) {
+            for (Node node : nodes) {
+                from = node.compile(nfa, from);
+            }
+            return from;
+        }
+    }
+
+    /**
+     * Alternation.
+     */
+    private static final class Alternation extends Node {
+        final List<Node> nodes;
+
+        Alternation(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        int compile(Nfa nfa, int from) {
+            int to = nfa.state();
+            for (Node node : nodes) {
+                nfa.epsilon(node.compile(nfa, from), to);
+            }
+            return to;
+        }
+    }
+
+    /**
+     * Bounded repetition.
+     */
+    private static final class Repeat extends Node {
+        final Node node;
+        final int min, max;
+
+        Repeat(Node node, int min, int max) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        int compile(Nfa nfa, int from) {
+            for (int i = 0; i < min; i++) {
+                from = node.compile(nfa, from);
+            }
+            int to = nfa.state();
+            nfa.epsilon(from, to);
+            for (int i = min; i < max; i++) {
+                from = node.compile(nfa, from);
+                nfa.epsilon(from, to);
+            }
+            return to;
+        }
+    }
+
+    /**
+     * Recursive descent parser for the supported syntax.
+     */
+    private static final class Parser {
+        final String p;
+        final BitSet chars = new BitSet();
+        int i;
+
+        Parser(String p) {
+            this.p = p;
+        }
+
+        Node parse() {
+            Node node = alternation();
+            if (i < p.length()) {
+                throw error("Unexpected " + p.charAt(i));
+            }
+            return node;
+        }
+
+        Node alternation() {
+            List<Node> nodes = new ArrayList<Node>();
+            nodes.add(sequence());
+            while (i < p.length() && p.charAt(i) == '|') {
+                i++;
+                nodes.add(sequence());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Alternation(nodes);
+        }
+
+        Node sequence() {
+            List<Node> nodes = new ArrayList<Node>();
+            while (i < p.length() && p.charAt(i) != '|' && p.charAt(i) != ')') {
+                nodes.add(quantifier(atom()));
+            }
+            return new Sequence(nodes);
+        }
+
+        Node atom() {
+            char c = p.charAt(i++);
+            switch (c) {
+                case '(':
+                    if (p.startsWith("?:", i)) {
+                        i += 2;
+                    }
+                    Node node = alternation();
+                    if (i >= p.length() || p.charAt(i) != ')') {
+                        throw error("Missing )");
+                    }
+                    i++;
+                    return node;
+                case '[':
+                    return chars(characterClass());
+                case '\\':
+                    return chars(escape());
+                case '^':
+                    if (i == 1) {
+                        return new Sequence(new ArrayList<Node>());
+                    }
+                    throw error("^ is only supported at the start");
+                case '$':
+                    if (i == p.length()) {
+                        return new Sequence(new ArrayList<Node>());
+                    }
+                    throw error("$ is only supported at the end");
+                case '.':
+                    throw error(". is not supported, use a character class");
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                case '}':
+                case ']':
+                    throw error("Unexpected " + c);
+                default:
+                    BitSet set = new BitSet();
+                    set.set(c);
+                    return chars(set);
+            }
+        }
+
+        Node chars(BitSet set) {
+            chars.or(set);
+            return new Chars(set);
+        }
+
+        Node quantifier(Node node) {
+            if (i >= p.length()) {
+                return node;
+            }
+            int min;
+            int max;
+            switch (p.charAt(i)) {
+                case '?':
+                    i++;
+                    min = 0;
+                    max = 1;
+                    break;
+                case '{':
+                    i++;
+                    min = number();
+                    max = min;
+                    if (i < p.length() && p.charAt(i) == ',') {
+                        i++;
+                        if (i < p.length() && p.charAt(i) == '}') {
+                            throw error("Unbounded repetition is not supported, use {m,n}");
+                        }
+                        max = number();
+                    }
+                    if (i >= p.length() || p.charAt(i) != '}') {
+                        throw error("Missing }");
+                    }
+                    i++;
+                    if (min > max) {
+                        throw error("Invalid repetition {" + min + "," + max + "}");
+                    }
+                    break;
+                case '*':
+                case '+':
+                    throw error("Unbounded repetition is not supported, use {m,n}");
+                default:
+                    return node;
+            }
+            if (i < p.length() && (p.charAt(i) == '?' || p.charAt(i) == '{' || p.charAt(i) == '+')) {
+                throw error("Lazy, possessive and nested quantifiers are not supported");
+            }
+            return new Repeat(node, min, max);
+        }
+
+        int number() {
+            int start = i;
+            while (i < p.length() && i - start < 6 && Character.isDigit(p.charAt(i))) {
+                i++;
+            }
+            if (i == start) {
+                throw error("Missing number");
+            }
+            int n = Integer.parseInt(p.substring(start, i));
+            if (n > MAX_REPEAT) {
+                throw error("Repetition count must be at most " + MAX_REPEAT + ": " + n);
+            }
+            return n;
+        }
+
+        BitSet characterClass() {
+            BitSet set = new BitSet();
+            if (i < p.length() && p.charAt(i) == '^') {
+                throw error("Negated character classes are not supported");
+            }
+            while (i < p.length() && p.charAt(i) != ']') {
+                char c = p.charAt(i++);
+                if (c == '\\') {
+                    BitSet escaped = escape();
+                    if (escaped.cardinality() > 1) {
+                        set.or(escaped);
+                        continue;
+                    }
+                    c = (char)escaped.nextSetBit(0);
+                }
+                if (i + 1 < p.length() && p.charAt(i) == '-' && p.charAt(i + 1) != ']') {
+                    i++;
+                    char last = p.charAt(i++);
+                    if (last == '\\') {
+                        last = (char)escape().nextSetBit(0);
+                    }
+                    if (last < c) {
+                        throw error("Invalid range " + c + "-" + last);
+                    }
+                    set.set(c, last + 1);
+                } else {
+                    set.set(c);
+                }
+            }
+            if (i >= p.length()) {
+                throw error("Missing ]");
+            }
+            i++;
+            if (set.isEmpty()) {
+                throw error("Empty character class");
+            }
+            return set;
+        }
+
+        BitSet escape() {
+            if (i >= p.length()) {
+                throw error("Incomplete escape");
+            }
+            char c = p.charAt(i++);
+            BitSet set = new BitSet();
+            switch (c) {
+                case 'd':
+                    set.set('0', '9' + 1);
+                    break;
+                case 'w':
+                    set.set('0', '9' + 1);
+                    set.set('A', 'Z' + 1);
+                    set.set('a', 'z' + 1);
+                    set.set('_');
+                    break;
+                case 's':
+                    set.set(' ');
+                    set.set('\t', '\r' + 1);
+                    break;
+                case 't':
+                    set.set('\t');
+                    break;
+                case 'n':
+                    set.set('\n');
+                    break;
+                case 'r':
+                    set.set('\r');
+                    break;
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw error("Unsupported escape \\" + c);
+                    }
+                    set.set(c);
+            }
+            return set;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + i + " in " + p);
+        }
+    }
+}
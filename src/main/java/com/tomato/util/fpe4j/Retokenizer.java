@@ -0,0 +1,566 @@
+/**
+ * Format-Preserving Encryption
+ *
+ * Copyright (c) 2016 Weydstone LLC dba Sutton Abinger
+ *
+ * See the NOTICE file distributed with this work for additional information regarding copyright ownership. Sutton
+ * Abinger licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package com.tomato.util.fpe4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Streaming re-tokenization for key rotation: every record is decrypted with the old key and encrypted with the new
+ * one.
+ * <p>
+ * Records are lines terminated by "\n" or "\r\n", and each line is one token for the FpeCodecs; empty lines are copied
+ * unchanged, and the terminators are preserved. The input is read in batches of records on the calling thread, each
+ * batch is split across a ForkJoinPool, and the batches are written in input order. Every worker thread uses its own
+ * FF1 or FF3 instance through the thread-safe FpeEngine of the codecs, so the workers share no cipher state. At most
+ * maxBatches batches are in memory at any time.
+ * <p>
+ * After each batch has been written and flushed, the {@link Checkpoint} is given the number of records, and the input
+ * and output offsets (in chars for Reader and Writer, in bytes for channels) reached since the start of the run. An
+ * interrupted run is resumed by positioning the input and output at the last checkpoint, e.g. with
+ * FileChannel.position and FileChannel.truncate, and running again; the offsets of the new run are then relative to
+ * that position.
+ * <p>
+ * A Retokenizer is immutable, and one instance may run several streams at once.
+ */
+public final class Retokenizer {
+
+    /**
+     * Receives the progress of a run.
+     */
+    public interface Checkpoint {
+        /**
+         * Called after a batch of records has been written and flushed.
+         *
+         * @param records
+         *            The number of records written since the start of the run.
+         * @param input
+         *            The offset in the input after the last record written.
+         * @param output
+         *            The offset in the output after the last record written.
+         * @throws IOException
+         *             If the checkpoint cannot be saved; the run is abandoned.
+         */
+        void reached(long records, long input, long output) throws IOException;
+    }
+
+    /**
+     * Line terminators by code.
+     */
+    private static final String[] TERMINATORS = { "", "\n", "\r\n" };
+
+    /**
+     * The number of records below which a batch is not split further.
+     */
+    private static final int SLICE = 64;
+
+    /**
+     * The codec and key of the existing tokens.
+     */
+    private final FpeCodec oldCodec;
+    private final SecretKey oldKey;
+
+    /**
+     * The codec and key of the new tokens.
+     */
+    private final FpeCodec newCodec;
+    private final SecretKey newKey;
+
+    /**
+     * The tweak.
+     */
+    private final byte[] T;
+
+    /**
+     * The pool that processes the batches.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The number of records in a batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The maximum number of batches in memory.
+     */
+    private final int maxBatches;
+
+    /**
+     * Construct a Retokenizer on the common ForkJoinPool, with batches of 4096 records and at most 4 batches per
+     * thread of the pool in memory.
+     *
+     * @param oldCodec
+     *            The codec of the existing tokens.
+     * @param oldKey
+     *            The key of the existing tokens.
+     * @param newCodec
+     *            The codec of the new tokens; its alphabet must contain the characters of the plaintexts.
+     * @param newKey
+     *            The key of the new tokens.
+     * @param T
+     *            The tweak of both the existing and the new tokens; the array is copied.
+     */
+    public Retokenizer(FpeCodec oldCodec, SecretKey oldKey, FpeCodec newCodec, SecretKey newKey, byte[] T) {
+        this(oldCodec, oldKey, newCodec, newKey, T, ForkJoinPool.commonPool(), 4096,
+            4 * ForkJoinPool.commonPool().getParallelism());
+    }
+
+    /**
+     * Construct a Retokenizer.
+     *
+     * @param oldCodec
+     *            The codec of the existing tokens.
+     * @param oldKey
+     *            The key of the existing tokens.
+     * @param newCodec
+     *            The codec of the new tokens; its alphabet must contain the characters of the plaintexts.
+     * @param newKey
+     *            The key of the new tokens.
+     * @param T
+     *            The tweak of both the existing and the new tokens; the array is copied.
+     * @param pool
+     *            The pool that processes the batches.
+     * @param batchSize
+     *            The number of records in a batch.
+     * @param maxBatches
+     *            The maximum number of batches in memory.
+     * @throws IllegalArgumentException
+     *             If batchSize or maxBatches is less than 1.
+     */
+    public Retokenizer(FpeCodec oldCodec, SecretKey oldKey, FpeCodec newCodec, SecretKey newKey, byte[] T,
+        ForkJoinPool pool, int batchSize, int maxBatches) {
+        // validate arguments
+        if (oldCodec == null || newCodec == null) {
+            throw new NullPointerException("codecs must not be null");
+        }
+        if (oldKey == null || newKey == null) {
+            throw new NullPointerException("keys must not be null");
+        }
+        if (T == null) {
+            throw new NullPointerException("T must not be null");
+        }
+        if (pool == null) {
+            throw new NullPointerException("pool must not be null");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+        }
+        if (maxBatches < 1) {
+            throw new IllegalArgumentException("maxBatches must be at least 1: " + maxBatches);
+        }
+
+        this.oldCodec = oldCodec;
+        this.oldKey = oldKey;
+        this.newCodec = newCodec;
+        this.newKey = newKey;
+        this.T = T.clone();
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    /**
+     * Re-tokenizes the records of a Reader into a Writer. Neither is closed.
+     *
+     * @param in
+     *            The existing tokens.
+     * @param out
+     *            The new tokens.
+     * @param checkpoint
+     *            Receives the progress after each batch, or null.
+     * @return The number of records.
+     * @throws IOException
+     *             If in, out or the checkpoint fails.
+     * @throws InvalidKeyException
+     *             If a key is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If a record is rejected by a codec; the message gives the record number from the start of the run.
+     */
+    public long run(final Reader in, final Writer out, Checkpoint checkpoint) throws IOException, InvalidKeyException {
+        // validate in and out
+        if (in == null) {
+            throw new NullPointerException("in must not be null");
+        }
+        if (out == null) {
+            throw new NullPointerException("out must not be null");
+        }
+
+        return run(new CharSource(in), new Sink() {
+            @Override
+            public long write(char[] token, int terminator) throws IOException {
+                out.write(token);
+                out.write(TERMINATORS[terminator]);
+                return token.length + TERMINATORS[terminator].length();
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        }, checkpoint);
+    }
+
+    /**
+     * Re-tokenizes the UTF-8 records of a channel into a channel. Neither is closed.
+     *
+     * @param in
+     *            The existing tokens.
+     * @param out
+     *            The new tokens.
+     * @param checkpoint
+     *            Receives the progress after each batch, or null.
+     * @return The number of records.
+     * @throws IOException
+     *             If in, out or the checkpoint fails.
+     * @throws InvalidKeyException
+     *             If a key is not a valid AES key.
+     * @throws IllegalArgumentException
+     *             If a record is rejected by a codec; the message gives the record number from the start of the run.
+     */
+    public long run(ReadableByteChannel in, final WritableByteChannel out, Checkpoint checkpoint)
+        throws IOException, InvalidKeyException {
+        // validate in and out
+        if (in == null) {
+            throw new NullPointerException("in must not be null");
+        }
+        if (out == null) {
+            throw new NullPointerException("out must not be null");
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        return run(new ByteSource(in), new Sink() {
+            @Override
+            public long write(char[] token, int terminator) throws IOException {
+                String end = TERMINATORS[terminator];
+                int max = 3 * token.length + end.length();
+                if (buffer.remaining() < max) {
+                    flush();
+                }
+                if (buffer.remaining() < max) {
+                    // too long for the buffer
+                    byte[] bytes = (new String(token) + end).getBytes(StandardCharsets.UTF_8);
+                    drain(ByteBuffer.wrap(bytes));
+                    return bytes.length;
+                }
+
+                // ASCII is copied directly, anything else is encoded as UTF-8
+                int start = buffer.position();
+                boolean ascii = true;
+                for (int i = 0; i < token.length && ascii; i++) {
+                    ascii = token[i] < 0x80;
+                }
+                if (ascii) {
+                    for (char c : token) {
+                        buffer.put((byte)c);
+                    }
+                } else {
+                    buffer.put(new String(token).getBytes(StandardCharsets.UTF_8));
+                }
+                for (int i = 0; i < end.length(); i++) {
+                    buffer.put((byte)end.charAt(i));
+                }
+                return buffer.position() - start;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                buffer.flip();
+                drain(buffer);
+                buffer.clear();
+            }
+
+            private void drain(ByteBuffer bytes) throws IOException {
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+            }
+        }, checkpoint);
+    }
+
+    /**
+     * Reads batches, processes them in the pool, and writes them in order.
+     */
+    private long run(Source source, Sink sink, Checkpoint checkpoint) throws IOException, InvalidKeyException {
+        ArrayDeque<Batch> pending = new ArrayDeque<Batch>();
+        long read = 0;
+        long written = 0;
+        long output = 0;
+        boolean more = true;
+        try {
+            while (more || !pending.isEmpty()) {
+                // keep up to maxBatches batches in the pool
+                if (more && pending.size() < maxBatches) {
+                    Batch batch = new Batch(batchSize, read);
+                    more = source.fill(batch);
+                    if (batch.count > 0) {
+                        read += batch.count;
+                        batch.task = pool.submit(new Slice(batch, 0, batch.count));
+                        pending.add(batch);
+                    }
+                    continue;
+                }
+
+                // write the oldest batch
+                Batch batch = pending.remove();
+                batch.task.join();
+                if (batch.error != null) {
+                    if (batch.error instanceof InvalidKeyException) {
+                        throw (InvalidKeyException)batch.error;
+                    }
+                    throw new IllegalArgumentException(
+                        "Record " + batch.errorRecord + ": " + batch.error.getMessage(), batch.error);
+                }
+                for (int i = 0; i < batch.count; i++) {
+                    output += sink.write(batch.tokens[i], batch.terminators[i]);
+                }
+                sink.flush();
+                written += batch.count;
+                if (checkpoint != null) {
+                    checkpoint.reached(written, batch.input, output);
+                }
+            }
+        } finally {
+            for (Batch batch : pending) {
+                batch.task.cancel(false);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Re-tokenizes one record in place.
+     */
+    private void retokenize(char[] token) throws InvalidKeyException {
+        if (token.length > 0) {
+            newCodec.encrypt(newKey, T, oldCodec.decrypt(oldKey, T, token));
+        }
+    }
+
+    /**
+     * A batch of records, which are replaced by the new tokens in place.
+     */
+    private static final class Batch {
+        final char[][] tokens;
+        final byte[] terminators;
+        final long first;
+        int count;
+        long input;
+        ForkJoinTask<?> task;
+        Exception error;
+        long errorRecord;
+
+        Batch(int size, long first) {
+            this.tokens = new char[size][];
+            this.terminators = new byte[size];
+            this.first = first;
+        }
+
+        synchronized void fail(int i, Exception e) {
+            if (error == null || first + i < errorRecord) {
+                error = e;
+                errorRecord = first + i;
+            }
+        }
+    }
+
+    /**
+     * The records [lo..hi-1] of a batch, split in halves until they are at most SLICE records.
+     */
+    private final class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Batch batch;
+        private final int lo, hi;
+
+        Slice(Batch batch, int lo, int hi) {
+            this.batch = batch;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > SLICE) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Slice(batch, lo, mid), new Slice(batch, mid, hi));
+                return;
+            }
+            for (int i = lo; i < hi; i++) {
+                try {
+                    retokenize(batch.tokens[i]);
+                } catch (InvalidKeyException | IllegalArgumentException e) {
+                    batch.fail(i, e);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the input into records.
+     */
+    private interface Source {
+        /**
+         * Reads up to batch.tokens.length records into the batch; returns false at the end of the input.
+         */
+        boolean fill(Batch batch) throws IOException;
+    }
+
+    /**
+     * Writes the output records.
+     */
+    private interface Sink {
+        /**
+         * Writes a record, and returns the length written.
+         */
+        long write(char[] token, int terminator) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    /**
+     * Records of a Reader, with offsets in chars.
+     */
+    private static final class CharSource implements Source {
+        private final Reader in;
+        private final char[] buffer = new char[1 << 16];
+        private int pos, lim;
+        private boolean eof;
+        private long offset;
+        private char[] line = new char[64];
+
+        CharSource(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean fill(Batch batch) throws IOException {
+            while (batch.count < batch.tokens.length) {
+                int len = 0;
+                boolean terminated = false;
+                while (!terminated) {
+                    if (pos == lim) {
+                        lim = eof ? -1 : in.read(buffer, 0, buffer.length);
+                        pos = 0;
+                        if (lim < 0) {
+                            lim = 0;
+                            eof = true;
+                            break;
+                        }
+                    }
+                    int start = pos;
+                    while (pos < lim && buffer[pos] != '\n') {
+                        pos++;
+                    }
+                    if (len + pos - start > line.length) {
+                        line = Arrays.copyOf(line, Math.max(2 * line.length, len + pos - start));
+                    }
+                    System.arraycopy(buffer, start, line, len, pos - start);
+                    len += pos - start;
+                    if (pos < lim) {
+                        pos++;
+                        terminated = true;
+                    }
+                }
+                if (!terminated && len == 0) {
+                    batch.input = offset;
+                    return false;
+                }
+                offset += len + (terminated ? 1 : 0);
+                int terminator = !terminated ? 0 : len > 0 && line[len - 1] == '\r' ? 2 : 1;
+                batch.tokens[batch.count] = Arrays.copyOf(line, terminator == 2 ? len - 1 : len);
+                batch.terminators[batch.count++] = (byte)terminator;
+            }
+            batch.input = offset;
+            return true;
+        }
+    }
+
+    /**
+     * UTF-8 records of a channel, with offsets in bytes.
+     */
+    private static final class ByteSource implements Source {
+        private final ReadableByteChannel in;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private boolean eof;
+        private long offset;
+        private byte[] line = new byte[64];
+
+        ByteSource(ReadableByteChannel in) {
+            this.in = in;
+            buffer.flip();
+        }
+
+        @Override
+        public boolean fill(Batch batch) throws IOException {
+            byte[] bytes = buffer.array();
+            while (batch.count < batch.tokens.length) {
+                int len = 0;
+                boolean terminated = false;
+                while (!terminated) {
+                    if (!buffer.hasRemaining()) {
+                        buffer.clear();
+                        int n = eof ? -1 : in.read(buffer);
+                        buffer.flip();
+                        if (n < 0) {
+                            eof = true;
+                            break;
+                        }
+                    }
+                    int start = buffer.position();
+                    int pos = start;
+                    while (pos < buffer.limit() && bytes[pos] != '\n') {
+                        pos++;
+                    }
+                    if (len + pos - start > line.length) {
+                        line = Arrays.copyOf(line, Math.max(2 * line.length, len + pos - start));
+                    }
+                    System.arraycopy(bytes, start, line, len, pos - start);
+                    len += pos - start;
+                    if (pos < buffer.limit()) {
+                        pos++;
+                        terminated = true;
+                    }
+                    buffer.position(pos);
+                }
+                if (!terminated && len == 0) {
+                    batch.input = offset;
+                    return false;
+                }
+                offset += len + (terminated ? 1 : 0);
+                int terminator = !terminated ? 0 : len > 0 && line[len - 1] == '\r' ? 2 : 1;
+                batch.tokens[batch.count] =
+                    new String(line, 0, terminator == 2 ? len - 1 : len, StandardCharsets.UTF_8).toCharArray();
+                batch.terminators[batch.count++] = (byte)terminator;
+            }
+            batch.input = offset;
+            return true;
+        }
+    }
+}
@@ -273,6 +273,39 @@ public class Functions {
 
     }
 
+    /**
+     * The two's compliment integer represented by X[off..off+len-1], reduced modulo m, i.e. integer(X) mod m, computed
+     * without a BigInteger.
+     * 
+     * @param X
+     *            array of bytes
+     * @param off
+     *            offset of the first (most significant) byte
+     * @param len
+     *            number of bytes, at least one
+     * @param m
+     *            positive modulus
+     * @return integer(X[off..off+len-1]) mod m, in the range 0..m-1
+     */
+    static long integerMod(byte[] X, int off, int len, long m) {
+        // x<-unsigned value of X mod m; p<-256^len mod m
+        long x = 0;
+        long p = 1 % m;
+        for (int i = off; i < off + len; i++) {
+            x = mulAdd(x, X[i] & 0xFF, m);
+            p = mulAdd(p, 0, m);
+        }
+
+        // a negative X has the value unsigned(X) - 256^len
+        if (X[off] < 0) {
+            x -= p;
+            if (x < 0) {
+                x += m;
+            }
+        }
+        return x;
+    }
+
     /**
      * Largest integer in the vector of integers W.
      * 
@@ -604,6 +637,23 @@ public class Functions {
         return y;
     }
 
+    /**
+     * (x × 256 + b) mod m, for 0 &lt;= x &lt; m and 0 &lt;= b &lt; 256, without overflow.
+     */
+    private static long mulAdd(long x, int b, long m) {
+        if (m <= Long.MAX_VALUE >>> 8) {
+            return ((x << 8) | b) % m;
+        }
+        for (int k = 7; k >= 0; k--) {
+            // x < m < 2^63, so 2x + 1 < 2^64 and a negative result means 2x + 1 >= 2^63 > m
+            x = (x << 1) | (b >>> k & 1);
+            if (x < 0 || x >= m) {
+                x -= m;
+            }
+        }
+        return x;
+    }
+
     /**
      * Non-instantiable class.
      */
@@ -15,19 +15,16 @@
 package com.tomato.util.fpe4j.ifx;
 
 import java.math.BigInteger;
-import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
+
+import com.tomato.util.fpe4j.FpeEngine;
+import com.tomato.util.fpe4j.FpeMetrics;
+import com.tomato.util.fpe4j.PreparedKey;
 
 /**
  * Implementation of the experimental IFX algorithm described in ifx-spec.pdf. The IFX algorithm is intended for
@@ -46,14 +43,9 @@ import javax.crypto.spec.IvParameterSpec;
 public class IFX {
 
     /**
-     * Instance of the AES cipher in CBC mode with no padding.
-     */
-    private final Cipher mAesCbcCipher;
-
-    /**
-     * Zero initialization vector for AEC CBC
+     * The most recently used key, with the AES ciphers initialized.
      */
-    private final IvParameterSpec mAesCbcIv;
+    private PreparedKey mPreparedKey;
 
     /**
      * Radix of left (most significant) portion of w
@@ -75,6 +67,29 @@ public class IFX {
      */
     private final int[] mW;
 
+    /**
+     * Place value of each element of W, i.e. product(W[i+1..length(W)-1]), or null if product(W) does not fit in a
+     * long
+     */
+    private final long[] mPlaceValues;
+
+    /**
+     * u and v as longs, when product(W) fits in a long
+     */
+    private final long mLongU, mLongV;
+
+    /**
+     * Workspace for Q and F in the long arithmetic rounds
+     */
+    private byte[] mQ, mF;
+
+    /**
+     * The key, tweak and P of the most recent call in the long arithmetic path
+     */
+    private PreparedKey mPKey;
+    private byte[] mPTweak;
+    private byte[] mP;
+
     /**
      * Construct a new IFX instance and initialize the instance with a vector of radices.
      * <p>
@@ -124,20 +139,27 @@ public class IFX {
             }
         }
 
-        // get AES CBC cipher instance
-        try {
-            mAesCbcIv = new IvParameterSpec(new byte[16]);
-            mAesCbcCipher = Cipher.getInstance("AES/CBC/NoPadding");
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-            // this could happen if the JRE doesn't have the AES-CBC cipher
-            throw new RuntimeException(e);
-        }
-
         // initialize instance variables
         mW = W;
         mw = w;
         mu = u;
         mv = v;
+
+        // precompute the place values for the long arithmetic path
+        if (w.bitLength() < 64) {
+            mPlaceValues = new long[W.length];
+            long p = 1;
+            for (int i = W.length - 1; i >= 0; i--) {
+                mPlaceValues[i] = p;
+                p *= W[i];
+            }
+            mLongU = u.longValue();
+            mLongV = v.longValue();
+        } else {
+            mPlaceValues = null;
+            mLongU = 0;
+            mLongV = 0;
+        }
     }
 
     /**
@@ -187,6 +209,12 @@ public class IFX {
             throw new IllegalArgumentException("Y must be the same length as W: " + Y.length);
         }
 
+        // the rounds in primitive arithmetic if product(W) fits in a long
+        if (mPlaceValues != null) {
+            return decryptLong(prepare(K), T, Y);
+        }
+        FpeMetrics.getInstance().slowPath(FpeEngine.Method.IFX, 0, mW.length);
+
         // y<-num(Y)
         BigInteger y = num(Y);
 
@@ -235,20 +263,13 @@ public class IFX {
         System.arraycopy(V, 0, O, o, V.length);
         o += V.length;
 
-        byte[] P = null;
-        try {
-            // I<-{0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0}
-            mAesCbcCipher.init(Cipher.ENCRYPT_MODE, K, mAesCbcIv);
-
-            // P<-ciph(K,I,O)
-            P = mAesCbcCipher.doFinal(O);
+        // the key schedule is expanded once for all the rounds
+        PreparedKey key = prepare(K);
 
-        } catch (InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException exception) {
-            throw new RuntimeException(exception);
-        }
+        // I<-{0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0}
+        // P<-ciph(K,I,O)
         // P<-P[length(P)-16..length(P)-1]
-        P = Arrays.copyOfRange(P, P.length - 16, P.length);
-        IvParameterSpec p = new IvParameterSpec(P);
+        byte[] P = key.prf(O);
 
         // For i in r-1..0
         for (int i = r - 1; i >= 0; i--) {
@@ -281,13 +302,7 @@ public class IFX {
             System.arraycopy(B, 0, Q, Q.length - B.length, B.length);
 
             // F<-ciph(K,P,Q)
-            byte[] F = null;
-            try {
-                mAesCbcCipher.init(Cipher.ENCRYPT_MODE, K, p);
-                F = mAesCbcCipher.doFinal(Q);
-            } catch (InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException exception) {
-                throw new RuntimeException(exception);
-            }
+            byte[] F = key.cbc(P, Q);
 
             // f<-num(F)
             BigInteger f = Functions.integer(F);
@@ -352,6 +367,12 @@ public class IFX {
             throw new IllegalArgumentException("X must be the same length as W: " + X.length);
         }
 
+        // the rounds in primitive arithmetic if product(W) fits in a long
+        if (mPlaceValues != null) {
+            return encryptLong(prepare(K), T, X);
+        }
+        FpeMetrics.getInstance().slowPath(FpeEngine.Method.IFX, 0, mW.length);
+
         // x<-num(X)
         BigInteger x = num(X);
 
@@ -400,21 +421,13 @@ public class IFX {
         System.arraycopy(V, 0, O, o, V.length);
         o += V.length;
 
-        byte[] P = null;
-        try {
-            // I<-{0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0}
-            mAesCbcCipher.init(Cipher.ENCRYPT_MODE, K, mAesCbcIv);
-
-            // P<-ciph(K,I,O)
-            P = mAesCbcCipher.doFinal(O);
-
-        } catch (InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException exception) {
-            throw new RuntimeException(exception);
-        }
+        // the key schedule is expanded once for all the rounds
+        PreparedKey key = prepare(K);
 
+        // I<-{0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0}
+        // P<-ciph(K,I,O)
         // P<-P[length(P)-16..length(P)-1]
-        P = Arrays.copyOfRange(P, P.length - 16, P.length);
-        IvParameterSpec p = new IvParameterSpec(P);
+        byte[] P = key.prf(O);
 
         // For i in 0..r-1
         for (int i = 0; i < r; i++) {
@@ -441,13 +454,7 @@ public class IFX {
             System.arraycopy(B, 0, Q, Q.length - B.length, B.length);
 
             // F<-ciph(K,P,Q)
-            byte[] F = null;
-            try {
-                mAesCbcCipher.init(Cipher.ENCRYPT_MODE, K, p);
-                F = mAesCbcCipher.doFinal(Q);
-            } catch (InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException exception) {
-                throw new RuntimeException(exception);
-            }
+            byte[] F = key.cbc(P, Q);
 
             // f<-num(F)
             BigInteger f = Functions.integer(F);
@@ -470,6 +477,202 @@ public class IFX {
         return Y;
     }
 
+    /**
+     * IFX.Decrypt(K,T,Y) for a product(W) that fits in a long, with the same result as the BigInteger implementation.
+     * 
+     * @param key
+     *            The prepared AES key.
+     * @param T
+     *            The array of bytes to use as a tweak.
+     * @param Y
+     *            The ciphertext array of values with radices corresponding to W.
+     * @return The plaintext array of values with radices corresponding to W.
+     */
+    private int[] decryptLong(PreparedKey key, byte[] T, int[] Y) {
+        // y<-num(Y); a<-y div v; b<-y mod v
+        long y = numLong(Y);
+        long a = y / mLongV;
+        long b = y % mLongV;
+
+        // r<-rounds(u,v); P<-ciph(K,I,O)[length(P)-16..length(P)-1]
+        int r = Functions.rounds(mu, mv);
+        byte[] P = prf(key, T, r);
+        int ul = Functions.bytes(mu).length;
+        int vl = Functions.bytes(mv).length;
+
+        // For i in r-1..0
+        for (int i = r - 1; i >= 0; i--) {
+            // If i is even, d<-u, e<-length(V) ; else d<-v, e<-length(U)
+            long d = i % 2 == 0 ? mLongU : mLongV;
+            int e = i % 2 == 0 ? vl : ul;
+
+            // c<-b; b<-a
+            long c = b;
+            b = a;
+
+            // a<-(c-f) mod d
+            a = c - round(key, P, i, b, e, d);
+            if (a < 0) {
+                a += d;
+            }
+        }
+
+        // x<-a × v + b; X<-str(x)
+        return strLong(a * mLongV + b);
+    }
+
+    /**
+     * IFX.Encrypt(K,T,X) for a product(W) that fits in a long, with the same result as the BigInteger implementation.
+     * 
+     * @param key
+     *            The prepared AES key.
+     * @param T
+     *            The array of bytes to use as a tweak.
+     * @param X
+     *            The plaintext array of values with radices corresponding to W.
+     * @return The ciphertext array of values with radices corresponding to W.
+     */
+    private int[] encryptLong(PreparedKey key, byte[] T, int[] X) {
+        // x<-num(X); a<-x div v; b<-x mod v
+        long x = numLong(X);
+        long a = x / mLongV;
+        long b = x % mLongV;
+
+        // r<-rounds(u,v); P<-ciph(K,I,O)[length(P)-16..length(P)-1]
+        int r = Functions.rounds(mu, mv);
+        byte[] P = prf(key, T, r);
+        int ul = Functions.bytes(mu).length;
+        int vl = Functions.bytes(mv).length;
+
+        // For i in 0..r-1
+        for (int i = 0; i < r; i++) {
+            // If i is even, d<-u, e<-length(V) ; else d<-v, e<-length(U)
+            long d = i % 2 == 0 ? mLongU : mLongV;
+            int e = i % 2 == 0 ? vl : ul;
+
+            // c<-(a+f) mod d
+            long c = a + round(key, P, i, b, e, d);
+            if (c < 0 || c >= d) {
+                c -= d;
+            }
+
+            // a<-b; b<-c
+            a = b;
+            b = c;
+        }
+
+        // y<-a × v + b; Y<-str(y)
+        return strLong(a * mLongV + b);
+    }
+
+    /**
+     * Computes P = ciph(K,I,O)[length(P)-16..length(P)-1] for the tweak T, reusing the result of the previous call for
+     * the same key and tweak.
+     */
+    private byte[] prf(PreparedKey key, byte[] T, int r) {
+        if (mPKey == key && Arrays.equals(mPTweak, T)) {
+            return mP;
+        }
+
+        // R<-bytes(r); U<-bytes(u); V<-bytes(v); S<-bytes(s)
+        byte[] R = Functions.bytes(r);
+        byte[] U = Functions.bytes(mu);
+        byte[] V = Functions.bytes(mv);
+        byte[] S = Functions.bytes(T.length + U.length + V.length + R.length);
+
+        // O<-R || S || padding(-length(R)-length(S)-length(T)-length(U)-length(V) mod 16) || T || U || V
+        int o = R.length + S.length + T.length + U.length + V.length;
+        byte[] O = new byte[o + Functions.mod(-o, 16)];
+        System.arraycopy(R, 0, O, 0, R.length);
+        System.arraycopy(S, 0, O, R.length, S.length);
+        System.arraycopy(V, 0, O, O.length - V.length, V.length);
+        System.arraycopy(U, 0, O, O.length - V.length - U.length, U.length);
+        System.arraycopy(T, 0, O, O.length - V.length - U.length - T.length, T.length);
+
+        mP = key.prf(O);
+        mPTweak = T.clone();
+        mPKey = key;
+        return mP;
+    }
+
+    /**
+     * Computes f mod d for round i, where f = num(ciph(K,P,Q)) and Q = I || padding || B, using the workspace buffers.
+     */
+    private long round(PreparedKey key, byte[] P, int i, long b, int e, long d) {
+        // I<-bytes(i), of one byte for i < 128 and otherwise two
+        int il = i <= Byte.MAX_VALUE ? 1 : 2;
+
+        // B<-bytes(b), the minimal two's compliment representation of b
+        int bl = (Long.SIZE - Long.numberOfLeadingZeros(b)) / 8 + 1;
+
+        // Q<-I || padding(-length(I)-e mod 16) || padding(e - length(B)) || B
+        int q = il + Functions.mod(-il - e, 16) + e;
+        if (mQ == null || mQ.length < q) {
+            mQ = new byte[q];
+            mF = new byte[q];
+        }
+        Arrays.fill(mQ, 0, q, (byte)0);
+        if (il == 1) {
+            mQ[0] = (byte)i;
+        } else {
+            mQ[0] = (byte)(i >>> 8);
+            mQ[1] = (byte)i;
+        }
+        for (int k = 1; k <= bl; k++) {
+            mQ[q - k] = (byte)(b >>> 8 * (k - 1));
+        }
+
+        // F<-ciph(K,P,Q); f<-num(F)
+        key.cbc(P, mQ, 0, q, mF, 0);
+        return Functions.integerMod(mF, 0, q, d);
+    }
+
+    /**
+     * num(X) in a long, using the place values of W.
+     */
+    private long numLong(int[] X) {
+        long x = 0;
+        for (int i = 0; i < X.length; i++) {
+            if (X[i] < 0 || X[i] >= mW[i]) {
+                throw new IllegalArgumentException("X[" + i + "] must be in the range 0.." + (mW[i] - 1) + ": " + X[i]);
+            }
+            x += X[i] * mPlaceValues[i];
+        }
+        return x;
+    }
+
+    /**
+     * str(y) from a long, using the place values of W.
+     */
+    private int[] strLong(long y) {
+        int[] Y = new int[mW.length];
+        for (int i = 0; i < mW.length; i++) {
+            Y[i] = (int)(y / mPlaceValues[i]);
+            y %= mPlaceValues[i];
+        }
+        return Y;
+    }
+
+    /**
+     * Returns the prepared AES ciphers for K, expanding the key schedule only if K is not the key used by the previous
+     * call.
+     * 
+     * @param K
+     *            The AES key, or a PreparedKey.
+     * @return The PreparedKey for K.
+     * @throws InvalidKeyException
+     *             If the key is not a valid AES key.
+     */
+    private PreparedKey prepare(SecretKey K) throws InvalidKeyException {
+        if (K instanceof PreparedKey) {
+            return (PreparedKey)K;
+        }
+        if (mPreparedKey == null || mPreparedKey.getKey() != K) {
+            mPreparedKey = new PreparedKey(K);
+        }
+        return mPreparedKey;
+    }
+
     /**
      * Accessor for the value of u during testing.
      * 
@@ -92,7 +92,9 @@
  * It is up to the caller to convert between arbitrary data formats, e.g. character-based data, and the arrays of
  * integers that the FF1 and FF3 functions use for plaintext and ciphertext input and output. For example, a caller
  * might convert input using the symbols [0123456789BCDFGHJKLMNPQRSTVWXZ] (i.e. the character set for the Natural Area
- * Code) into the integer symbols [0..29], and reverse the conversion using the output.
+ * Code) into the integer symbols [0..29], and reverse the conversion using the output. FpeCodec performs this
+ * conversion for an alphabet string, directly on CharSequence and char[] values, optionally leaving pass-through
+ * characters such as dashes and spaces in place.
  * 
  * <p>
  * All these methods of format-preserving encryption operate on uniform arrays of symbols where each symbol is in the
@@ -101,6 +103,11 @@
  * decimal digits. If necessary, the caller may transform such input into uniform symbols, then reverse the
  * transformation to restore the original formatting.
  * 
+ * <p>
+ * RangeCipher and FormatCipher perform such transformations by rank-encipher-unrank. RangeCipher encrypts integers in
+ * [0..N-1] for any N, by cycle walking over the smallest radix<sup>n</sup> domain that holds N; FormatCipher ranks the
+ * strings of a RegularFormat such as "\d[A-Z]{3}\d{3}" into such a range, and unranks the ciphertext.
+ * 
  * <h1>Notes on the Implementation</h1>
  *
  * <p>
@@ -161,7 +168,13 @@
  * <p>
  * Integers in NIST SP 800-38G are implicitly non-negative whole numbers of arbitrary size, so we represent them using
  * the BigInteger class.
- * 
+ *
+ * <p>
+ * As an exception, when radix<sup>m</sup> fits in a long for the larger half of the input (e.g. up to 36 decimal
+ * digits for FF1), FF1 and FF3 carry the two halves through the Feistel rounds as long values, which produces the same
+ * results without allocating BigIntegers in every round. The literal implementation is still used when
+ * CONFORMANCE_OUTPUT is enabled.
+ *
  * <p>
  * As in NIST SP 800-38G, a block is a bit string (i.e. byte string) whose length is the block size of the block cipher
  * (i.e. 128 bits or 16 bytes). We represent these as arrays of multiples of 16 bytes, without any special type. Note
@@ -195,6 +208,10 @@
  * The PRF(X) function used in FF1 is an implementation of the AES CBC mode without padding, followed by the extraction
  * of the final block of the cipher. We have provided both the direct implementation of the PRF(X) function as
  * Ciphers.prf(X) and an implementation that uses an AES Cipher object in Ciphers.prf2(X).
+ *
+ * <p>
+ * AES keys are expanded into a PreparedKey once and reused for every block and round, as long as the caller passes the
+ * same SecretKey instance (or a PreparedKey) to successive calls.
  * 
  * <h1>JUnit Tests</h1>
  * 
@@ -0,0 +1,124 @@
+package com.tomato.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public final class BaseXTest extends TestCase {
+
+	private static final String ALPHABET_36 = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+	private static final String ALPHABET_58 = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+
+	/**
+	 * Leading zero bytes as the zero digit, then the number without leading zero digits.
+	 */
+	private static String encode(String alphabet, byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		BigInteger n = new BigInteger(1, bytes);
+		BigInteger base = BigInteger.valueOf(alphabet.length());
+		while (n.signum() > 0) {
+			BigInteger[] qr = n.divideAndRemainder(base);
+			sb.append(alphabet.charAt(qr[1].intValue()));
+			n = qr[0];
+		}
+		for (int i = 0; i < bytes.length && bytes[i] == 0; i++) {
+			sb.append(alphabet.charAt(0));
+		}
+		return sb.reverse().toString();
+	}
+
+	private static byte[] randomBytes(Random random, int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		// leading zero bytes
+		for (int i = 0, n = random.nextInt(4) == 0 ? random.nextInt(length + 1) : 0; i < n; i++) {
+			bytes[i] = 0;
+		}
+		return bytes;
+	}
+
+	@Test
+	public void testEncode() {
+		Random random = new Random(24);
+		for (int i = 0; i < 20000; i++) {
+			byte[] bytes = randomBytes(random, random.nextInt(40));
+			String base58 = encode(ALPHABET_58, bytes);
+			assertEquals(base58, Base58.encode(bytes));
+			assertTrue(Arrays.equals(bytes, Base58.decode(base58)));
+
+			String base36 = encode(ALPHABET_36, bytes);
+			assertEquals(base36, Base36.encode(bytes));
+			assertTrue(Arrays.equals(bytes, Base36.decode(base36)));
+		}
+	}
+
+	@Test
+	public void testEncodeRange() {
+		byte[] bytes = new byte[] { 9, 0, 0, 1, 2, (byte) 0xff, 9 };
+		assertEquals(Base58.encode(Arrays.copyOfRange(bytes, 1, 6)), Base58.encode(bytes, 1, 5));
+		assertEquals("", Base58.encode(bytes, 3, 0));
+		try {
+			Base58.encode(bytes, 3, 5);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDecodeIllegalCharacter() {
+		try {
+			Base58.decode("12a0b");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Illegal character 0 at 3", e.getMessage());
+		}
+		try {
+			Base58.decode("zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz0");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Illegal character 0 at 35", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testLargeInput() throws IOException {
+		Random random = new Random(25);
+		BaseX base62 = new BaseX("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+		for (int length : new int[] { 17, 20, 33, 100, 1000, 4099 }) {
+			byte[] bytes = randomBytes(random, length);
+			String base58 = encode(ALPHABET_58, bytes);
+			assertEquals(base58, Base58.encode(bytes));
+			assertTrue(Arrays.equals(bytes, Base58.decode(base58)));
+			assertEquals(encode(ALPHABET_36, bytes), Base36.encode(bytes));
+			assertTrue(Arrays.equals(bytes, base62.decode(base62.encode(bytes))));
+
+			// Appendable, char[] and byte[] overloads on a range
+			StringBuilder sb = new StringBuilder("x");
+			assertEquals(base58.length(), Base58.encode(bytes, 0, length, sb));
+			assertEquals("x" + base58, sb.toString());
+			StringWriter writer = new StringWriter();
+			Base58.encode(bytes, 0, length, writer);
+			assertEquals(base58, writer.toString());
+			char[] chars = new char[Base58.getMaxEncodedLength(length) + 1];
+			int count = Base58.encode(bytes, 0, length, chars, 1);
+			assertEquals(base58, new String(chars, 1, count));
+			byte[] dst = new byte[length + 2];
+			assertEquals(length, Base58.decode("!" + base58 + "!", 1, base58.length(), dst));
+			assertTrue(Arrays.equals(bytes, Arrays.copyOf(dst, length)));
+		}
+		try {
+			Base58.decode("1112", 0, 4, new byte[3]);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected, 4 bytes
+		}
+	}
+
+}
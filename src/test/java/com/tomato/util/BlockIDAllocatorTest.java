@@ -0,0 +1,118 @@
+package com.tomato.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public final class BlockIDAllocatorTest extends TestCase {
+
+	private static Path newFile() throws IOException {
+		Path dir = Files.createTempDirectory("BlockIDAllocatorTest");
+		dir.toFile().deleteOnExit();
+		Path file = dir.resolve("ids");
+		file.toFile().deleteOnExit();
+		return file;
+	}
+
+	@Test
+	public void testCloseAndReopen() throws IOException {
+		Path file = newFile();
+		BlockIDAllocator allocator = new BlockIDAllocator(file, 100, BlockIDAllocator.SyncPolicy.FORCE);
+		for (long i = 1; i <= 250; i++) {
+			assertEquals(i, allocator.nextId());
+		}
+		assertEquals(301, allocator.getLimit());
+		try {
+			new BlockIDAllocator(file, 100, BlockIDAllocator.SyncPolicy.FORCE);
+			fail();
+		} catch (IOException e) {
+			// expected, locked
+		} catch (java.nio.channels.OverlappingFileLockException e) {
+			// expected, locked in this JVM
+		}
+		allocator.close();
+		try {
+			allocator.nextId();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		// the unused part of the last block is handed out again
+		allocator = new BlockIDAllocator(file, 10, BlockIDAllocator.SyncPolicy.NONE);
+		assertEquals(251, allocator.nextId());
+		allocator.close();
+	}
+
+	@Test
+	public void testCrash() throws IOException {
+		Path file = newFile();
+		Path copy = newFile();
+		BlockIDAllocator allocator = new BlockIDAllocator(file, 64, BlockIDAllocator.SyncPolicy.NONE, 1000);
+		long last = 0;
+		for (int i = 0; i < 1000; i++) {
+			last = allocator.nextId();
+		}
+		assertEquals(1999, last);
+		// the file as a crash would leave it
+		Files.write(copy, Files.readAllBytes(file));
+		allocator.close();
+
+		allocator = new BlockIDAllocator(copy, 64, BlockIDAllocator.SyncPolicy.NONE);
+		long next = allocator.nextId();
+		assertTrue(next > last);
+		assertEquals(1000 + 16 * 64, next);
+		allocator.close();
+
+		// a torn slot is ignored
+		byte[] bytes = Files.readAllBytes(copy);
+		bytes[8 + 16 + 3] ^= 1;
+		Files.write(copy, bytes);
+		allocator = new BlockIDAllocator(copy, 64, BlockIDAllocator.SyncPolicy.NONE);
+		assertEquals(1000 + 16 * 64 + 1, allocator.nextId());
+		allocator.close();
+
+		bytes[0] ^= 1;
+		Files.write(copy, bytes);
+		try {
+			new BlockIDAllocator(copy, 64, BlockIDAllocator.SyncPolicy.NONE);
+			fail();
+		} catch (IOException e) {
+			// expected, corrupted
+		}
+	}
+
+	@Test
+	public void testConcurrentNextId() throws Exception {
+		Path file = newFile();
+		final BlockIDAllocator allocator = new BlockIDAllocator(file, 7, BlockIDAllocator.SyncPolicy.NONE);
+		final long[][] ids = new long[4][10000];
+		Thread[] threads = new Thread[ids.length];
+		for (int t = 0; t < threads.length; t++) {
+			final long[] out = ids[t];
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < out.length; i++) {
+						out[i] = allocator.nextId();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		HashSet<Long> all = new HashSet<Long>();
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			for (long id : ids[t]) {
+				assertTrue(all.add(id));
+				assertTrue(id >= 1 && id <= 40000);
+			}
+		}
+		allocator.close();
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.tomato.util;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public final class IDUtilTest extends TestCase {
+
+	private static String expected(Object... keys) {
+		return UUID.nameUUIDFromBytes(IDUtil.getBytes(keys)).toString();
+	}
+
+	private static void assertNameUUID(Object... keys) {
+		String uuid = expected(keys);
+		String hex = uuid.replace("-", "");
+		assertEquals(uuid, IDUtil.getFormatedUUID(keys));
+		assertEquals(hex, IDUtil.getUUID(keys));
+		assertEquals("id" + hex, IDUtil.getID(keys));
+		assertEquals(hex, IDUtil.getID(false, keys));
+		byte[] bytes = new byte[16];
+		NumberUtil.toBytes(UUID.fromString(uuid).getMostSignificantBits(), bytes, 0);
+		NumberUtil.toBytes(UUID.fromString(uuid).getLeastSignificantBits(), bytes, 8);
+		assertEquals(IDUtil.toBase36String(bytes, true), IDUtil.getBase36ID(keys));
+		assertEquals(IDUtil.toBase58String(bytes, false), IDUtil.getBase58ID(false, keys));
+	}
+
+	@Test
+	public void testNameUUID() {
+		assertNameUUID();
+		assertNameUUID((Object) null);
+		assertNameUUID("");
+		assertNameUUID("", "");
+		assertNameUUID(null, "a", null);
+		assertNameUUID("union", 10001L, 2, (short) -3, (byte) 4, Long.MIN_VALUE, Integer.MAX_VALUE);
+		assertNameUUID("杭州", "税务", "😀", "é߿ࠀ￿");
+		assertNameUUID("\uD83D", "x\uDE00y", "\uD83D😀", "\uDE00\uD83D");
+		assertNameUUID(1.5d, 2.50f, new BigDecimal("3.10"), new Date(0L), Boolean.TRUE, new StringBuilder("sb"));
+		// toString() 重入 IDUtil
+		Object reentrant = new Object() {
+			@Override
+			public String toString() {
+				return IDUtil.getUUID("inner", 1L, new StringBuilder("sb"));
+			}
+		};
+		assertNameUUID("outer", reentrant, "tail", reentrant);
+
+		Random random = new Random(20);
+		for (int i = 0; i < 200; i++) {
+			Object[] keys = new Object[random.nextInt(4) + 1];
+			for (int j = 0; j < keys.length; j++) {
+				char[] chars = new char[random.nextInt(600)];
+				for (int k = 0; k < chars.length; k++) {
+					chars[k] = (char) (random.nextInt(4) == 0 ? random.nextInt(0x10000) : random.nextInt(0x80));
+				}
+				keys[j] = random.nextBoolean() ? new String(chars) : (Object) random.nextLong();
+			}
+			assertNameUUID(keys);
+		}
+	}
+
+	@Test
+	public void testNameUUIDFromBytes() {
+		byte[] key = "name".getBytes(IDUtil.CHARSET_DEFAULT);
+		String uuid = UUID.nameUUIDFromBytes(key).toString();
+		assertEquals(uuid, IDUtil.getFormatedUUID(key));
+		assertEquals(uuid.replace("-", ""), IDUtil.getUUID(key));
+		assertEquals("id" + uuid.replace("-", ""), IDUtil.getID(key));
+	}
+
+	@Test
+	public void testRandomID() {
+		for (IDRandom random : new IDRandom[] { IDRandom.SECURE, IDRandom.FAST }) {
+			HashSet<String> ids = new HashSet<String>();
+			for (int i = 0; i < 1000; i++) {
+				UUID uuid = UUID.fromString(IDUtil.getFormatedUUID(random));
+				assertEquals(4, uuid.version());
+				assertEquals(2, uuid.variant());
+				assertTrue(ids.add(uuid.toString()));
+				assertTrue(IDUtil.getUUID(random).matches("[0-9a-f]{12}4[0-9a-f]{3}[89ab][0-9a-f]{15}"));
+				assertTrue(IDUtil.getID(random, true).matches("id[0-9a-f]{32}"));
+				assertTrue(ids.add(IDUtil.getBase36ID(random, false)));
+				assertTrue(ids.add(IDUtil.getBase58ID(random, false)));
+			}
+		}
+		HashSet<String> ids = new HashSet<String>();
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(IDUtil.getUUID().matches("[0-9a-f]{12}4[0-9a-f]{3}[89ab][0-9a-f]{15}"));
+			assertTrue(IDUtil.getID().matches("id[0-9a-f]{32}"));
+			assertTrue(ids.add(IDUtil.getBase36ID()));
+			assertTrue(ids.add(IDUtil.getBase58ID()));
+			assertEquals(8, IDUtil.getBase58ID(8).length());
+		}
+	}
+
+	@Test
+	public void testIDRandom() {
+		for (IDRandom.Mode mode : IDRandom.Mode.values()) {
+			IDRandom random = IDRandom.getInstance(mode);
+			assertEquals(mode, random.getMode());
+			// crosses the reseed interval, and the pool boundaries at odd offsets
+			byte[] bytes = new byte[IDRandom.RESEED_INTERVAL / 3 + 7];
+			int[] counts = new int[256];
+			for (int i = 0; i < 4; i++) {
+				random.nextBytes(bytes, 1, bytes.length - 2);
+				for (int j = 1; j < bytes.length - 1; j++) {
+					counts[bytes[j] & 0xff]++;
+				}
+				random.nextLong();
+			}
+			int expected = 4 * (bytes.length - 2) / 256;
+			for (int count : counts) {
+				assertTrue(Math.abs(count - expected) < expected / 10);
+			}
+		}
+		try {
+			IDRandom.FAST.nextBytes(new byte[4], 2, 3);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+package com.tomato.util;
+
+import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public final class SnowflakeIDTest extends TestCase {
+
+	/**
+	 * A clock that only moves when told to, or by one millisecond every readsPerMilli reads when that is positive.
+	 */
+	static final class ManualClock extends Clock {
+		volatile long millis;
+		volatile int readsPerMilli;
+		private int reads;
+
+		ManualClock(long millis) {
+			this.millis = millis;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public long millis() {
+			if (readsPerMilli > 0 && ++reads % readsPerMilli == 0) {
+				millis++;
+			}
+			return millis;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+	}
+
+	@Test
+	public void testNextId() {
+		ManualClock clock = new ManualClock(SnowflakeID.DEFAULT_EPOCH + 1000);
+		SnowflakeID snowflake = new SnowflakeID(5, SnowflakeID.DEFAULT_EPOCH, 10, clock);
+		long id = snowflake.nextId();
+		assertEquals(clock.millis, snowflake.getTimestamp(id));
+		assertEquals(5, SnowflakeID.getWorkerId(id));
+		assertEquals(0, SnowflakeID.getSequence(id));
+		assertEquals(id + 1, snowflake.nextId());
+
+		// sequence exhausted: waits for the next millisecond
+		long prev = id + 1;
+		for (int i = 2; i < 4096; i++) {
+			long next = snowflake.nextId();
+			assertTrue(next > prev);
+			prev = next;
+		}
+		assertEquals(4095, SnowflakeID.getSequence(prev));
+		clock.readsPerMilli = 100;
+		long next = snowflake.nextId();
+		clock.readsPerMilli = 0;
+		assertTrue(next > prev);
+		assertEquals(clock.millis, snowflake.getTimestamp(next));
+		assertEquals(snowflake.getTimestamp(prev) + 1, snowflake.getTimestamp(next));
+		assertEquals(0, SnowflakeID.getSequence(next));
+		assertEquals(5, SnowflakeID.getWorkerId(next));
+
+		// clock rollback within the limit keeps counting in the last millisecond
+		prev = next;
+		clock.millis -= 10;
+		next = snowflake.nextId();
+		assertEquals(prev + 1, next);
+		clock.millis -= 1;
+		try {
+			snowflake.nextId();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		clock.millis += 100;
+		assertEquals(clock.millis, snowflake.getTimestamp(snowflake.nextId()));
+	}
+
+	@Test
+	public void testBurst() {
+		// many times the sequence per millisecond, with no rollback allowed
+		ManualClock clock = new ManualClock(SnowflakeID.DEFAULT_EPOCH);
+		clock.readsPerMilli = 1000;
+		SnowflakeID snowflake = new SnowflakeID(1, SnowflakeID.DEFAULT_EPOCH, 0, clock);
+		long prev = -1;
+		for (int i = 0; i < 10 * 4096; i++) {
+			long next = snowflake.nextId();
+			assertTrue(next > prev);
+			assertTrue(snowflake.getTimestamp(next) <= clock.millis);
+			prev = next;
+		}
+	}
+
+	@Test
+	public void testRollbackExhausted() {
+		// the sequence runs out during a rollback: parks until the clock catches up
+		ManualClock clock = new ManualClock(SnowflakeID.DEFAULT_EPOCH + 1000);
+		SnowflakeID snowflake = new SnowflakeID(1, SnowflakeID.DEFAULT_EPOCH, 100, clock);
+		long prev = -1;
+		for (int i = 0; i < 4096; i++) {
+			prev = snowflake.nextId();
+		}
+		clock.millis -= 50;
+		clock.readsPerMilli = 1;
+		long start = System.nanoTime();
+		long next = snowflake.nextId();
+		assertTrue(next > prev);
+		assertTrue(snowflake.getTimestamp(next) > snowflake.getTimestamp(prev));
+		// one read per park of 1 ms, where yielding would read the clock without pause
+		long elapsed = System.nanoTime() - start;
+		assertTrue("elapsed " + elapsed + " ns", elapsed >= 40000000L);
+	}
+
+	@Test
+	public void testLexicalOrder() {
+		SnowflakeID snowflake = new SnowflakeID(SnowflakeID.MAX_WORKER_ID);
+		String prev36 = "";
+		String prev58 = "";
+		for (int i = 0; i < 10000; i++) {
+			String base36 = snowflake.nextBase36();
+			String base58 = snowflake.nextBase58();
+			assertEquals(13, base36.length());
+			assertEquals(11, base58.length());
+			assertTrue(base36.compareTo(prev36) > 0);
+			assertTrue(base58.compareTo(prev58) > 0);
+			prev36 = base36;
+			prev58 = base58;
+		}
+	}
+
+	@Test
+	public void testConcurrentNextId() throws InterruptedException {
+		final SnowflakeID snowflake = new SnowflakeID(1);
+		final long[][] ids = new long[4][20000];
+		Thread[] threads = new Thread[ids.length];
+		for (int t = 0; t < threads.length; t++) {
+			final long[] out = ids[t];
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < out.length; i++) {
+						out[i] = snowflake.nextId();
+					}
+				}
+			};
+			threads[t].start();
+		}
+		java.util.HashSet<Long> all = new java.util.HashSet<Long>();
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			for (int i = 0; i < ids[t].length; i++) {
+				assertTrue(i == 0 || ids[t][i] > ids[t][i - 1]);
+				assertTrue(all.add(ids[t][i]));
+			}
+		}
+	}
+
+	@Test
+	public void testFixedWidthEncode() {
+		assertEquals(13, Base36.getWidth(8));
+		assertEquals(11, Base58.getWidth(8));
+		assertEquals(25, Base36.getWidth(16));
+		assertEquals(22, Base58.getWidth(16));
+		assertEquals("0000", Base36.encode(0, 0, 4));
+		assertEquals("1111", Base58.encode(0, 0, 4));
+		assertEquals("zzzzzzzzzzzzzzzzzzzzzzzzz".length(), Base36.encode(-1, -1, 25).length());
+		Random random = new Random(22);
+		for (int i = 0; i < 1000; i++) {
+			long hi = random.nextLong() >>> random.nextInt(64);
+			long lo = random.nextLong();
+			byte[] bytes = new byte[16];
+			NumberUtil.toBytes(hi, bytes, 0);
+			NumberUtil.toBytes(lo, bytes, 8);
+			BigInteger n = new BigInteger(1, bytes);
+			String base36 = n.toString(36);
+			while (base36.length() < 25) {
+				base36 = "0" + base36;
+			}
+			assertEquals(base36, Base36.encode(hi, lo, 25));
+			assertEquals(n, Base58.decodeToBigInteger(Base58.encode(hi, lo, 22)));
+		}
+		try {
+			Base36.encode(0, 36, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.tomato.util;
+
+import java.util.HashSet;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public final class SortableIDTest extends TestCase {
+
+	@Test
+	public void testNextUUID() {
+		SnowflakeIDTest.ManualClock clock = new SnowflakeIDTest.ManualClock(1500000000000L);
+		SortableID sortableID = new SortableID(IDRandom.FAST, 10, clock);
+		UUID prev = sortableID.nextUUID();
+		assertEquals(7, prev.version());
+		assertEquals(2, prev.variant());
+		assertEquals(clock.millis, SortableID.getTimestamp(prev));
+		for (int i = 1; i < 4096; i++) {
+			UUID next = sortableID.nextUUID();
+			assertEquals(7, next.version());
+			assertEquals(2, next.variant());
+			assertTrue(next.toString().compareTo(prev.toString()) > 0);
+			prev = next;
+		}
+		// 4096 ids per millisecond, then waits for the next millisecond
+		clock.readsPerMilli = 100;
+		UUID next = sortableID.nextUUID();
+		clock.readsPerMilli = 0;
+		assertTrue(next.toString().compareTo(prev.toString()) > 0);
+		assertEquals(clock.millis, SortableID.getTimestamp(next));
+		assertEquals(SortableID.getTimestamp(prev) + 1, SortableID.getTimestamp(next));
+
+		clock.millis -= 10;
+		assertEquals(clock.millis + 10, SortableID.getTimestamp(sortableID.nextUUID()));
+		clock.millis -= 1;
+		try {
+			sortableID.nextUUID();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBurst() {
+		// many times the sequence per millisecond, with no rollback allowed
+		SnowflakeIDTest.ManualClock clock = new SnowflakeIDTest.ManualClock(1500000000000L);
+		clock.readsPerMilli = 1000;
+		SortableID sortableID = new SortableID(IDRandom.FAST, 0, clock);
+		String prev = "";
+		for (int i = 0; i < 10 * 4096; i++) {
+			UUID next = sortableID.nextUUID();
+			assertTrue(next.toString().compareTo(prev) > 0);
+			assertTrue(SortableID.getTimestamp(next) <= clock.millis);
+			prev = next.toString();
+		}
+	}
+
+	@Test
+	public void testRollbackExhausted() {
+		// the sequence runs out during a rollback: parks until the clock catches up
+		SnowflakeIDTest.ManualClock clock = new SnowflakeIDTest.ManualClock(1500000000000L);
+		SortableID sortableID = new SortableID(IDRandom.FAST, 100, clock);
+		UUID prev = null;
+		for (int i = 0; i < 4096; i++) {
+			prev = sortableID.nextUUID();
+		}
+		clock.millis -= 50;
+		clock.readsPerMilli = 1;
+		long start = System.nanoTime();
+		UUID next = sortableID.nextUUID();
+		assertTrue(next.toString().compareTo(prev.toString()) > 0);
+		assertTrue(SortableID.getTimestamp(next) > SortableID.getTimestamp(prev));
+		// one read per park of 1 ms, where yielding would read the clock without pause
+		long elapsed = System.nanoTime() - start;
+		assertTrue("elapsed " + elapsed + " ns", elapsed >= 40000000L);
+	}
+
+	@Test
+	public void testLexicalOrder() {
+		SortableID sortableID = new SortableID();
+		String prev = "";
+		String prev36 = "";
+		String prev58 = "";
+		HashSet<String> ids = new HashSet<String>();
+		for (int i = 0; i < 10000; i++) {
+			String uuid = sortableID.nextString();
+			String base36 = sortableID.nextBase36();
+			String base58 = sortableID.nextBase58();
+			assertEquals(25, base36.length());
+			assertEquals(22, base58.length());
+			assertTrue(uuid.compareTo(prev) > 0);
+			assertTrue(base36.compareTo(prev36) > 0);
+			assertTrue(base58.compareTo(prev58) > 0);
+			assertTrue(ids.add(base58));
+			prev = uuid;
+			prev36 = base36;
+			prev58 = base58;
+		}
+		assertTrue(IDUtil.getSortableBase58ID(true).startsWith(IDUtil.ID_PREFIX));
+		assertEquals(7, UUID.fromString(IDUtil.getSortableUUID()).version());
+		assertTrue(IDUtil.getSortableBase36ID(false).compareTo(IDUtil.getSortableBase36ID(false)) < 0);
+	}
+
+}
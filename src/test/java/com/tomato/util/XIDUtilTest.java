@@ -94,4 +94,29 @@ public final class XIDUtilTest extends TestCase {
 
 	}
 
+	@Test
+	public void testClassify() {
+		assertClassification(XIDUtil.Type.SHXYDM, true, "91130522662208898P");
+		assertClassification(XIDUtil.Type.SHXYDM, true, "91330102ma280m6j1r");
+		assertClassification(XIDUtil.Type.SHXYDM, false, "91330102MA281M6J1R");
+		assertClassification(XIDUtil.Type.NSRSBH15, true, "13052280732273X");
+		assertClassification(XIDUtil.Type.NSRSBH15, true, "130522667718790");
+		assertClassification(XIDUtil.Type.PIN15, true, "130521329731192");
+		assertClassification(XIDUtil.Type.NSRSBH15, false, "13052132973119Y");
+		assertClassification(XIDUtil.Type.PIN18, true, "11010519491231002X");
+		assertClassification(XIDUtil.Type.PIN18, true, "11010519491231002x");
+		assertClassification(XIDUtil.Type.PIN18, false, "110105194912310021");
+		assertClassification(XIDUtil.Type.ZZJGDM, true, "D2143569X");
+		assertClassification(XIDUtil.Type.ZZJGDM, false, "D21435691");
+		assertClassification(XIDUtil.Type.UNKNOWN, false, "123");
+		assertClassification(XIDUtil.Type.UNKNOWN, false, "D2143569-X");
+		assertClassification(XIDUtil.Type.UNKNOWN, false, null);
+	}
+
+	private static void assertClassification(XIDUtil.Type type, boolean valid, String id) {
+		XIDUtil.Classification classification = XIDUtil.classify(id);
+		assertEquals(id, type, classification.getType());
+		assertEquals(id, valid, classification.isValid());
+	}
+
 }
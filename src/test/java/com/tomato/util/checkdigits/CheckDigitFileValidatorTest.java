@@ -0,0 +1,168 @@
+package com.tomato.util.checkdigits;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.tomato.util.PINUtil;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * CheckDigitFileValidator must report the same lines as checking every line on its own, whatever the chunk size.
+ */
+public class CheckDigitFileValidatorTest {
+
+	@Test
+	public void testDelimited() throws IOException {
+		Random random = new Random(20161023);
+		CheckDigit pin = new CheckISO7064Mod11_2();
+		StringBuilder sb = new StringBuilder();
+		List<Long> invalidLines = new ArrayList<Long>();
+		List<Long> invalidOffsets = new ArrayList<Long>();
+		int lines = 1000;
+		for (int i = 0; i < lines; i++) {
+			long offset = sb.length();
+			String value = pin.encode(digits(random, 17));
+			switch (random.nextInt(6)) {
+			case 0:
+				value = value.substring(1);
+				break;
+			case 1:
+				value = value.substring(0, 10) + (char)('0' + (value.charAt(10) - '0' + 1) % 10) + value.substring(11);
+				break;
+			default:
+				break;
+			}
+			if (!PINUtil.verify(value)) {
+				invalidLines.add((long)i + 1);
+				invalidOffsets.add(offset);
+			}
+			if (random.nextBoolean()) {
+				value = '"' + value + '"';
+			}
+			sb.append("name").append(i).append(',').append(value);
+			if (random.nextBoolean()) {
+				sb.append(",x");
+			}
+			if (i < lines - 1) {
+				sb.append(random.nextBoolean() ? "\n" : "\r\n");
+			}
+		}
+
+		CheckDigitFileValidator validator = new CheckDigitFileValidator(pin, 18, ',', 1);
+		Path file = write(sb.toString());
+		try {
+			for (long chunk : new long[] { 1, 7, 100, 1 << 20 }) {
+				CheckDigitFileValidator.Result result = validate(validator, file, 20, chunk);
+				assertEquals(lines, result.getLineCount());
+				assertEquals(invalidLines.size(), result.getInvalidCount());
+				assertArrayEquals(toArray(invalidLines.subList(0, 20)), result.getInvalidLines());
+				assertArrayEquals(toArray(invalidOffsets.subList(0, 20)), result.getInvalidOffsets());
+			}
+			CheckDigitFileValidator.Result result = validator.validate(file, Integer.MAX_VALUE);
+			assertArrayEquals(toArray(invalidLines), result.getInvalidLines());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testFixedWidth() throws IOException {
+		CheckDigit luhn = new CheckLuhnMod10();
+		String valid = luhn.encode("400012345678");
+		String invalid = valid.substring(0, 12) + (char)('0' + (valid.charAt(12) - '0' + 1) % 10);
+		Path file = write("AB" + valid + "\nAB" + invalid + "\nAB\n\nAB" + valid + "XYZ\n");
+		try {
+			CheckDigitFileValidator.Result result = new CheckDigitFileValidator(luhn, 2, 13).validate(file, 10);
+			assertEquals(5, result.getLineCount());
+			assertArrayEquals(new long[] { 2, 3, 4 }, result.getInvalidLines());
+			assertArrayEquals(new long[] { 16, 32, 35 }, result.getInvalidOffsets());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testLongLines() throws IOException {
+		// lines longer than the slack mapped past a chunk, starting in one chunk and ending several chunks later
+		CheckDigit pin = new CheckISO7064Mod11_2();
+		String valid = pin.encode("11010519491231002");
+		String invalid = valid.substring(1);
+		char[] filler = new char[(3 << 20) / 2];
+		Arrays.fill(filler, 'x');
+		StringBuilder sb = new StringBuilder();
+		sb.append("a,").append(valid).append('\n');
+		sb.append("b,").append(valid).append(',').append(filler).append('\n');
+		long[] offsets = { sb.length(), 0 };
+		sb.append("c,").append(invalid).append('\n');
+		offsets[1] = sb.length();
+		sb.append("d,").append(invalid).append(',').append(filler).append('\n');
+		sb.append("e,").append(valid);
+
+		CheckDigitFileValidator validator = new CheckDigitFileValidator(pin, 18, ',', 1);
+		Path file = write(sb.toString());
+		try {
+			for (long chunk : new long[] { 4096, 1 << 20 }) {
+				CheckDigitFileValidator.Result result = validate(validator, file, 10, chunk);
+				assertEquals(5, result.getLineCount());
+				assertArrayEquals(new long[] { 3, 4 }, result.getInvalidLines());
+				assertArrayEquals(offsets, result.getInvalidOffsets());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		Path file = write("");
+		try {
+			CheckDigitFileValidator.Result result = new CheckDigitFileValidator(new CheckLuhnMod10(), 0, ',', 0)
+				.validate(file, 10);
+			assertEquals(0, result.getLineCount());
+			assertEquals(0, result.getInvalidCount());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static CheckDigitFileValidator.Result validate(CheckDigitFileValidator validator, Path file,
+		int maxReported, long chunk) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return validator.validate(channel, channel.size(), maxReported, chunk);
+		}
+	}
+
+	private static Path write(String s) throws IOException {
+		Path file = Files.createTempFile("checkdigits", ".csv");
+		Files.write(file, s.getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+	private static long[] toArray(List<Long> list) {
+		long[] a = new long[list.size()];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = list.get(i);
+		}
+		return a;
+	}
+
+	private static String digits(Random random, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append((char)('0' + random.nextInt(10)));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,116 @@
+package com.tomato.util.checkdigits;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CheckDigitSequence must produce the same numbers as CheckDigit.encode, and they must verify.
+ */
+public class CheckDigitSequenceTest {
+
+	@Test
+	public void testLuhn() {
+		assertSameAsEncode(new CheckLuhnMod10(), "4000123456789990", 12345);
+		assertSameAsEncode(new CheckLuhnMod10(), "00", 100);
+		assertSameAsEncode(new CheckLuhnMod10(), "12", 800);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLuhnOddLength() {
+		// encode and verify disagree for odd-length Luhn data
+		new CheckDigitSequence(new CheckLuhnMod10(), "123");
+	}
+
+	@Test
+	public void testMod11_2() {
+		assertSameAsEncode(new CheckISO7064Mod11_2(), "11010519491231002", 12345);
+	}
+
+	@Test
+	public void testGB11714() {
+		CheckDigit scheme = new CheckGB11714Mod11_2();
+		assertSameAsEncode(scheme, "D2143560", 12345);
+		assertSameAsEncode(scheme, "ABCDEF98", 2);
+	}
+
+	@Test
+	public void testGB32100() {
+		CheckGB11714Mod11_2 zzjgdm = new CheckGB11714Mod11_2();
+		CheckDigit scheme = new CheckGB32100Mod31_3();
+		CheckDigitSequence sequence = new CheckDigitSequence(scheme, "91350100M0001950?");
+		for (int n = 1950; n < 12345; n++) {
+			String body = "M" + String.format("%07d", n);
+			String expected = scheme.encode("91350100" + zzjgdm.encode(body));
+			assertEquals(expected, sequence.next());
+			assertTrue(scheme.verify(expected));
+		}
+	}
+
+	@Test
+	public void testBuffers() {
+		CheckDigit scheme = new CheckLuhnMod10();
+		CheckDigitSequence chars = new CheckDigitSequence(scheme, "99999990");
+		CheckDigitSequence bytes = new CheckDigitSequence(scheme, "99999990");
+		assertEquals(9, chars.getLength());
+		char[] c = new char[2 + 20 * 9];
+		byte[] b = new byte[2 + 20 * 9];
+		assertEquals(10, chars.next(c, 2, 20));
+		assertEquals(10, bytes.next(b, 2, 20));
+		assertFalse(chars.hasNext());
+		StringBuilder expected = new StringBuilder();
+		for (int n = 99999990; n <= 99999999; n++) {
+			expected.append(scheme.encode(Integer.toString(n)));
+		}
+		assertEquals(expected.toString(), new String(c, 2, 10 * 9));
+		assertArrayEquals(expected.toString().getBytes(StandardCharsets.US_ASCII),
+			Arrays.copyOfRange(b, 2, 2 + 10 * 9));
+		try {
+			chars.next();
+			fail();
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupported() {
+		new CheckDigitSequence(new CheckDihedral(), "123");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoDigits() {
+		new CheckDigitSequence(new CheckGB11714Mod11_2(), "ABCDEFGH");
+	}
+
+	private static void assertSameAsEncode(CheckDigit scheme, String first, int count) {
+		CheckDigitSequence sequence = new CheckDigitSequence(scheme, first);
+		String data = first;
+		for (int i = 0; i < count && sequence.hasNext(); i++) {
+			String next = sequence.next();
+			assertEquals(scheme.encode(data), next);
+			assertTrue(next, scheme.verify(next));
+			data = increment(data);
+		}
+	}
+
+	private static String increment(String data) {
+		char[] c = data.toCharArray();
+		for (int i = c.length - 1; i >= 0 && c[i] >= '0' && c[i] <= '9'; i--) {
+			if (c[i] < '9') {
+				c[i]++;
+				break;
+			}
+			c[i] = '0';
+		}
+		return new String(c);
+	}
+}
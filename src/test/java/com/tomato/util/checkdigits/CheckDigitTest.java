@@ -0,0 +1,169 @@
+package com.tomato.util.checkdigits;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Expected verify results through the String, CharSequence and byte[] overloads, which must never throw.
+ */
+public class CheckDigitTest {
+
+	private static final CheckDigit[] CHECKS = { new CheckLuhnMod10(), new CheckISO7064Mod11_2(),
+		new CheckISO7064Mod11_10(), new CheckGB11714Mod11_2(), new CheckDihedral(), new CheckGB32100Mod31_3(),
+		new CheckISO7064Mod97_10() };
+
+	@Test
+	public void testKnownValues() {
+		assertTrue(new CheckLuhnMod10().verify("79927398713"));
+		assertFalse(new CheckLuhnMod10().verify("79927398710"));
+		assertTrue(new CheckISO7064Mod11_2().verify("079X"));
+		assertTrue(new CheckISO7064Mod11_2().verify("079x"));
+		assertFalse(new CheckISO7064Mod11_2().verify("0790"));
+		String verhoeff = new CheckDihedral().encode("2364");
+		assertTrue(new CheckDihedral().verify(verhoeff));
+		assertFalse(new CheckDihedral().verify(verhoeff.substring(0, 4) + "5"));
+		assertTrue(new CheckGB11714Mod11_2().verify("D2143569-X"));
+		assertTrue(new CheckGB11714Mod11_2().verify("d2143569x"));
+		assertFalse(new CheckGB11714Mod11_2().verify("D2143569-1"));
+		assertTrue(new CheckISO7064Mod97_10().verify("79467397834628193472882"));
+		assertFalse(new CheckISO7064Mod97_10().verify("+1"));
+	}
+
+	@Test
+	public void testExpectedValues() {
+		// published examples, and values computed independently of this package
+		assertVerify(new CheckLuhnMod10(), true, "79927398713", "0", "378282246310005");
+		assertVerify(new CheckLuhnMod10(), false, "79927398710", "79927398731", "7992739871a", "378282246310050");
+		assertVerify(new CheckISO7064Mod11_2(), true, "079X", "07940", "11010519491231002X",
+			"31415926535897932384626433832795028841976");
+		assertVerify(new CheckISO7064Mod11_2(), false, "0790", "07904", "11010519491231002x1",
+			"31415926535897932384626433832795028841975", "X");
+		assertVerify(new CheckISO7064Mod11_10(), true, "0792", "07945", "31415926535897932384626433832795028841978");
+		assertVerify(new CheckISO7064Mod11_10(), false, "0793", "07954", "0792X");
+		assertVerify(new CheckDihedral(), true, "6236", "7123456789", "331415926535897932384626");
+		assertVerify(new CheckDihedral(), false, "2363", "6326", "7123456798", "6 236");
+		assertVerify(new CheckGB11714Mod11_2(), true, "D2143569-X", "D2143569X");
+		assertVerify(new CheckGB11714Mod11_2(), false, "D2143569-1", "D2143596-X");
+		assertVerify(new CheckGB32100Mod31_3(), true, "91350100M000100Y43");
+		assertVerify(new CheckGB32100Mod31_3(), false, "91350100M000100Y44", "91350100M000010Y43");
+		assertVerify(new CheckISO7064Mod97_10(), true, "79444", "1234567890123456789089");
+		assertVerify(new CheckISO7064Mod97_10(), false, "79445", "74944", "7944a");
+	}
+
+	@Test
+	public void testLongRoundTrip() {
+		assertEquals("31415926535897932384626433832795028841976",
+			new CheckISO7064Mod11_2().encode("3141592653589793238462643383279502884197"));
+		Random random = new Random(20161023);
+		for (CheckDigit check : new CheckDigit[] { new CheckISO7064Mod11_2(), new CheckISO7064Mod11_10(),
+			new CheckDihedral() }) {
+			for (int n = 1; n <= 100; n++) {
+				String s = check.encode(digits(random, n));
+				assertVerify(check, true, s);
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidArguments() {
+		for (CheckDigit check : CHECKS) {
+			assertFalse(check.verify((String)null));
+			assertFalse(check.verify((CharSequence)null, 0, 0));
+			assertFalse(check.verify((byte[])null, 0, 0));
+			assertFalse(check.verify("123", -1, 2));
+			assertFalse(check.verify("123", 2, 2));
+			assertFalse(check.verify("123", 0, -1));
+			assertFalse(check.verify(new byte[3], 1, 3));
+			assertFalse(check.verify("12é3", 0, 4));
+			assertFalse(check.verify(new byte[] { '1', (byte)0xe9, '3' }, 0, 3));
+		}
+	}
+
+	@Test
+	public void testPacked() {
+		Random random = new Random(20161022);
+		for (CheckDigit check : CHECKS) {
+			for (int digits = 1; digits <= 19; digits++) {
+				long[] values = new long[500];
+				for (int i = 0; i < values.length; i++) {
+					String s = digits(random, digits - 1);
+					try {
+						s = check.encode(s);
+					} catch (RuntimeException e) {
+						// not encodable by the scheme
+					}
+					if (s.length() != digits || !s.matches("[0-9]+")) {
+						s = digits(random, digits);
+					}
+					values[i] = random.nextInt(10) == 0 ? random.nextLong() : parse(s);
+				}
+				BitSet out = new BitSet();
+				out.set(0, 1000);
+				check.verifyAll(values, digits, out);
+				for (int i = 0; i < values.length; i++) {
+					String s = String.format("%0" + digits + "d", values[i]);
+					boolean expected = values[i] >= 0 && s.length() == digits && check.verify(s);
+					assertEquals(check.getClass().getSimpleName() + " " + s, expected, out.get(i));
+				}
+				assertTrue(out.get(values.length));
+
+				for (int i = 0; i < values.length; i++) {
+					values[i] = parse(digits(random, digits));
+				}
+				int[] expected = new int[values.length];
+				try {
+					for (int i = 0; i < values.length; i++) {
+						expected[i] = check.computeCheck(String.format("%0" + digits + "d", values[i]));
+					}
+				} catch (RuntimeException e) {
+					continue;
+				}
+				assertArrayEquals(check.getClass().getSimpleName() + " " + digits, expected,
+					check.computeCheck(values, digits));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPackedDigits() {
+		new CheckLuhnMod10().verifyAll(new long[1], 20, new BitSet());
+	}
+
+	private static long parse(String s) {
+		// 19 digit numbers may not fit in a long
+		return s.length() == 19 && s.compareTo(Long.toString(Long.MAX_VALUE)) > 0 ? Long.parseLong(s.substring(1))
+			: Long.parseLong(s);
+	}
+
+	private static String digits(Random random, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append((char)('0' + random.nextInt(10)));
+		}
+		return sb.toString();
+	}
+
+	private static void assertVerify(CheckDigit check, boolean expected, String... values) {
+		for (String s : values) {
+			assertVerify(check, expected, s);
+		}
+	}
+
+	private static void assertVerify(CheckDigit check, boolean expected, String s) {
+		String padded = "##" + s + "#";
+		byte[] bytes = padded.getBytes(StandardCharsets.ISO_8859_1);
+		String message = check.getClass().getSimpleName() + " " + s;
+		assertEquals(message, expected, check.verify(s));
+		assertEquals(message, expected, check.verify(padded, 2, s.length()));
+		assertEquals(message, expected, check.verify(new StringBuilder(padded), 2, s.length()));
+		assertEquals(message, expected, check.verify(bytes, 2, s.length()));
+	}
+}
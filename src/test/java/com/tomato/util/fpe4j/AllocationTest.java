@@ -0,0 +1,108 @@
+package com.tomato.util.fpe4j;
+
+import java.lang.management.ManagementFactory;
+
+import javax.crypto.SecretKey;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.K;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Steady-state calls must allocate no more than their output numeral string.
+ */
+public class AllocationTest {
+
+	interface Call {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread per call, after a warm-up, or -1 if the JVM cannot tell.
+	 */
+	static long allocatedPerCall(Call call) throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long id = Thread.currentThread().getId();
+
+		for (int i = 0; i < 20000; i++) {
+			call.run();
+		}
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 10000; i++) {
+			call.run();
+		}
+		return (threads.getThreadAllocatedBytes(id) - before) / 10000;
+	}
+
+	/**
+	 * The size of an int[] of n elements, with a 16 byte header, rounded up to 8 bytes.
+	 */
+	static long arraySize(int n) {
+		return (16 + 4L * n + 7) / 8 * 8;
+	}
+
+	/**
+	 * Asserts that a call allocates its output numeral string of n elements and nothing else.
+	 */
+	static void assertAllocatesOutput(String call, long allocated, int n) {
+		if (allocated < 0) {
+			// the JVM cannot measure allocations
+			return;
+		}
+		assertTrue(call + " allocates " + allocated + " bytes, less than its output", allocated >= 4L * n);
+		assertTrue(call + " allocates " + allocated + " bytes, more than its output", allocated <= arraySize(n));
+	}
+
+	@Test
+	public void testFF1() throws Exception {
+		final FF1 ff1 = new FF1(10, 16);
+		final SecretKey key = K;
+		final byte[] T = FF1Test.hex("39383736353433323130");
+		final int[] X = FF1Test.numerals("4111111111111111", 10);
+		long encrypt = allocatedPerCall(new Call() {
+			@Override
+			public void run() throws Exception {
+				ff1.encrypt(key, T, X);
+			}
+		});
+		long decrypt = allocatedPerCall(new Call() {
+			@Override
+			public void run() throws Exception {
+				ff1.decrypt(key, T, X);
+			}
+		});
+		assertAllocatesOutput("FF1 encrypt", encrypt, X.length);
+		assertAllocatesOutput("FF1 decrypt", decrypt, X.length);
+	}
+
+	@Test
+	public void testFF3() throws Exception {
+		final FF3 ff3 = new FF3(10);
+		final SecretKey key = FF3Test.K;
+		final byte[] T = FF1Test.hex("D8E7920AFA330A73");
+		final int[] X = FF1Test.numerals("890121234567890000", 10);
+		long encrypt = allocatedPerCall(new Call() {
+			@Override
+			public void run() throws Exception {
+				ff3.encrypt(key, T, X);
+			}
+		});
+		long decrypt = allocatedPerCall(new Call() {
+			@Override
+			public void run() throws Exception {
+				ff3.decrypt(key, T, X);
+			}
+		});
+		assertAllocatesOutput("FF3 encrypt", encrypt, X.length);
+		assertAllocatesOutput("FF3 decrypt", decrypt, X.length);
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.tomato.util.fpe4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.K;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FF1Table must produce the same results as FF1, within its memory budget.
+ */
+public class FF1TableTest {
+
+	@Test
+	public void testSameAsFF1() throws Exception {
+		Random random = new Random(20161021);
+		for (int radix : new int[] { 10, 36 }) {
+			FF1 ff1 = new FF1(radix, 16);
+			FF1Table table = new FF1Table(radix, 16, 64 << 20);
+			for (int n = 2; n <= 6; n++) {
+				byte[] T = new byte[random.nextInt(17)];
+				random.nextBytes(T);
+				for (int k = 0; k < 200; k++) {
+					int[] X = new int[n];
+					for (int i = 0; i < n; i++) {
+						X[i] = random.nextInt(radix);
+					}
+					int[] Y = ff1.encrypt(K, T, X);
+					assertArrayEquals(Y, table.encrypt(K, T, X));
+					assertArrayEquals(X, table.decrypt(K, T, Y));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBudget() throws Exception {
+		FF1Table table = new FF1Table(10, 16, 8 * 10000);
+		int[] X = { 1, 2, 3, 4 };
+		table.encrypt(K, new byte[] { 1 }, X);
+		assertEquals(8 * 10000, table.getCachedBytes());
+		table.encrypt(K, new byte[] { 2 }, X);
+		assertEquals(8 * 10000, table.getCachedBytes());
+
+		// too large for the budget, so encrypted by FF1
+		int[] Z = { 1, 2, 3, 4, 5 };
+		assertArrayEquals(new FF1(10, 16).encrypt(K, new byte[0], Z), table.encrypt(K, new byte[0], Z));
+		assertEquals(8 * 10000, table.getCachedBytes());
+
+		table.clear();
+		assertEquals(0, table.getCachedBytes());
+	}
+
+	@Test
+	public void testConcurrentBuilds() throws Exception {
+		final FF1Table table = new FF1Table(10, 16, 8 * 40000);
+		final PreparedKey key = PreparedKey.of(K);
+		final FF1 ff1 = new FF1(10, 16);
+		final int[][] X = new int[8][];
+		final int[][][] Y = new int[4][8][];
+		Random random = new Random(22);
+		for (int i = 0; i < X.length; i++) {
+			X[i] = new int[4];
+			for (int j = 0; j < 4; j++) {
+				X[i][j] = random.nextInt(10);
+			}
+			for (int t = 0; t < Y.length; t++) {
+				Y[t][i] = ff1.encrypt(K, new byte[] { (byte)t }, X[i]);
+			}
+		}
+
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int t = 0; t < threads; t++) {
+				final int tweak = t % Y.length;
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						start.await();
+						byte[] T = { (byte)tweak };
+						for (int i = 0; i < X.length; i++) {
+							assertArrayEquals(Y[tweak][i], table.encrypt(key, T, X[i]));
+							assertArrayEquals(X[i], table.decrypt(key, T, Y[tweak][i]));
+						}
+						return true;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// each domain is built and counted once, and the underlying key shares the tables of the PreparedKey
+		assertEquals(8 * 40000, table.getCachedBytes());
+		assertArrayEquals(Y[0][0], table.encrypt(K, new byte[] { 0 }, X[0]));
+		assertEquals(8 * 40000, table.getCachedBytes());
+	}
+
+}
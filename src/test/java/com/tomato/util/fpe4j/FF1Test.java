@@ -0,0 +1,96 @@
+package com.tomato.util.fpe4j;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * FF1 against the NIST SP 800-38G sample data, and round trips on both sides of the long arithmetic boundary.
+ */
+public class FF1Test {
+
+	static final SecretKey K = new SecretKeySpec(hex("2B7E151628AED2A6ABF7158809CF4F3C"), "AES");
+
+	static byte[] hex(String s) {
+		byte[] b = new byte[s.length() / 2];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+		}
+		return b;
+	}
+
+	static int[] numerals(String s, int radix) {
+		int[] X = new int[s.length()];
+		for (int i = 0; i < X.length; i++) {
+			X[i] = Character.digit(s.charAt(i), radix);
+		}
+		return X;
+	}
+
+	@Test
+	public void testSamples() throws Exception {
+		FF1 ff1 = new FF1(10, 16);
+		assertArrayEquals(numerals("2433477484", 10), ff1.encrypt(K, new byte[0], numerals("0123456789", 10)));
+		assertArrayEquals(numerals("0123456789", 10), ff1.decrypt(K, new byte[0], numerals("2433477484", 10)));
+		assertArrayEquals(numerals("6124200773", 10),
+				ff1.encrypt(K, hex("39383736353433323130"), numerals("0123456789", 10)));
+
+		ff1 = new FF1(36, 16);
+		assertArrayEquals(numerals("a9tv40mll9kdu509eum", 36),
+				ff1.encrypt(K, hex("3737373770717273373737"), numerals("0123456789abcdefghi", 36)));
+		assertArrayEquals(numerals("0123456789abcdefghi", 36),
+				ff1.decrypt(K, hex("3737373770717273373737"), numerals("a9tv40mll9kdu509eum", 36)));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Random random = new Random(20161019);
+		for (int radix : new int[] { 10, 36, 62, 65536 }) {
+			FF1 ff1 = new FF1(radix, 16);
+			for (int n = 2; n <= 48; n++) {
+				if (Math.pow(radix, n) < 100) {
+					continue;
+				}
+				int[] X = new int[n];
+				for (int i = 0; i < n; i++) {
+					X[i] = random.nextInt(radix);
+				}
+				byte[] T = new byte[random.nextInt(17)];
+				random.nextBytes(T);
+				int[] Y = ff1.encrypt(K, T, X);
+				assertArrayEquals(Arrays.toString(X), X, ff1.decrypt(K, T, Y));
+			}
+		}
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		Random random = new Random(20161020);
+		for (int radix : new int[] { 10, 36 }) {
+			FF1 ff1 = new FF1(radix, 32);
+			for (int t : new int[] { 0, 7, 11, 16, 29 }) {
+				byte[] T = new byte[t];
+				random.nextBytes(T);
+				int[][] X = new int[40][];
+				for (int j = 0; j < X.length; j++) {
+					X[j] = new int[6 + random.nextInt(40)];
+					for (int i = 0; i < X[j].length; i++) {
+						X[j][i] = random.nextInt(radix);
+					}
+				}
+				int[][] Y = ff1.encryptBatch(K, T, X);
+				for (int j = 0; j < X.length; j++) {
+					assertArrayEquals(ff1.encrypt(K, T, X[j]), Y[j]);
+				}
+				assertArrayEquals(X, ff1.decryptBatch(K, T, Y));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.tomato.util.fpe4j;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.hex;
+import static com.tomato.util.fpe4j.FF1Test.numerals;
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * FF3 against the NIST SP 800-38G sample data, and round trips on both sides of the long arithmetic boundary.
+ */
+public class FF3Test {
+
+	static final SecretKey K = new SecretKeySpec(hex("EF4359D8D580AA4F7F036D6F04FC6A94"), "AES");
+
+	@Test
+	public void testSamples() throws Exception {
+		FF3 ff3 = new FF3(10);
+		assertArrayEquals(numerals("750918814058654607", 10),
+				ff3.encrypt(K, hex("D8E7920AFA330A73"), numerals("890121234567890000", 10)));
+		assertArrayEquals(numerals("890121234567890000", 10),
+				ff3.decrypt(K, hex("D8E7920AFA330A73"), numerals("750918814058654607", 10)));
+		assertArrayEquals(numerals("018989839189395384", 10),
+				ff3.encrypt(K, hex("9A768A92F60E12D8"), numerals("890121234567890000", 10)));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Random random = new Random(20161019);
+		for (int radix : new int[] { 10, 36, 62, 65536 }) {
+			FF3 ff3 = new FF3(radix);
+			for (int n = ff3.getMinlen(); n <= ff3.getMaxlen(); n++) {
+				int[] X = new int[n];
+				for (int i = 0; i < n; i++) {
+					X[i] = random.nextInt(radix);
+				}
+				byte[] T = new byte[8];
+				random.nextBytes(T);
+				int[] Y = ff3.encrypt(K, T, X);
+				assertArrayEquals(Arrays.toString(X), X, ff3.decrypt(K, T, Y));
+			}
+		}
+	}
+
+}
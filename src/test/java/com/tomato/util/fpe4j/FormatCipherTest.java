@@ -0,0 +1,93 @@
+package com.tomato.util.fpe4j;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.K;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * RegularFormat ranking against java.util.regex, and FormatCipher round trips.
+ */
+public class FormatCipherTest {
+
+	@Test
+	public void testRanks() {
+		RegularFormat format = RegularFormat.compile("(?:[a-c]x|d{1,2})[0-2]?");
+		Pattern pattern = Pattern.compile(format.getPattern());
+		assertEquals(3, format.getMaxLength());
+		for (int L = 0; L <= 3; L++) {
+			Set<String> strings = new HashSet<String>();
+			for (long r = 0; r < format.size(L).longValue(); r++) {
+				String X = format.unrank(L, BigInteger.valueOf(r));
+				assertTrue(X, pattern.matcher(X).matches());
+				assertEquals(BigInteger.valueOf(r), format.rank(X));
+				strings.add(X);
+			}
+			assertEquals(format.size(L).intValue(), strings.size());
+		}
+		// ax, bx, cx, dd, d0, d1, d2
+		assertEquals(7, format.size(2).intValue());
+		assertFalse(format.matches("ax3"));
+		assertSame(format, RegularFormat.compile("(?:[a-c]x|d{1,2})[0-2]?"));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		FormatCipher cipher = new FormatCipher(FpeEngine.Method.FF1, "[A-Z]{2}\\d{6}", 16);
+		byte[] T = { 7 };
+		for (String X : new String[] { "AB123456", "ZZ999999", "AA000000" }) {
+			String Y = cipher.encrypt(K, T, X);
+			assertTrue(Y, Y.matches("[A-Z]{2}\\d{6}"));
+			assertEquals(X, cipher.decrypt(K, T, Y));
+		}
+
+		// ranks too large for a long
+		cipher = new FormatCipher(FpeEngine.Method.FF1, "[0-9a-zA-Z_]{12,40}", 16);
+		String X = "The_quick_brown_fox_jumps_over";
+		String Y = cipher.encrypt(K, T, X);
+		assertEquals(X.length(), Y.length());
+		assertTrue(Y, Y.matches("\\w+"));
+		assertEquals(X, cipher.decrypt(K, T, Y));
+
+		try {
+			cipher.encrypt(K, T, "short");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnsupported() {
+		for (String pattern : new String[] { "a*", "\\d+", ".{3}", "[^a]", "a{2,}", "(ab", "a{999999}", "a{1001}",
+			"(?:a{1000}){1000}", "\\w{1000}" }) {
+			try {
+				RegularFormat.compile(pattern);
+				fail(pattern);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testCacheBounded() {
+		RegularFormat first = RegularFormat.compile("x{1}");
+		assertSame(first, RegularFormat.compile("x{1}"));
+		for (int n = 2; n <= RegularFormat.MAX_FORMATS + 1; n++) {
+			RegularFormat.compile("x{" + n + "}");
+		}
+		assertNotSame(first, RegularFormat.compile("x{1}"));
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.tomato.util.fpe4j;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.K;
+import static com.tomato.util.fpe4j.FF1Test.numerals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * FpeCodec against FF1 on numeral strings, with and without pass-through characters.
+ */
+public class FpeCodecTest {
+
+	@Test
+	public void testSamples() throws Exception {
+		FpeCodec codec = new FpeCodec(new FpeEngine(FpeEngine.Method.FF1, 10, 2, 64, 16), "0123456789");
+		assertEquals("2433477484", codec.encrypt(K, new byte[0], "0123456789"));
+		assertEquals("0123456789", codec.decrypt(K, new byte[0], new StringBuilder("2433477484")));
+
+		codec = new FpeCodec(new FpeEngine(FpeEngine.Method.FF1, 36, 2, 64, 16), "0123456789abcdefghijklmnopqrstuvwxyz");
+		assertEquals("a9tv40mll9kdu509eum",
+				codec.encrypt(K, FF1Test.hex("3737373770717273373737"), "0123456789abcdefghi"));
+	}
+
+	@Test
+	public void testPassThrough() throws Exception {
+		FpeCodec codec = new FpeCodec(new FpeEngine(FpeEngine.Method.FF1, 10, 2, 64, 16), "0123456789", "- ");
+		byte[] T = FF1Test.hex("39383736353433323130");
+
+		int[] Y = new FF1(10, 16).encrypt(K, T, numerals("4111111111111111", 10));
+		char[] X = "4111-1111 1111-1111".toCharArray();
+		assertSame(X, codec.encrypt(K, T, X));
+		assertEquals('-', X[4]);
+		assertEquals(' ', X[9]);
+		assertArrayEquals(Y, numerals(new String(X).replaceAll("[- ]", ""), 10));
+		assertEquals("4111-1111 1111-1111", new String(codec.decrypt(K, T, X)));
+
+		try {
+			codec.encrypt(K, T, "4111/1111");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnicodeAlphabet() throws Exception {
+		String alphabet = "零一二三四五六七八九";
+		FpeCodec codec = new FpeCodec(new FpeEngine(FpeEngine.Method.FF1, 10, 2, 64, 16), alphabet);
+		String X = "一二三四五六七八";
+		String Y = codec.encrypt(K, new byte[0], X);
+		assertEquals(X.length(), Y.length());
+		assertEquals(X, codec.decrypt(K, new byte[0], Y));
+	}
+
+}
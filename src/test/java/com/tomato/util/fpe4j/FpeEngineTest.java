@@ -0,0 +1,81 @@
+package com.tomato.util.fpe4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.SecretKey;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.K;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * One shared FpeEngine used concurrently must give the same results as a single-threaded FF1.
+ */
+public class FpeEngineTest {
+
+	static final int VALUES = 256;
+
+	@Test
+	public void testConcurrentStress() throws Exception {
+		stress(K);
+	}
+
+	@Test
+	public void testConcurrentPreparedKey() throws Exception {
+		stress(PreparedKey.of(K));
+	}
+
+	private static void stress(final SecretKey key) throws Exception {
+		final FpeEngine engine = new FpeEngine(FpeEngine.Method.FF1, 10, 6, 19, 16);
+		final FF1 ff1 = new FF1(10, 16);
+		final byte[] T = { 1, 2, 3, 4, 5, 6, 7, 8 };
+		final int[][] X = new int[VALUES][];
+		final int[][] Y = new int[VALUES][];
+		Random random = new Random(16);
+		for (int i = 0; i < VALUES; i++) {
+			X[i] = new int[6 + random.nextInt(14)];
+			for (int j = 0; j < X[i].length; j++) {
+				X[i][j] = random.nextInt(10);
+			}
+			Y[i] = ff1.encrypt(K, T, X[i]);
+		}
+
+		int threads = 16;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int t = 0; t < threads; t++) {
+				final int offset = t;
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						start.await();
+						for (int n = 0; n < 4 * VALUES; n++) {
+							int i = (n + offset * 31) % VALUES;
+							assertArrayEquals(Y[i], engine.encrypt(key, T, X[i]));
+							assertArrayEquals(X[i], engine.decrypt(key, T, Y[i]));
+						}
+						return true;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
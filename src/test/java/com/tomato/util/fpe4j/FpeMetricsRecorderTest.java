@@ -0,0 +1,64 @@
+package com.tomato.util.fpe4j;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.K;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FpeMetricsRecorder bucket boundaries, and the events reported by FpeEngine, FpeCodec and RangeCipher.
+ */
+public class FpeMetricsRecorderTest {
+
+	@Test
+	public void testBuckets() {
+		for (int i = 0; i < 247; i++) {
+			long upper = FpeMetricsRecorder.upperBound(i);
+			assertEquals(i, FpeMetricsRecorder.bucket(upper));
+			assertEquals(i + 1, FpeMetricsRecorder.bucket(upper + 1));
+		}
+		assertEquals(Long.MAX_VALUE, FpeMetricsRecorder.upperBound(247));
+	}
+
+	@Test
+	public void testEvents() throws Exception {
+		FpeMetricsRecorder recorder = new FpeMetricsRecorder(true);
+		FpeMetrics.setInstance(recorder);
+		try {
+			FpeEngine engine = new FpeEngine(FpeEngine.Method.FF1, 36, 2, 64, 16);
+			int[] X = new int[40];
+			for (int i = 0; i < 10; i++) {
+				engine.decrypt(K, new byte[0], engine.encrypt(K, new byte[0], X));
+			}
+			new FpeCodec(engine, "0123456789abcdefghijklmnopqrstuvwxyz").encrypt(K, new byte[0], "abcdef");
+			RangeCipher range = new RangeCipher(FpeEngine.Method.FF1, 1000, 16);
+			range.encrypt(new SecretKeySpec(new byte[16], "AES"), new byte[0], 5);
+		} finally {
+			FpeMetrics.setInstance(FpeMetrics.NOOP);
+		}
+
+		FpeMetricsRecorder.Snapshot snapshot = recorder.snapshot();
+		assertEquals(0, snapshot.getDropped());
+		assertEquals(1, snapshot.getConversions().getCount());
+		assertEquals(1, snapshot.getCycleWalks().getCount());
+		assertTrue(snapshot.getKeySetups().getCount() >= 1);
+		boolean found = false;
+		for (FpeMetricsRecorder.Entry entry : snapshot.getEntries()) {
+			if (entry.getMethod() == FpeEngine.Method.FF1 && entry.getRadix() == 36 && entry.getLength() == 40) {
+				assertEquals(10, entry.getEncrypt().getCount());
+				assertEquals(10, entry.getDecrypt().getCount());
+				assertEquals(20, entry.getSlowPaths());
+				assertTrue(entry.getAllocatedBytes() > 0);
+				assertTrue(entry.getEncrypt().getPercentile(50) <= entry.getEncrypt().getMax());
+				found = true;
+			}
+		}
+		assertTrue(found);
+		assertSame(FpeMetrics.NOOP, FpeMetrics.getInstance());
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.tomato.util.fpe4j;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.K;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * RangeCipher must be a permutation of [0..N-1] for any N, with short cycle walks.
+ */
+public class RangeCipherTest {
+
+	@Test
+	public void testPermutation() throws Exception {
+		byte[] T = { 1, 2, 3, 4, 5, 6, 7, 8 };
+		for (FpeEngine.Method method : new FpeEngine.Method[] { FpeEngine.Method.FF1, FpeEngine.Method.FF3,
+				FpeEngine.Method.A10 }) {
+			for (int N : new int[] { 1, 2, 7, 99, 100, 101, 1000, 4099 }) {
+				RangeCipher cipher = new RangeCipher(method, N, 8);
+				BitSet seen = new BitSet();
+				for (int x = 0; x < N; x++) {
+					long y = cipher.encrypt(K, T, x);
+					assertTrue(y >= 0 && y < N);
+					assertFalse(seen.get((int) y));
+					seen.set((int) y);
+					assertEquals(x, cipher.decrypt(K, T, y));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMaxWalk() {
+		// 4099 = 65^2 - 126, so at most 127 encryptions
+		assertEquals(BigInteger.valueOf(127), new RangeCipher(FpeEngine.Method.FF1, 4099, 8).getMaxWalk());
+		assertEquals(BigInteger.ONE, new RangeCipher(FpeEngine.Method.FF1, 1000000, 8).getMaxWalk());
+	}
+
+	@Test
+	public void testLarge() throws Exception {
+		Random random = new Random(20161022);
+		BigInteger N = BigInteger.ONE.shiftLeft(200).subtract(BigInteger.valueOf(12345));
+		RangeCipher cipher = new RangeCipher(FpeEngine.Method.FF1, N, 8);
+		for (int i = 0; i < 20; i++) {
+			BigInteger x = new BigInteger(200, random).mod(N);
+			BigInteger y = cipher.encrypt(K, new byte[0], x);
+			assertTrue(y.compareTo(N) < 0);
+			assertEquals(x, cipher.decrypt(K, new byte[0], y));
+		}
+
+		cipher = new RangeCipher(FpeEngine.Method.FF1, Long.MAX_VALUE, 8);
+		long x = Long.MAX_VALUE - 1;
+		assertEquals(x, cipher.decrypt(K, new byte[0], cipher.encrypt(K, new byte[0], x)));
+
+		try {
+			cipher.encrypt(K, new byte[0], -1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
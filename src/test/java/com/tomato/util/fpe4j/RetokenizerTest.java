@@ -0,0 +1,107 @@
+package com.tomato.util.fpe4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import static com.tomato.util.fpe4j.FF1Test.K;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Retokenizer output must equal encrypting each plaintext record with the new key, in order, with resumable
+ * checkpoints.
+ */
+public class RetokenizerTest {
+
+	static final SecretKey K2 = new SecretKeySpec(FF1Test.hex("000102030405060708090A0B0C0D0E0F"), "AES");
+
+	static final byte[] T = { 1, 2, 3 };
+
+	final FpeCodec codec = new FpeCodec(new FpeEngine(FpeEngine.Method.FF1, 10, 2, 64, 16), "0123456789", "-");
+
+	/**
+	 * Returns the plaintext records, and writes the old and expected new tokens.
+	 */
+	List<String> records(int count, StringBuilder old, StringBuilder expected) throws Exception {
+		Random random = new Random(20161023);
+		List<String> records = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			String X = i % 97 == 0 ? "" : Long.toString(1000000 + (random.nextLong() >>> 20)) + "-" + i;
+			String end = i == count - 1 ? "" : i % 3 == 0 ? "\r\n" : "\n";
+			records.add(X);
+			old.append(X.isEmpty() ? X : codec.encrypt(K, T, X)).append(end);
+			expected.append(X.isEmpty() ? X : codec.encrypt(K2, T, X)).append(end);
+		}
+		return records;
+	}
+
+	@Test
+	public void testReader() throws Exception {
+		StringBuilder old = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		records(5000, old, expected);
+
+		final List<long[]> checkpoints = new ArrayList<long[]>();
+		Retokenizer retokenizer = new Retokenizer(codec, K, codec, K2, T, new ForkJoinPool(4), 100, 3);
+		StringWriter out = new StringWriter();
+		long n = retokenizer.run(new StringReader(old.toString()), out, new Retokenizer.Checkpoint() {
+			@Override
+			public void reached(long records, long input, long output) {
+				checkpoints.add(new long[] { records, input, output });
+			}
+		});
+		assertEquals(5000, n);
+		assertEquals(expected.toString(), out.toString());
+		assertEquals(50, checkpoints.size());
+		assertEquals(old.length(), checkpoints.get(49)[1]);
+
+		// resume after the 20th checkpoint
+		long[] checkpoint = checkpoints.get(19);
+		assertEquals(2000, checkpoint[0]);
+		out = new StringWriter();
+		out.write(expected.substring(0, (int) checkpoint[2]));
+		n = retokenizer.run(new StringReader(old.substring((int) checkpoint[1])), out, null);
+		assertEquals(3000, n);
+		assertEquals(expected.toString(), out.toString());
+	}
+
+	@Test
+	public void testChannel() throws Exception {
+		StringBuilder old = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		records(3000, old, expected);
+
+		Retokenizer retokenizer = new Retokenizer(codec, K, codec, K2, T);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] in = old.toString().getBytes(StandardCharsets.UTF_8);
+		long n = retokenizer.run(Channels.newChannel(new ByteArrayInputStream(in)), Channels.newChannel(out), null);
+		assertEquals(3000, n);
+		assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testInvalidRecord() throws Exception {
+		Retokenizer retokenizer = new Retokenizer(codec, K, codec, K2, T, new ForkJoinPool(2), 2, 2);
+		try {
+			retokenizer.run(new StringReader("123456\n234567\n34x567\n456789\n"), new StringWriter(), null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Record 2: "));
+		}
+	}
+
+}
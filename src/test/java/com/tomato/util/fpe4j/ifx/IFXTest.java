@@ -0,0 +1,105 @@
+package com.tomato.util.fpe4j.ifx;
+
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * IFX in long arithmetic, for product(W) up to 63 bits, must give the same results as the BigInteger implementation.
+ * The expected values were produced by the BigInteger implementation.
+ */
+public class IFXTest {
+
+	static final SecretKey K = new SecretKeySpec(hex("2B7E151628AED2A6ABF7158809CF4F3C"), "AES");
+
+	static byte[] hex(String s) {
+		byte[] b = new byte[s.length() / 2];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+		}
+		return b;
+	}
+
+	static int[] radices(int radix, int n) {
+		int[] W = new int[n];
+		for (int i = 0; i < n; i++) {
+			W[i] = radix;
+		}
+		return W;
+	}
+
+	static void assertKnownAnswer(int[] W, String T, int[] X, int[] Y) throws Exception {
+		IFX ifx = new IFX(W);
+		assertArrayEquals(Y, ifx.encrypt(K, hex(T), X));
+		assertArrayEquals(X, ifx.decrypt(K, hex(T), Y));
+	}
+
+	@Test
+	public void testRadix10Long() throws Exception {
+		// product(W) = 10^18, 60 bits
+		int[] W = radices(10, 18);
+		assertKnownAnswer(W, "",
+			new int[] { 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9 },
+			new int[] { 0, 3, 5, 5, 1, 8, 5, 7, 0, 8, 1, 0, 9, 5, 7, 0, 2, 9 });
+		assertKnownAnswer(W, "D27AFDBAF81615",
+			new int[] { 3, 0, 6, 6, 7, 8, 1, 4, 3, 9, 1, 8, 5, 0, 6, 3, 3, 8 },
+			new int[] { 6, 9, 3, 6, 5, 0, 5, 7, 3, 1, 4, 8, 5, 1, 8, 1, 3, 7 });
+	}
+
+	@Test
+	public void testRadix36Long() throws Exception {
+		// product(W) = 36^12, 63 bits, the largest that fits in a long
+		int[] W = radices(36, 12);
+		assertKnownAnswer(W, "",
+			new int[] { 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35, 35 },
+			new int[] { 15, 12, 14, 15, 11, 25, 22, 12, 16, 25, 0, 16 });
+		assertKnownAnswer(W, "BA621E0262F749",
+			new int[] { 15, 8, 23, 1, 14, 14, 8, 26, 20, 26, 24, 8 },
+			new int[] { 4, 0, 14, 2, 13, 24, 2, 0, 31, 28, 12, 14 });
+	}
+
+	@Test
+	public void testMixedRadicesLong() throws Exception {
+		int[] W = { 2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47 };
+		assertKnownAnswer(W, "",
+			new int[] { 1, 2, 4, 6, 10, 12, 16, 18, 22, 28, 30, 36, 40, 42, 46 },
+			new int[] { 0, 1, 2, 6, 0, 2, 12, 4, 22, 12, 6, 26, 14, 40, 15 });
+		assertKnownAnswer(W, "7A6B93D04665F9",
+			new int[] { 0, 1, 0, 6, 7, 4, 13, 10, 19, 4, 24, 8, 32, 13, 20 },
+			new int[] { 0, 1, 1, 3, 2, 12, 13, 9, 1, 11, 3, 17, 11, 0, 18 });
+	}
+
+	@Test
+	public void testRadix10BigInteger() throws Exception {
+		// product(W) = 10^19, 64 bits, does not fit in a long
+		int[] W = radices(10, 19);
+		assertKnownAnswer(W, "",
+			new int[] { 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9, 9 },
+			new int[] { 5, 5, 8, 3, 0, 5, 9, 8, 9, 7, 5, 3, 1, 1, 0, 9, 6, 4, 4 });
+		assertKnownAnswer(W, "BAAACE962769C2",
+			new int[] { 5, 1, 9, 8, 2, 8, 8, 0, 4, 6, 9, 6, 4, 0, 5, 9, 8, 2, 0 },
+			new int[] { 0, 3, 9, 3, 5, 5, 3, 9, 1, 9, 6, 9, 3, 5, 4, 5, 8, 3, 5 });
+	}
+
+	@Test
+	public void testRoundTripLong() throws Exception {
+		Random random = new Random(10);
+		int[] W = radices(36, 12);
+		IFX ifx = new IFX(W);
+		for (int k = 0; k < 1000; k++) {
+			byte[] T = new byte[random.nextInt(16)];
+			random.nextBytes(T);
+			int[] X = new int[W.length];
+			for (int i = 0; i < X.length; i++) {
+				X[i] = random.nextInt(W[i]);
+			}
+			assertArrayEquals(X, ifx.decrypt(K, T, ifx.encrypt(K, T, X)));
+		}
+	}
+
+}